@@ -0,0 +1,140 @@
+package com.reactnativeaudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the {@link AudioRouter} hot paths, run with a backend which
+ * only counts calls so that the routing bookkeeping itself is measured. Run
+ * with the "gc" profiler (the default in build.gradle) to check that none of
+ * the scenarios allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AudioRouterBenchmark {
+    /**
+     * Device sets seen while a Bluetooth headset and wired headphones are
+     * being plugged in and out.
+     */
+    private static final int[] STORM_DEVICES = {
+        AudioDevices.EARPIECE | AudioDevices.SPEAKER,
+        AudioDevices.EARPIECE | AudioDevices.SPEAKER | AudioDevices.BLUETOOTH,
+        AudioDevices.SPEAKER | AudioDevices.BLUETOOTH | AudioDevices.HEADPHONES | AudioDevices.EARPIECE,
+        AudioDevices.EARPIECE | AudioDevices.SPEAKER | AudioDevices.HEADPHONES,
+        AudioDevices.EARPIECE | AudioDevices.SPEAKER | AudioDevices.BLUETOOTH,
+        AudioDevices.SPEAKER,
+    };
+
+    private static final int[] MODES = {
+        AudioRouter.AUDIO_CALL,
+        AudioRouter.VIDEO_CALL,
+        AudioRouter.AUDIO_CALL,
+        AudioRouter.DEFAULT,
+    };
+
+    private static final int[] USER_SELECTIONS = {
+        AudioDevices.SPEAKER,
+        AudioDevices.EARPIECE,
+        AudioDevices.BLUETOOTH,
+    };
+
+    /**
+     * Backend counting the calls it gets.
+     */
+    static final class CountingBackend implements AudioRouter.Backend {
+        int modes;
+        int routes;
+        int notifications;
+
+        @Override
+        public boolean setMode(int mode) {
+            modes++;
+            return true;
+        }
+
+        @Override
+        public void setAudioRoute(int device) {
+            routes++;
+        }
+
+        @Override
+        public void notifyDevicesChanged(int devices, int selectedDevice) {
+            notifications++;
+        }
+    }
+
+    private final CountingBackend backend = new CountingBackend();
+
+    private AudioRouter router;
+
+    private int step;
+
+    @Setup
+    public void setUp() {
+        router = new AudioRouter(backend);
+        router.replaceDevices(AudioDevices.EARPIECE | AudioDevices.SPEAKER | AudioDevices.BLUETOOTH);
+        router.setMode(AudioRouter.AUDIO_CALL);
+        step = 0;
+    }
+
+    /**
+     * Device callbacks which don't change anything, the most common case.
+     */
+    @Benchmark
+    public int steadyState() {
+        if (router.replaceDevices(router.getAvailableDevices())) {
+            router.updateAudioRoute();
+        }
+        router.updateAudioRoute();
+        return router.getSelectedDevice();
+    }
+
+    /**
+     * Devices coming and going while in a call.
+     */
+    @Benchmark
+    public int deviceStorm() {
+        int devices = STORM_DEVICES[step++ % STORM_DEVICES.length];
+
+        router.beginOperation(AudioMetrics.OP_DEVICE_CHANGE, AudioMetrics.now());
+        if (router.replaceDevices(devices)) {
+            router.updateAudioRoute();
+        }
+        router.endOperation();
+        return router.getSelectedDevice();
+    }
+
+    /**
+     * Calls starting, being upgraded to video and ending.
+     */
+    @Benchmark
+    public int modeToggle() {
+        int mode = MODES[step++ % MODES.length];
+
+        router.beginOperation(AudioMetrics.OP_SET_MODE, AudioMetrics.now());
+        router.setMode(mode);
+        router.endOperation();
+        return router.getSelectedDevice();
+    }
+
+    /**
+     * The user going through the device picker.
+     */
+    @Benchmark
+    public int userSelection() {
+        int device = USER_SELECTIONS[step++ % USER_SELECTIONS.length];
+
+        router.beginOperation(AudioMetrics.OP_SET_AUDIO_DEVICE, AudioMetrics.now());
+        router.selectDevice(device);
+        router.endOperation();
+        return router.getSelectedDevice();
+    }
+}
@@ -0,0 +1,92 @@
+package com.reactnativeaudio;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the device bookkeeping done on every device event: applying
+ * inventory deltas, translating ConnectionService route masks and resolving
+ * the routing policy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DeviceBookkeepingBenchmark {
+    /**
+     * Ids of a typical phone's outputs: earpiece, speaker, telephony...
+     */
+    private static final int[] BUILTIN_IDS = { 1, 2, 3, 5, 8 };
+    private static final int[] BUILTIN_DEVICES = {
+        AudioDevices.EARPIECE,
+        AudioDevices.SPEAKER,
+        AudioDevices.NONE,
+        AudioDevices.NONE,
+        AudioDevices.NONE,
+    };
+
+    private static final int BLUETOOTH_ID = 42;
+
+    private final AudioDeviceInventory inventory = new AudioDeviceInventory();
+
+    private final AudioRoutingPolicy routingPolicy = new AudioRoutingPolicy();
+
+    private int step;
+
+    @Setup
+    public void setUp() {
+        inventory.resync(BUILTIN_IDS, BUILTIN_DEVICES, BUILTIN_IDS.length);
+        step = 0;
+    }
+
+    /**
+     * A Bluetooth headset connecting and disconnecting.
+     */
+    @Benchmark
+    public int inventoryDelta() {
+        if ((step++ & 1) == 0) {
+            inventory.add(BLUETOOTH_ID, AudioDevices.BLUETOOTH);
+        } else {
+            inventory.remove(BLUETOOTH_ID);
+        }
+        return inventory.getDevices();
+    }
+
+    /**
+     * A full rescan, as done at start or after a drift.
+     */
+    @Benchmark
+    public int inventoryResync() {
+        inventory.resync(BUILTIN_IDS, BUILTIN_DEVICES, BUILTIN_IDS.length);
+        return inventory.getDevices();
+    }
+
+    /**
+     * Translating every possible CallAudioState route mask.
+     */
+    @Benchmark
+    public int callAudioRoutes() {
+        int routeMask = step++ & 0xF;
+        int devices = CallAudioRoutes.toDevices(routeMask);
+        return CallAudioRoutes.toRoute(devices & -devices);
+    }
+
+    /**
+     * Resolving the route for every possible device set and user selection.
+     */
+    @Benchmark
+    public int routingDecision() {
+        int i = step++;
+        int devices = i & AudioDevices.ALL;
+        int selection = (i >> 4) % (AudioDevices.COUNT + 1);
+        int userSelectedDevice = selection == 0
+                ? AudioDevices.NONE : AudioDevices.valueAt(selection - 1);
+        return routingPolicy.resolve(AudioRouter.AUDIO_CALL, devices, userSelectedDevice);
+    }
+}
@@ -0,0 +1,140 @@
+package com.reactnativeaudio;
+
+import java.util.Arrays;
+
+/**
+ * Inventory of the audio output devices currently known to the system, keyed
+ * by their {@code AudioDeviceInfo} id. It is updated incrementally with the
+ * deltas reported by the device callbacks, and flags itself as out of sync
+ * whenever a delta does not match what it holds, so that a full rescan can
+ * be scheduled.
+ *
+ * Not thread safe, it must only be used on the audio thread.
+ */
+class AudioDeviceInventory {
+    /**
+     * Initial capacity of the inventory. Phones rarely expose more outputs.
+     */
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Ids of the known devices. Only the first {@code size} entries are valid.
+     */
+    private int[] ids = new int[INITIAL_CAPACITY];
+
+    /**
+     * {@link AudioDevices} type of each known device, or
+     * {@link AudioDevices#NONE} for outputs which we do not route to (HDMI,
+     * USB accessories...). They are still tracked so that their removal is not
+     * mistaken for a drift.
+     */
+    private int[] devices = new int[INITIAL_CAPACITY];
+
+    /**
+     * Number of known devices.
+     */
+    private int size = 0;
+
+    /**
+     * Whether the inventory no longer matches the system and a full rescan is
+     * needed.
+     */
+    private boolean outOfSync = true;
+
+    /**
+     * Removes all known devices. The inventory stays out of sync until it is
+     * repopulated with {@link #resync(int[], int[], int)}.
+     */
+    void clear() {
+        size = 0;
+        outOfSync = true;
+    }
+
+    /**
+     * Replaces the inventory with the result of a full device scan.
+     *
+     * @param newIds the device ids.
+     * @param newDevices the {@link AudioDevices} type of each device.
+     * @param count the number of valid entries in the given arrays.
+     */
+    void resync(int[] newIds, int[] newDevices, int count) {
+        clear();
+        for (int i = 0; i < count; i++) {
+            put(newIds[i], newDevices[i]);
+        }
+        outOfSync = false;
+    }
+
+    /**
+     * Applies an added device delta.
+     *
+     * @param id the device id.
+     * @param device the {@link AudioDevices} type of the device.
+     */
+    void add(int id, int device) {
+        int index = indexOf(id);
+        if (index < 0) {
+            put(id, device);
+        } else if (devices[index] != device) {
+            // The id was reused for another device, we missed a removal.
+            devices[index] = device;
+            outOfSync = true;
+        }
+    }
+
+    /**
+     * Applies a removed device delta.
+     *
+     * @param id the device id.
+     */
+    void remove(int id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            // We never saw this device being added.
+            outOfSync = true;
+            return;
+        }
+        size--;
+        ids[index] = ids[size];
+        devices[index] = devices[size];
+    }
+
+    /**
+     * @return {@code true} if a full rescan is needed to get back in sync.
+     */
+    boolean isOutOfSync() {
+        return outOfSync;
+    }
+
+    /**
+     * Gets the set of available devices.
+     *
+     * @return the available devices as an {@link AudioDevices} mask.
+     */
+    int getDevices() {
+        int result = AudioDevices.NONE;
+        for (int i = 0; i < size; i++) {
+            result |= devices[i];
+        }
+        return result;
+    }
+
+    private void put(int id, int device) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            devices = Arrays.copyOf(devices, size * 2);
+        }
+        ids[size] = id;
+        devices[size] = device;
+        size++;
+    }
+
+    private int indexOf(int id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,103 @@
+package com.reactnativeaudio;
+
+/**
+ * Audio device types and helpers for handling sets of them as a bit mask.
+ * Devices are single bits, so a set of devices is a plain {@code int} which
+ * can be updated and compared without allocating. The string names are only
+ * meant to be used when talking to JS.
+ */
+final class AudioDevices {
+    /**
+     * No device.
+     */
+    static final int NONE       = 0;
+
+    /**
+     * Audio device types.
+     */
+    static final int BLUETOOTH  = 1;
+    static final int EARPIECE   = 1 << 1;
+    static final int HEADPHONES = 1 << 2;
+    static final int SPEAKER    = 1 << 3;
+
+    /**
+     * Number of audio device types.
+     */
+    static final int COUNT = 4;
+
+    /**
+     * Mask holding all the audio device types.
+     */
+    static final int ALL = (1 << COUNT) - 1;
+
+    /**
+     * Names of the device types, indexed by {@link #indexOf(int)}.
+     */
+    private static final String[] NAMES = {
+        "BLUETOOTH",
+        "EARPIECE",
+        "HEADPHONES",
+        "SPEAKER"
+    };
+
+    private AudioDevices() {
+    }
+
+    /**
+     * Checks whether the given set holds the given device.
+     *
+     * @param devices a set of devices.
+     * @param device a single device.
+     * @return {@code true} if the device is in the set.
+     */
+    static boolean contains(int devices, int device) {
+        return device != NONE && (devices & device) == device;
+    }
+
+    /**
+     * Gets the index of the given device, from 0 to {@link #COUNT} - 1.
+     *
+     * @param device a single device.
+     * @return the index of the device.
+     */
+    static int indexOf(int device) {
+        return Integer.numberOfTrailingZeros(device);
+    }
+
+    /**
+     * Gets the device at the given index.
+     *
+     * @param index the index, from 0 to {@link #COUNT} - 1.
+     * @return the device.
+     */
+    static int valueAt(int index) {
+        return 1 << index;
+    }
+
+    /**
+     * Gets the name of the given device, as used by JS.
+     *
+     * @param device a single device.
+     * @return the name of the device or {@code null} for {@link #NONE}.
+     */
+    static String getName(int device) {
+        return device == NONE ? null : NAMES[indexOf(device)];
+    }
+
+    /**
+     * Gets the device for the given name, as used by JS.
+     *
+     * @param name the name of the device.
+     * @return the device or {@link #NONE} if the name is unknown.
+     */
+    static int fromName(String name) {
+        if (name != null) {
+            for (int i = 0; i < COUNT; i++) {
+                if (NAMES[i].equals(name)) {
+                    return valueAt(i);
+                }
+            }
+        }
+        return NONE;
+    }
+}
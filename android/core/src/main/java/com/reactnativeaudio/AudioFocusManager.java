@@ -0,0 +1,235 @@
+package com.reactnativeaudio;
+
+/**
+ * State machine handling the audio focus for calls. The focus is requested
+ * once per call and kept across mode changes: requesting it while it's held,
+ * or while it's due to come back after a transient loss, is skipped.
+ *
+ * A delayed grant is not taken as the focus being held, it's only held once
+ * {@code AUDIOFOCUS_GAIN} is delivered. Whenever the focus comes back after
+ * another app held it, which may have changed the audio state meanwhile, the
+ * {@link Listener} is told so that it can restore what changed.
+ *
+ * Focus changes must be fed to {@link #onAudioFocusChange(int)}. Must only be
+ * used on the audio thread.
+ */
+class AudioFocusManager {
+
+    /**
+     * Focus changes reported by the system, the values of
+     * {@code AudioManager.AUDIOFOCUS_*}.
+     */
+    static final int AUDIOFOCUS_GAIN                    = 1;
+    static final int AUDIOFOCUS_LOSS                    = -1;
+    static final int AUDIOFOCUS_LOSS_TRANSIENT          = -2;
+    static final int AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK = -3;
+
+    /**
+     * Results of a focus request, the values of
+     * {@code AudioManager.AUDIOFOCUS_REQUEST_*}.
+     */
+    static final int AUDIOFOCUS_REQUEST_FAILED  = 0;
+    static final int AUDIOFOCUS_REQUEST_GRANTED = 1;
+    static final int AUDIOFOCUS_REQUEST_DELAYED = 2;
+
+    /**
+     * Focus states.
+     */
+    static final int STATE_NONE           = 0;
+    static final int STATE_GRANTED        = 1;
+    static final int STATE_DELAYED        = 2;
+    static final int STATE_LOST           = 3;
+    static final int STATE_LOST_TRANSIENT = 4;
+    static final int STATE_DUCKED         = 5;
+
+    private static final String[] STATE_NAMES = {
+        "none",
+        "granted",
+        "delayed",
+        "lost",
+        "lostTransient",
+        "ducked"
+    };
+
+    /**
+     * The focus calls of the audio system. Implementations reuse a single
+     * request, so that abandoning it matches the request made.
+     */
+    interface FocusSystem {
+        /**
+         * @return one of the {@code AUDIOFOCUS_REQUEST_*} results.
+         */
+        int requestAudioFocus();
+
+        void abandonAudioFocus();
+    }
+
+    /**
+     * Receives the focus being regained.
+     */
+    interface Listener {
+        /**
+         * The focus is held again after another app held it, and may have
+         * changed the audio state meanwhile.
+         *
+         * @param previousState the state the focus was in, one of
+         * {@link #STATE_DELAYED}, {@link #STATE_LOST},
+         * {@link #STATE_LOST_TRANSIENT} or {@link #STATE_DUCKED}.
+         */
+        void onAudioFocusRegained(int previousState);
+    }
+
+    private final FocusSystem focusSystem;
+    private final Listener listener;
+
+    private int state = STATE_NONE;
+
+    /**
+     * Whether another app may have changed the audio state since we last
+     * restored ours: it held the focus, or nobody did since we abandoned it.
+     * Kept across abandoning the focus, so that the next call still restores
+     * it.
+     */
+    private boolean stateChanged = false;
+
+    /**
+     * Number of calls which were forwarded to the {@link FocusSystem}.
+     */
+    private long systemCalls = 0;
+
+    /**
+     * Number of requests which were skipped because the focus was already
+     * held or due to come back.
+     */
+    private long skippedCalls = 0;
+
+    AudioFocusManager(FocusSystem focusSystem, Listener listener) {
+        this.focusSystem = focusSystem;
+        this.listener = listener;
+    }
+
+    /**
+     * @return the focus state, one of the {@code STATE_*} constants.
+     */
+    int getState() {
+        return state;
+    }
+
+    /**
+     * @return whether the focus is held, or due to come back without asking
+     * for it again.
+     */
+    boolean isRequested() {
+        return state != STATE_NONE && state != STATE_LOST;
+    }
+
+    /**
+     * Requests the focus, unless it's already held or due to come back.
+     *
+     * @return {@code false} if the request failed.
+     */
+    boolean request() {
+        if (isRequested()) {
+            skippedCalls++;
+            return true;
+        }
+
+        systemCalls++;
+        switch (focusSystem.requestAudioFocus()) {
+            case AUDIOFOCUS_REQUEST_GRANTED:
+                state = STATE_GRANTED;
+                return true;
+            case AUDIOFOCUS_REQUEST_DELAYED:
+                // Some other app holds it, e.g. a phone call.
+                state = STATE_DELAYED;
+                stateChanged = true;
+                return true;
+            default:
+                state = STATE_NONE;
+                return false;
+        }
+    }
+
+    /**
+     * Gives up the focus, or the pending request for it.
+     */
+    void abandon() {
+        if (state == STATE_NONE) {
+            skippedCalls++;
+            return;
+        }
+        systemCalls++;
+        focusSystem.abandonAudioFocus();
+        state = STATE_NONE;
+        // Any app may change the audio state until we hold it again.
+        stateChanged = true;
+    }
+
+    /**
+     * Returns and clears whether another app may have changed the audio
+     * state since we last restored ours, for when it's about to be set
+     * anyway.
+     *
+     * @return whether the audio state may have been changed by another app.
+     */
+    boolean takeStateChanged() {
+        boolean changed = stateChanged;
+        stateChanged = false;
+        return changed;
+    }
+
+    /**
+     * Handles an {@code OnAudioFocusChangeListener} callback.
+     *
+     * @param focusChange one of the {@code AUDIOFOCUS_*} changes.
+     */
+    void onAudioFocusChange(int focusChange) {
+        if (state == STATE_NONE) {
+            // Delivered after the focus was abandoned.
+            return;
+        }
+
+        int previousState = state;
+
+        switch (focusChange) {
+            case AUDIOFOCUS_GAIN:
+                state = STATE_GRANTED;
+                if (previousState != STATE_GRANTED && takeStateChanged()) {
+                    listener.onAudioFocusRegained(previousState);
+                }
+                break;
+            case AUDIOFOCUS_LOSS:
+                // Not given back by the system, it must be requested again.
+                state = STATE_LOST;
+                stateChanged = true;
+                break;
+            case AUDIOFOCUS_LOSS_TRANSIENT:
+                state = STATE_LOST_TRANSIENT;
+                stateChanged = true;
+                break;
+            case AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK:
+                state = STATE_DUCKED;
+                stateChanged = true;
+                break;
+        }
+    }
+
+    /**
+     * @return the number of calls forwarded to the {@link FocusSystem}.
+     */
+    long getSystemCalls() {
+        return systemCalls;
+    }
+
+    /**
+     * @return the number of calls skipped because the focus was already in
+     * the requested state.
+     */
+    long getSkippedCalls() {
+        return skippedCalls;
+    }
+
+    static String getStateName(int state) {
+        return STATE_NAMES[state];
+    }
+}
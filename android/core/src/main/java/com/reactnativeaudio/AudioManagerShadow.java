@@ -0,0 +1,192 @@
+package com.reactnativeaudio;
+
+/**
+ * Write-through cache of the {@link AudioSystem} state we control. Every
+ * setter is an IPC into the audio server, so they are only forwarded when the
+ * requested value differs from the last one we set.
+ *
+ * The cached state can go stale when some other app changes it, so it must be
+ * invalidated or resynced whenever that is suspected, e.g. when the audio
+ * focus is regained.
+ *
+ * Not thread safe, it must only be used on the audio thread.
+ */
+class AudioManagerShadow {
+    /**
+     * Value of a cached field whose system state is unknown.
+     */
+    private static final int UNKNOWN = -1;
+
+    private static final int OFF = 0;
+    private static final int ON = 1;
+
+    /**
+     * Fields reported as changed by {@link #resync()}.
+     */
+    static final int CHANGED_MODE            = 1;
+    static final int CHANGED_SPEAKERPHONE    = 1 << 1;
+    static final int CHANGED_BLUETOOTH_SCO   = 1 << 2;
+    static final int CHANGED_MICROPHONE_MUTE = 1 << 3;
+
+    /**
+     * Fields which make up the audio route.
+     */
+    static final int CHANGED_ROUTE = CHANGED_SPEAKERPHONE | CHANGED_BLUETOOTH_SCO;
+
+    /**
+     * {@link AudioSystem} instance used to interact with the audio subsystem.
+     */
+    private final AudioSystem audioManager;
+
+    private int mode = UNKNOWN;
+    private int speakerphone = UNKNOWN;
+    private int bluetoothSco = UNKNOWN;
+    private int bluetoothScoOn = UNKNOWN;
+    private int microphoneMute = UNKNOWN;
+
+    /**
+     * Number of calls which were forwarded to the {@link AudioSystem}.
+     */
+    private long systemCalls = 0;
+
+    /**
+     * Number of calls which were skipped because the state was already the
+     * requested one.
+     */
+    private long skippedCalls = 0;
+
+    AudioManagerShadow(AudioSystem audioManager) {
+        this.audioManager = audioManager;
+    }
+
+    /**
+     * Forgets all the cached state, so that the next call to every setter
+     * reaches the system.
+     */
+    void invalidate() {
+        mode = UNKNOWN;
+        speakerphone = UNKNOWN;
+        bluetoothSco = UNKNOWN;
+        bluetoothScoOn = UNKNOWN;
+        microphoneMute = UNKNOWN;
+    }
+
+    /**
+     * Forgets the cached Bluetooth SCO state, for when the link was
+     * established or torn down behind our back.
+     */
+    void invalidateBluetoothSco() {
+        bluetoothSco = UNKNOWN;
+        bluetoothScoOn = UNKNOWN;
+    }
+
+    /**
+     * Reads back the state which can be changed by other apps. Cheaper than
+     * {@link #invalidate()} when most of it is expected to be unchanged, since
+     * getters don't have side effects on the audio server.
+     *
+     * @return the fields which differ from the cached state, a mask of the
+     * {@code CHANGED_*} constants. Unknown fields are reported as changed.
+     */
+    int resync() {
+        int newMode = audioManager.getMode();
+        int newSpeakerphone = toState(audioManager.isSpeakerphoneOn());
+        int newBluetoothScoOn = toState(audioManager.isBluetoothScoOn());
+        int newMicrophoneMute = toState(audioManager.isMicrophoneMute());
+        // The SCO connection is requested per client, so no other app can
+        // change ours.
+
+        int changed = 0;
+        if (mode != newMode) {
+            changed |= CHANGED_MODE;
+        }
+        if (speakerphone != newSpeakerphone) {
+            changed |= CHANGED_SPEAKERPHONE;
+        }
+        if (bluetoothScoOn != newBluetoothScoOn) {
+            changed |= CHANGED_BLUETOOTH_SCO;
+        }
+        if (microphoneMute != newMicrophoneMute) {
+            changed |= CHANGED_MICROPHONE_MUTE;
+        }
+
+        mode = newMode;
+        speakerphone = newSpeakerphone;
+        bluetoothScoOn = newBluetoothScoOn;
+        microphoneMute = newMicrophoneMute;
+        return changed;
+    }
+
+    void setMode(int newMode) {
+        if (mode == newMode) {
+            skippedCalls++;
+            return;
+        }
+        systemCalls++;
+        audioManager.setMode(newMode);
+        mode = newMode;
+    }
+
+    void setSpeakerphoneOn(boolean on) {
+        if (speakerphone == toState(on)) {
+            skippedCalls++;
+            return;
+        }
+        systemCalls++;
+        audioManager.setSpeakerphoneOn(on);
+        speakerphone = toState(on);
+    }
+
+    void setBluetoothScoStarted(boolean started) {
+        if (bluetoothSco == toState(started)) {
+            skippedCalls++;
+            return;
+        }
+        systemCalls++;
+        if (started) {
+            audioManager.startBluetoothSco();
+        } else {
+            audioManager.stopBluetoothSco();
+        }
+        bluetoothSco = toState(started);
+    }
+
+    void setBluetoothScoOn(boolean on) {
+        if (bluetoothScoOn == toState(on)) {
+            skippedCalls++;
+            return;
+        }
+        systemCalls++;
+        audioManager.setBluetoothScoOn(on);
+        bluetoothScoOn = toState(on);
+    }
+
+    void setMicrophoneMute(boolean mute) {
+        if (microphoneMute == toState(mute)) {
+            skippedCalls++;
+            return;
+        }
+        systemCalls++;
+        audioManager.setMicrophoneMute(mute);
+        microphoneMute = toState(mute);
+    }
+
+    /**
+     * @return the number of calls forwarded to the {@link AudioSystem}.
+     */
+    long getSystemCalls() {
+        return systemCalls;
+    }
+
+    /**
+     * @return the number of calls skipped because the state was already the
+     * requested one.
+     */
+    long getSkippedCalls() {
+        return skippedCalls;
+    }
+
+    private static int toState(boolean on) {
+        return on ? ON : OFF;
+    }
+}
@@ -0,0 +1,195 @@
+package com.reactnativeaudio;
+
+/**
+ * Latency histograms and counters for the audio routing operations.
+ *
+ * Every operation is timed from its origin (the bridge call or the system
+ * callback) to the following stages:
+ * - QUEUE: the operation's task started running on the audio thread.
+ * - HANDLER: the device handler calls returned.
+ * - CONFIRMED: the device handler reported the route as being in use.
+ * - EMIT: the resulting device list was sent to JS.
+ *
+ * Calls started through {@code ConnectionService} are timed from the bridge
+ * call to the HANDLER stage, once the call was placed, and to the CONFIRMED
+ * stage, once Telecom created its connection.
+ *
+ * Prewarming the call resources, automatically after startup or on request,
+ * is timed to the QUEUE and HANDLER stages. The first call mode set is timed
+ * as FIRST_CALL rather than SET_MODE, since it pays for whatever wasn't
+ * prewarmed.
+ *
+ * Incoming calls are timed from the bridge call to the HANDLER stage, once
+ * the call was reported, and to the CONFIRMED stage, once it's ringing.
+ * Answering them sets the call mode natively, timed as ANSWER_CALL rather
+ * than SET_MODE. Resuming a held call restores its audio focus and route,
+ * timed as RESUME_CALL to the QUEUE and HANDLER stages. With several calls,
+ * setting the mode of the call which gets the audio is timed as SWITCH_CALL.
+ *
+ * Not thread safe, it must only be used on the audio thread.
+ */
+class AudioMetrics {
+    /**
+     * Operation types.
+     */
+    static final int OP_SET_MODE         = 0;
+    static final int OP_SET_AUDIO_DEVICE = 1;
+    static final int OP_DEVICE_CHANGE    = 2;
+    static final int OP_BLUETOOTH_SCO    = 3;
+    static final int OP_START_CALL       = 4;
+    static final int OP_PREWARM          = 5;
+    static final int OP_FIRST_CALL       = 6;
+    static final int OP_INCOMING_CALL    = 7;
+    static final int OP_ANSWER_CALL      = 8;
+    static final int OP_RESUME_CALL      = 9;
+    static final int OP_SWITCH_CALL      = 10;
+
+    private static final String[] OP_NAMES = {
+        "setMode",
+        "setAudioDevice",
+        "deviceChange",
+        "bluetoothSco",
+        "startCall",
+        "prewarm",
+        "firstCall",
+        "incomingCall",
+        "answerCall",
+        "resumeCall",
+        "switchCall"
+    };
+
+    /**
+     * Operation stages.
+     */
+    static final int STAGE_QUEUE     = 0;
+    static final int STAGE_HANDLER   = 1;
+    static final int STAGE_CONFIRMED = 2;
+    static final int STAGE_EMIT      = 3;
+
+    private static final String[] STAGE_NAMES = {
+        "queue",
+        "handler",
+        "confirmed",
+        "emit"
+    };
+
+    /**
+     * Counters.
+     */
+    static final int COUNTER_DEVICE_RESCANS              = 0;
+    static final int COUNTER_COALESCED_CALLBACKS         = 1;
+    static final int COUNTER_BLUETOOTH_SCO_FAILED        = 2;
+    static final int COUNTER_SUPERSEDED_SET_MODE         = 3;
+    static final int COUNTER_SUPERSEDED_SET_AUDIO_DEVICE = 4;
+    static final int COUNTER_MERGED_EVENTS               = 5;
+    static final int COUNTER_AUDIO_THREAD_STALLS         = 6;
+
+    private static final String[] COUNTER_NAMES = {
+        "deviceRescans",
+        "coalescedCallbacks",
+        "bluetoothScoFailures",
+        "supersededSetMode",
+        "supersededSetAudioDevice",
+        "mergedEvents",
+        "audioThreadStalls"
+    };
+
+    private final LatencyHistogram[][] histograms
+            = new LatencyHistogram[OP_NAMES.length][STAGE_NAMES.length];
+
+    private final long[] counters = new long[COUNTER_NAMES.length];
+
+    AudioMetrics() {
+        for (LatencyHistogram[] stages : histograms) {
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * @return the current time in nanoseconds, on the clock used for all the
+     * timestamps.
+     */
+    static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time elapsed since the start of an operation.
+     *
+     * @param op the operation type.
+     * @param stage the stage reached.
+     * @param startTime the time the operation started, see {@link #now()}.
+     */
+    void record(int op, int stage, long startTime) {
+        histograms[op][stage].record(now() - startTime);
+    }
+
+    /**
+     * Records a latency measured by the caller.
+     *
+     * @param op the operation type.
+     * @param stage the stage reached.
+     * @param latency the latency in nanoseconds.
+     */
+    void recordLatency(int op, int stage, long latency) {
+        histograms[op][stage].record(latency);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter the counter.
+     * @param delta the value to add.
+     */
+    void increment(int counter, long delta) {
+        counters[counter] += delta;
+    }
+
+    long getCounter(int counter) {
+        return counters[counter];
+    }
+
+    LatencyHistogram getHistogram(int op, int stage) {
+        return histograms[op][stage];
+    }
+
+    /**
+     * Clears all the histograms and counters.
+     */
+    void reset() {
+        for (LatencyHistogram[] stages : histograms) {
+            for (LatencyHistogram histogram : stages) {
+                histogram.reset();
+            }
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = 0;
+        }
+    }
+
+    static int getOpCount() {
+        return OP_NAMES.length;
+    }
+
+    static String getOpName(int op) {
+        return OP_NAMES[op];
+    }
+
+    static int getStageCount() {
+        return STAGE_NAMES.length;
+    }
+
+    static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    static int getCounterCount() {
+        return COUNTER_NAMES.length;
+    }
+
+    static String getCounterName(int counter) {
+        return COUNTER_NAMES[counter];
+    }
+}
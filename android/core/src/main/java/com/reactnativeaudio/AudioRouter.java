@@ -0,0 +1,526 @@
+package com.reactnativeaudio;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Audio routing state machine. Keeps track of the audio mode, the available
+ * devices and the user's selection, picks the device to be used with the
+ * {@link AudioRoutingPolicy} and times every operation into
+ * {@link AudioMetrics}.
+ *
+ * It has no dependency on the Android framework: the actual work is done by a
+ * {@link Backend}, which is {@link AudioModule} on devices.
+ *
+ * Not thread safe, it must only be used on the audio thread. The exception is
+ * {@link #getState()}, which any thread can call.
+ */
+class AudioRouter {
+    /**
+     * Constants representing the audio mode.
+     * - DEFAULT: Used before and after every call. It represents the default
+     *   audio routing scheme.
+     * - AUDIO_CALL: Used for audio only calls. It will use the earpiece by
+     *   default, unless a wired or Bluetooth headset is connected.
+     * - VIDEO_CALL: Used for video calls. It will use the speaker by default,
+     *   unless a wired or Bluetooth headset is connected.
+     */
+    static final int DEFAULT    = 0;
+    static final int AUDIO_CALL = 1;
+    static final int VIDEO_CALL = 2;
+
+    /**
+     * Mode before the first one is set.
+     */
+    static final int MODE_UNSET = -1;
+
+    /**
+     * Does the actual routing work on behalf of the router.
+     */
+    interface Backend {
+        /**
+         * Set the given audio mode. If the route turns out to have been
+         * changed behind our back, {@link AudioRouter#invalidateAudioRoute()}
+         * may be called so that it's set again right after.
+         *
+         * @param mode The new audio mode to be used.
+         * @return Whether the operation was successful or not.
+         */
+        boolean setMode(int mode);
+
+        /**
+         * Set the appropriate route for the given audio device.
+         *
+         * @param device Audio device for which the route must be set, see
+         * {@link AudioDevices}.
+         */
+        void setAudioRoute(int device);
+
+        /**
+         * Publish the list of devices shown to the user.
+         *
+         * @param devices the devices, as an {@link AudioDevices} mask.
+         * @param selectedDevice the device in use, or {@link AudioDevices#NONE}.
+         */
+        void notifyDevicesChanged(int devices, int selectedDevice);
+    }
+
+    private final Backend backend;
+
+    /**
+     * Latency histograms and counters of the routing operations.
+     */
+    private final AudioMetrics metrics = new AudioMetrics();
+
+    /**
+     * Policy used for picking the audio device in each mode.
+     */
+    private final AudioRoutingPolicy routingPolicy = new AudioRoutingPolicy();
+
+    /**
+     * Last device list published, used to skip publishing it again.
+     */
+    private final DeviceListDiff deviceListDiff = new DeviceListDiff();
+
+    /**
+     * Audio mode currently in use.
+     */
+    private int mode = MODE_UNSET;
+
+    /**
+     * Set of currently available audio devices, see {@link AudioDevices}.
+     */
+    private int availableDevices = AudioDevices.NONE;
+
+    /**
+     * Currently selected device.
+     */
+    private int selectedDevice = AudioDevices.NONE;
+
+    /**
+     * User selected device. When {@link AudioDevices#NONE} the default is used
+     * depending on the mode.
+     */
+    private int userSelectedDevice = AudioDevices.NONE;
+
+    /**
+     * Devices which are available but failed to be used, e.g. a Bluetooth
+     * headset whose SCO link didn't come up. They are skipped when picking the
+     * route until the set of available devices changes or the user selects
+     * them.
+     */
+    private int unusableDevices = AudioDevices.NONE;
+
+    /**
+     * Whether the route of {@link #selectedDevice} is no longer in effect,
+     * so that it must be set again even if the device doesn't change.
+     */
+    private boolean audioRouteInvalid = false;
+
+    /**
+     * Operation currently running, see {@link AudioMetrics}, or -1 if none.
+     * Used to attribute the stages reached while running it. Volatile, for
+     * {@link #getCurrentOperation()}.
+     */
+    private volatile int currentOp = -1;
+
+    /**
+     * Time the current operation originated at.
+     */
+    private long currentOpStartTime;
+
+    /**
+     * Tracer of the current operation's section, see {@link AudioTrace}.
+     */
+    private AudioTrace.Tracer currentOpTracer;
+
+    /**
+     * Operation waiting for the backend to confirm the route to
+     * {@link #pendingRouteDevice}, or -1 if none.
+     */
+    private int pendingRouteOp = -1;
+    private long pendingRouteStartTime;
+    private int pendingRouteDevice;
+
+    /**
+     * Snapshot of the state, replaced on every change. Read from any thread.
+     */
+    private final AtomicReference<AudioState> state
+            = new AtomicReference<>(AudioState.INITIAL);
+
+    AudioRouter(Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Checks whether the given mode is one of the supported ones.
+     *
+     * @param mode the audio mode.
+     * @return {@code true} if the mode is valid.
+     */
+    static boolean isValidMode(int mode) {
+        return mode == DEFAULT || mode == AUDIO_CALL || mode == VIDEO_CALL;
+    }
+
+    /**
+     * @return the routing metrics.
+     */
+    AudioMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the audio mode currently in use, or {@link #MODE_UNSET}.
+     */
+    int getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the last published state. Thread safe, the fields of the returned
+     * snapshot are always consistent with each other.
+     *
+     * @return the state.
+     */
+    AudioState getState() {
+        return state.get();
+    }
+
+    /**
+     * Sets the audio mode and updates the route accordingly.
+     *
+     * @param newMode the desired audio mode.
+     * @return {@code true} if the audio mode was set; {@code false},
+     * otherwise.
+     */
+    boolean setMode(int newMode) {
+        return updateAudioRoute(newMode, false);
+    }
+
+    /**
+     * Sets the user selected audio device as the active audio device. The
+     * selection is dropped if the device is not available.
+     *
+     * @param device the desired device, see {@link AudioDevices}.
+     */
+    void selectDevice(int device) {
+        if (!AudioDevices.contains(availableDevices, device)) {
+            userSelectedDevice = AudioDevices.NONE;
+            maybePublishState();
+            return;
+        }
+
+        if (mode != MODE_UNSET) {
+            unusableDevices &= ~device;
+            userSelectedDevice = device;
+            updateAudioRoute(mode, false);
+        }
+    }
+
+    /**
+     * Drops the user selected audio device, if any, and routes to the
+     * preferred one instead.
+     */
+    void clearSelectedDevice() {
+        if (userSelectedDevice == AudioDevices.NONE) {
+            return;
+        }
+        userSelectedDevice = AudioDevices.NONE;
+        if (mode != MODE_UNSET) {
+            updateAudioRoute(mode, false);
+        } else {
+            maybePublishState();
+        }
+    }
+
+    /**
+     * Sets the devices to be preferred in the given mode and updates the
+     * route accordingly.
+     *
+     * @param policyMode the audio mode the policy applies to.
+     * @param priorities the devices, most preferred first.
+     */
+    void setRoutingPolicy(int policyMode, int[] priorities) {
+        routingPolicy.setPriorities(policyMode, priorities);
+        updateAudioRoute();
+    }
+
+    /**
+     * Gets the currently selected audio device.
+     *
+     * @return The selected audio device, see {@link AudioDevices}.
+     */
+    int getSelectedDevice() {
+        return selectedDevice;
+    }
+
+    /**
+     * Gets the currently available audio devices.
+     *
+     * @return The available devices, as an {@link AudioDevices} mask.
+     */
+    int getAvailableDevices() {
+        return availableDevices;
+    }
+
+    /**
+     * Resets the current device selection.
+     */
+    void resetSelectedDevice() {
+        selectedDevice = AudioDevices.NONE;
+        userSelectedDevice = AudioDevices.NONE;
+        maybePublishState();
+    }
+
+    /**
+     * Adds a new device to the set of available devices.
+     *
+     * @param device The new device, see {@link AudioDevices}.
+     * @return Whether the set of available devices changed or not.
+     */
+    boolean addDevice(int device) {
+        return replaceDevices(availableDevices | device);
+    }
+
+    /**
+     * Removes a device from the set of available devices.
+     *
+     * @param device The old device to the removed, see {@link AudioDevices}.
+     * @return Whether the set of available devices changed or not.
+     */
+    boolean removeDevice(int device) {
+        return replaceDevices(availableDevices & ~device);
+    }
+
+    /**
+     * Replaces the current set of available devices with a new one. Nothing is
+     * done if the set didn't change.
+     *
+     * @param devices The new set of devices, see {@link AudioDevices}.
+     * @return Whether the set of available devices changed or not.
+     */
+    boolean replaceDevices(int devices) {
+        if (devices == availableDevices) {
+            return false;
+        }
+        availableDevices = devices;
+        unusableDevices = AudioDevices.NONE;
+        resetSelectedDevice();
+        return true;
+    }
+
+    /**
+     * Forgets the available devices, for when they are no longer being
+     * tracked. The device list is published again once they are.
+     */
+    void clearDevices() {
+        replaceDevices(AudioDevices.NONE);
+        deviceListDiff.reset();
+    }
+
+    /**
+     * Marks an available device as unusable and switches to the next best
+     * route. Used when a device failed to be brought up.
+     *
+     * @param device The device which failed, see {@link AudioDevices}.
+     */
+    void markDeviceUnusable(int device) {
+        unusableDevices |= device;
+        updateAudioRoute();
+    }
+
+    /**
+     * Re-sets the current audio route. Needed when devices changes have happened.
+     */
+    void updateAudioRoute() {
+        if (mode != MODE_UNSET) {
+            updateAudioRoute(mode, false);
+        }
+    }
+
+    /**
+     * Re-sets the current audio route. Needed when focus is lost and regained.
+     */
+    void resetAudioRoute() {
+        if (mode != MODE_UNSET) {
+            updateAudioRoute(mode, true);
+        }
+    }
+
+    /**
+     * Marks the current audio route as no longer in effect, e.g. changed by
+     * another app, so that the next route update sets it again.
+     */
+    void invalidateAudioRoute() {
+        audioRouteInvalid = true;
+    }
+
+    /**
+     * Records a device rescan triggered by a burst of device change callbacks.
+     *
+     * @param callbacks the number of callbacks handled by the rescan.
+     */
+    void onDeviceChangeRescan(int callbacks) {
+        metrics.increment(AudioMetrics.COUNTER_DEVICE_RESCANS, 1);
+        if (callbacks > 1) {
+            metrics.increment(AudioMetrics.COUNTER_COALESCED_CALLBACKS, callbacks - 1);
+        }
+    }
+
+    /**
+     * Gets the operation currently running. Can be called from any thread,
+     * e.g. to tell what a stalled audio thread is busy with.
+     *
+     * @return the operation type, see {@link AudioMetrics}, or -1 if none is
+     * running.
+     */
+    int getCurrentOperation() {
+        return currentOp;
+    }
+
+    /**
+     * Marks the start of an operation. The stages reached until
+     * {@link #endOperation()} is called are attributed to it.
+     *
+     * @param op the operation type, see {@link AudioMetrics}.
+     * @param startTime the time the operation originated at.
+     */
+    void beginOperation(int op, long startTime) {
+        currentOpTracer = AudioTrace.beginOperation(op);
+        currentOp = op;
+        currentOpStartTime = startTime;
+        metrics.record(op, AudioMetrics.STAGE_QUEUE, startTime);
+    }
+
+    /**
+     * Marks the end of the current operation.
+     */
+    void endOperation() {
+        currentOp = -1;
+        maybePublishState();
+        AudioTrace.end(currentOpTracer);
+        currentOpTracer = null;
+    }
+
+    /**
+     * Called by the backend once the given device is actually in use.
+     *
+     * @param device The device in use, see {@link AudioDevices}.
+     */
+    void onAudioRouteConfirmed(int device) {
+        if (pendingRouteOp != -1 && device == pendingRouteDevice) {
+            metrics.record(pendingRouteOp, AudioMetrics.STAGE_CONFIRMED, pendingRouteStartTime);
+            pendingRouteOp = -1;
+        }
+    }
+
+    /**
+     * Publishes the state unless an operation is running, in which case it's
+     * published once the operation ends, so that readers don't see its
+     * intermediate steps.
+     */
+    private void maybePublishState() {
+        if (currentOp == -1) {
+            publishState();
+        }
+    }
+
+    /**
+     * Publishes a new snapshot of the state, if it changed.
+     */
+    private void publishState() {
+        AudioState current = state.get();
+
+        if (!current.matches(mode, availableDevices, selectedDevice, userSelectedDevice)) {
+            state.set(new AudioState(current.getVersion() + 1,
+                    mode, availableDevices, selectedDevice, userSelectedDevice));
+        }
+    }
+
+    private void recordStage(int stage) {
+        if (currentOp != -1) {
+            metrics.record(currentOp, stage, currentOpStartTime);
+        }
+    }
+
+    /**
+     * Publishes the device list if it changed since the last time.
+     */
+    private void notifyDevicesChanged() {
+        int devices = DeviceListDiff.getVisibleDevices(availableDevices);
+
+        if (deviceListDiff.update(devices, selectedDevice)) {
+            // Readers must see the state the event is about.
+            publishState();
+            AudioTrace.Tracer tracer = AudioTrace.begin(AudioTrace.SECTION_EMIT);
+            try {
+                backend.notifyDevicesChanged(devices, selectedDevice);
+            } finally {
+                AudioTrace.end(tracer);
+            }
+            recordStage(AudioMetrics.STAGE_EMIT);
+        }
+    }
+
+    /**
+     * Updates the audio route for the given mode.
+     *
+     * @param mode the audio mode to be used when computing the audio route.
+     * @return {@code true} if the audio route was updated successfully;
+     * {@code false}, otherwise.
+     */
+    private boolean updateAudioRoute(int mode, boolean force) {
+        AudioTrace.Tracer tracer = AudioTrace.begin(AudioTrace.SECTION_HANDLER_MODE);
+        try {
+            if (!backend.setMode(mode)) {
+                return false;
+            }
+        } finally {
+            AudioTrace.end(tracer);
+        }
+        this.mode = mode;
+
+        if (mode == DEFAULT) {
+            recordStage(AudioMetrics.STAGE_HANDLER);
+            selectedDevice = AudioDevices.NONE;
+            userSelectedDevice = AudioDevices.NONE;
+
+            notifyDevicesChanged();
+            maybePublishState();
+            return true;
+        }
+
+        // Pick the desired device based on what's available, the mode and the
+        // user's selection.
+        tracer = AudioTrace.begin(AudioTrace.SECTION_ROUTE);
+        int audioDevice = routingPolicy.resolve(
+                mode, availableDevices & ~unusableDevices, userSelectedDevice);
+        AudioTrace.end(tracer);
+
+        // If the previously selected device and the current default one
+        // match, do nothing.
+        if (!force && !audioRouteInvalid && selectedDevice == audioDevice) {
+            recordStage(AudioMetrics.STAGE_HANDLER);
+            recordStage(AudioMetrics.STAGE_CONFIRMED);
+            maybePublishState();
+            return true;
+        }
+
+        selectedDevice = audioDevice;
+        audioRouteInvalid = false;
+
+        pendingRouteOp = currentOp;
+        pendingRouteStartTime = currentOpStartTime;
+        pendingRouteDevice = audioDevice;
+        tracer = AudioTrace.begin(AudioTrace.SECTION_HANDLER_ROUTE);
+        try {
+            backend.setAudioRoute(audioDevice);
+        } finally {
+            AudioTrace.end(tracer);
+        }
+        recordStage(AudioMetrics.STAGE_HANDLER);
+
+        notifyDevicesChanged();
+        maybePublishState();
+        return true;
+    }
+}
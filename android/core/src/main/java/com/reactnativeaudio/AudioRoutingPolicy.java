@@ -0,0 +1,148 @@
+package com.reactnativeaudio;
+
+/**
+ * Policy deciding which audio device gets used, given the audio mode, the set
+ * of available devices and the user's selection.
+ *
+ * Each mode has a list of devices in order of preference. The lists are
+ * compiled into a table holding the decision for every possible combination,
+ * so that resolving a route is a single array lookup.
+ *
+ * Not thread safe, it must only be used on the audio thread.
+ */
+class AudioRoutingPolicy {
+    /**
+     * Number of audio modes, see {@link AudioRouter#DEFAULT},
+     * {@link AudioRouter#AUDIO_CALL} and {@link AudioRouter#VIDEO_CALL}.
+     */
+    static final int MODE_COUNT = 3;
+
+    /**
+     * Number of possible user selections: none or any of the devices.
+     */
+    private static final int SELECTION_COUNT = AudioDevices.COUNT + 1;
+
+    /**
+     * Number of table entries for each mode.
+     */
+    private static final int MODE_STRIDE = (AudioDevices.ALL + 1) * SELECTION_COUNT;
+
+    /**
+     * Devices used when none of the preferred devices is available, the first
+     * available one is. The speaker goes first since it's heard whatever the
+     * user is holding or wearing.
+     */
+    private static final int[] FALLBACK_DEVICES = {
+        AudioDevices.SPEAKER,
+        AudioDevices.EARPIECE,
+        AudioDevices.HEADPHONES,
+        AudioDevices.BLUETOOTH
+    };
+
+    /**
+     * Preferred devices for each mode, most preferred first.
+     */
+    private final int[][] priorities = new int[MODE_COUNT][];
+
+    /**
+     * Resolved device for each mode, set of available devices and user
+     * selection, see {@link #indexOf(int, int, int)}.
+     */
+    private final byte[] table = new byte[MODE_COUNT * MODE_STRIDE];
+
+    AudioRoutingPolicy() {
+        // Video calls default to the speaker and audio calls to the earpiece,
+        // unless a wired or Bluetooth headset is connected.
+        setPriorities(AudioRouter.DEFAULT, new int[] {
+            AudioDevices.BLUETOOTH,
+            AudioDevices.HEADPHONES,
+            AudioDevices.SPEAKER
+        });
+        setPriorities(AudioRouter.AUDIO_CALL, new int[] {
+            AudioDevices.BLUETOOTH,
+            AudioDevices.HEADPHONES,
+            AudioDevices.EARPIECE,
+            AudioDevices.SPEAKER
+        });
+        setPriorities(AudioRouter.VIDEO_CALL, new int[] {
+            AudioDevices.BLUETOOTH,
+            AudioDevices.HEADPHONES,
+            AudioDevices.SPEAKER
+        });
+    }
+
+    /**
+     * Sets the preferred devices for the given mode and recompiles its part
+     * of the table.
+     *
+     * @param mode the audio mode.
+     * @param devices the {@link AudioDevices} types, most preferred first.
+     */
+    void setPriorities(int mode, int[] devices) {
+        priorities[mode] = devices.clone();
+        compile(mode);
+    }
+
+    /**
+     * Gets the preferred devices for the given mode.
+     *
+     * @param mode the audio mode.
+     * @return the {@link AudioDevices} types, most preferred first.
+     */
+    int[] getPriorities(int mode) {
+        return priorities[mode].clone();
+    }
+
+    /**
+     * Resolves the device to be used.
+     *
+     * @param mode the audio mode.
+     * @param availableDevices the available devices, as an
+     * {@link AudioDevices} mask.
+     * @param userSelectedDevice the device selected by the user, or
+     * {@link AudioDevices#NONE}.
+     * @return the device to be used, one of the available ones, or
+     * {@link AudioDevices#NONE} if none is.
+     */
+    int resolve(int mode, int availableDevices, int userSelectedDevice) {
+        return table[indexOf(mode, availableDevices, userSelectedDevice)];
+    }
+
+    private void compile(int mode) {
+        int[] preferred = priorities[mode];
+
+        for (int devices = 0; devices <= AudioDevices.ALL; devices++) {
+            int device = firstAvailable(preferred, devices);
+            if (device == AudioDevices.NONE) {
+                device = firstAvailable(FALLBACK_DEVICES, devices);
+            }
+
+            table[indexOf(mode, devices, AudioDevices.NONE)] = (byte) device;
+
+            // The user's selection wins when it's available.
+            for (int i = 0; i < AudioDevices.COUNT; i++) {
+                int selected = AudioDevices.valueAt(i);
+                table[indexOf(mode, devices, selected)]
+                    = (byte) (AudioDevices.contains(devices, selected) ? selected : device);
+            }
+        }
+    }
+
+    private static int firstAvailable(int[] candidates, int devices) {
+        for (int candidate : candidates) {
+            if (AudioDevices.contains(devices, candidate)) {
+                return candidate;
+            }
+        }
+        return AudioDevices.NONE;
+    }
+
+    private static int indexOf(int mode, int availableDevices, int userSelectedDevice) {
+        int selection = userSelectedDevice == AudioDevices.NONE
+            ? 0 : AudioDevices.indexOf(userSelectedDevice) + 1;
+
+        return mode * MODE_STRIDE
+            + (availableDevices & AudioDevices.ALL) * SELECTION_COUNT
+            + selection;
+    }
+}
@@ -0,0 +1,93 @@
+package com.reactnativeaudio;
+
+/**
+ * Immutable snapshot of the routing state of an {@link AudioRouter}. A new
+ * one is published on every change, so any thread can read a consistent
+ * mode, device list and selection without locking.
+ */
+final class AudioState {
+    /**
+     * State before anything was set.
+     */
+    static final AudioState INITIAL = new AudioState(
+            0, AudioRouter.MODE_UNSET, AudioDevices.NONE, AudioDevices.NONE, AudioDevices.NONE);
+
+    private final long version;
+    private final int mode;
+    private final int availableDevices;
+    private final int selectedDevice;
+    private final int userSelectedDevice;
+
+    AudioState(long version, int mode, int availableDevices, int selectedDevice,
+               int userSelectedDevice) {
+        this.version = version;
+        this.mode = mode;
+        this.availableDevices = availableDevices;
+        this.selectedDevice = selectedDevice;
+        this.userSelectedDevice = userSelectedDevice;
+    }
+
+    /**
+     * @return the number of states published before this one, for telling
+     * whether the state changed between two reads.
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the audio mode, or {@link AudioRouter#MODE_UNSET}.
+     */
+    int getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the available devices, as an {@link AudioDevices} mask.
+     */
+    int getAvailableDevices() {
+        return availableDevices;
+    }
+
+    /**
+     * @return the devices shown to the user, as an {@link AudioDevices} mask,
+     * see {@link DeviceListDiff#getVisibleDevices(int)}.
+     */
+    int getVisibleDevices() {
+        return DeviceListDiff.getVisibleDevices(availableDevices);
+    }
+
+    /**
+     * @return the device in use, or {@link AudioDevices#NONE}.
+     */
+    int getSelectedDevice() {
+        return selectedDevice;
+    }
+
+    /**
+     * @return the device selected by the user, or {@link AudioDevices#NONE}
+     * if the default one for the mode is used.
+     */
+    int getUserSelectedDevice() {
+        return userSelectedDevice;
+    }
+
+    /**
+     * Checks whether this state holds the given values.
+     */
+    boolean matches(int mode, int availableDevices, int selectedDevice, int userSelectedDevice) {
+        return this.mode == mode
+                && this.availableDevices == availableDevices
+                && this.selectedDevice == selectedDevice
+                && this.userSelectedDevice == userSelectedDevice;
+    }
+
+    @Override
+    public String toString() {
+        return "AudioState{version=" + version
+                + ", mode=" + mode
+                + ", available=" + availableDevices
+                + ", selected=" + selectedDevice
+                + ", userSelected=" + userSelectedDevice + '}';
+    }
+}
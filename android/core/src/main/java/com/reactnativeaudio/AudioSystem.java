@@ -0,0 +1,39 @@
+package com.reactnativeaudio;
+
+/**
+ * The subset of the Android {@code AudioManager} API used for routing. Lets
+ * the routing state be driven by a fake audio system off-device.
+ *
+ * Mode values are the {@code AudioManager.MODE_*} ones.
+ */
+interface AudioSystem {
+    /**
+     * {@code AudioManager.MODE_NORMAL}.
+     */
+    int MODE_NORMAL = 0;
+
+    /**
+     * {@code AudioManager.MODE_IN_COMMUNICATION}.
+     */
+    int MODE_IN_COMMUNICATION = 3;
+
+    int getMode();
+
+    void setMode(int mode);
+
+    boolean isSpeakerphoneOn();
+
+    void setSpeakerphoneOn(boolean on);
+
+    void startBluetoothSco();
+
+    void stopBluetoothSco();
+
+    boolean isBluetoothScoOn();
+
+    void setBluetoothScoOn(boolean on);
+
+    boolean isMicrophoneMute();
+
+    void setMicrophoneMute(boolean mute);
+}
@@ -0,0 +1,189 @@
+package com.reactnativeaudio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trace sections marking the work of the audio pipeline, so that routing
+ * stalls can be lined up with the rest of the app in a system trace
+ * (systrace, Perfetto) rather than guessed from the logs.
+ *
+ * Each audio thread task is a section named after its operation, see
+ * {@link AudioMetrics#getOpName(int)}, holding sections for its steps: the
+ * device rescan, the route decision, the device handler calls and the emit
+ * to JS. The time a task waits on the audio thread's queue is an async slice
+ * named "queued " followed by the operation name, with a cookie of its own
+ * which the task carries, since tasks of the same operation may be queued at
+ * the same time.
+ *
+ * The sections go to a {@link Tracer}: {@code android.os.Trace} on Android,
+ * a recording one on the JVM. Tracing is off unless a tracer is set, in which
+ * case tracing a section only costs a volatile read. The section names are
+ * constants, so that nothing is allocated either way.
+ *
+ * Sections are begun and ended as follows, so that they stay balanced even
+ * if the tracer changes meanwhile:
+ * <pre>
+ * AudioTrace.Tracer tracer = AudioTrace.begin(AudioTrace.SECTION_ROUTE);
+ * try {
+ *     ...
+ * } finally {
+ *     AudioTrace.end(tracer);
+ * }
+ * </pre>
+ *
+ * Thread safe.
+ */
+final class AudioTrace {
+    /**
+     * Receives the trace sections.
+     */
+    interface Tracer {
+        /**
+         * Begins a section on the calling thread, nested in the current one.
+         */
+        void beginSection(String name);
+
+        /**
+         * Ends the most recent section begun on the calling thread.
+         */
+        void endSection();
+
+        /**
+         * Begins a slice which may end on another thread.
+         *
+         * @param name the slice name.
+         * @param cookie identifies the slice among those with the same name.
+         */
+        void beginAsyncSection(String name, int cookie);
+
+        /**
+         * Ends a slice begun with {@link #beginAsyncSection(String, int)}.
+         */
+        void endAsyncSection(String name, int cookie);
+    }
+
+    /**
+     * Sections of the steps of an audio thread task.
+     */
+    static final String SECTION_RESCAN        = "rescanDevices";
+    static final String SECTION_ROUTE         = "decideRoute";
+    static final String SECTION_HANDLER_MODE  = "handler.setMode";
+    static final String SECTION_HANDLER_ROUTE = "handler.setAudioRoute";
+    static final String SECTION_EMIT          = "emitDevices";
+
+    /**
+     * Names of the queue slices, indexed by operation.
+     */
+    private static final String[] QUEUED_NAMES = new String[AudioMetrics.getOpCount()];
+
+    static {
+        for (int op = 0; op < QUEUED_NAMES.length; op++) {
+            QUEUED_NAMES[op] = "queued " + AudioMetrics.getOpName(op);
+        }
+    }
+
+    /**
+     * Cookie returned by {@link #beginQueued(int)} when tracing is off.
+     */
+    static final int NO_COOKIE = 0;
+
+    private static final AtomicInteger lastCookie = new AtomicInteger();
+
+    private static volatile Tracer tracer;
+
+    private AudioTrace() {
+    }
+
+    /**
+     * Sets the tracer receiving the sections.
+     *
+     * @param tracer the tracer, {@code null} to turn tracing off.
+     */
+    static void setTracer(Tracer tracer) {
+        AudioTrace.tracer = tracer;
+    }
+
+    /**
+     * @return whether tracing is on.
+     */
+    static boolean isEnabled() {
+        return tracer != null;
+    }
+
+    /**
+     * Begins a section on the calling thread.
+     *
+     * @param name the section name, a constant.
+     * @return the tracer the section went to, to be passed to
+     * {@link #end(Tracer)}, or {@code null} if tracing is off.
+     */
+    static Tracer begin(String name) {
+        Tracer current = tracer;
+
+        if (current != null) {
+            current.beginSection(name);
+        }
+        return current;
+    }
+
+    /**
+     * Ends a section begun with {@link #begin(String)}.
+     *
+     * @param tracer the tracer it returned.
+     */
+    static void end(Tracer tracer) {
+        if (tracer != null) {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Begins the section of an operation's task, see {@link #begin(String)}.
+     *
+     * @param op the operation type, see {@link AudioMetrics}.
+     */
+    static Tracer beginOperation(int op) {
+        return begin(AudioMetrics.getOpName(op));
+    }
+
+    /**
+     * Begins the slice of an operation waiting for the audio thread, right
+     * before its task is queued.
+     *
+     * @param op the operation type, see {@link AudioMetrics}.
+     * @return the cookie of the slice, to be carried by the task and passed
+     * to {@link #endQueued(int, int)}, or {@link #NO_COOKIE} if tracing is
+     * off.
+     */
+    static int beginQueued(int op) {
+        Tracer current = tracer;
+
+        if (current == null) {
+            return NO_COOKIE;
+        }
+
+        int cookie = lastCookie.incrementAndGet();
+        if (cookie == NO_COOKIE) {
+            // Wrapped around.
+            cookie = lastCookie.incrementAndGet();
+        }
+        current.beginAsyncSection(QUEUED_NAMES[op], cookie);
+        return cookie;
+    }
+
+    /**
+     * Ends the slice of an operation waiting for the audio thread, once its
+     * task runs or is dropped. Nothing is done if tracing was off when the
+     * slice was to be begun, or is off now.
+     *
+     * @param op the operation type, see {@link AudioMetrics}.
+     * @param cookie the cookie returned by {@link #beginQueued(int)}.
+     */
+    static void endQueued(int op, int cookie) {
+        Tracer current = tracer;
+
+        if (current != null && cookie != NO_COOKIE) {
+            current.endAsyncSection(QUEUED_NAMES[op], cookie);
+        }
+    }
+}
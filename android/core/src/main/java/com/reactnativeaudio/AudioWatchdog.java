@@ -0,0 +1,211 @@
+package com.reactnativeaudio;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Detects audio thread tasks which run for longer than a threshold, e.g.
+ * stuck in an {@code AudioManager} or Telecom binder call. Every later task
+ * waits behind such a task, so a single one leaves the audio routing stuck,
+ * e.g. on the speaker.
+ *
+ * The audio thread reports the start and end of each task. Another thread
+ * calls {@link #check(long, Thread, int)} once the threshold elapsed after a
+ * task started, which reports the task as stalled if it's still running,
+ * along with the stack of the audio thread. A task is only reported once,
+ * and its report is completed with its whole duration once it ends.
+ *
+ * The last {@link #MAX_REPORTS} reports are kept.
+ *
+ * Thread safe.
+ */
+final class AudioWatchdog {
+    /**
+     * Number of reports kept.
+     */
+    static final int MAX_REPORTS = 8;
+
+    /**
+     * Report of a stalled task.
+     */
+    static final class StallReport {
+        /**
+         * Description of the task, e.g. the posted {@code Runnable}.
+         */
+        final String task;
+
+        /**
+         * The operation running when the stall was detected, see
+         * {@link AudioMetrics}, or -1 if none was.
+         */
+        final int op;
+
+        /**
+         * The stack of the audio thread when the stall was detected.
+         */
+        final String stack;
+
+        /**
+         * The time the task started at, see {@link AudioMetrics#now()}.
+         */
+        final long startTime;
+
+        private long duration;
+
+        private boolean ended;
+
+        StallReport(String task, int op, String stack, long startTime, long duration) {
+            this.task = task;
+            this.op = op;
+            this.stack = stack;
+            this.startTime = startTime;
+            this.duration = duration;
+        }
+
+        /**
+         * @return how long the task ran for, in nanoseconds, or has been
+         * running for if it didn't end yet.
+         */
+        synchronized long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return whether the task ended.
+         */
+        synchronized boolean hasEnded() {
+            return ended;
+        }
+
+        synchronized void end(long duration) {
+            this.duration = duration;
+            ended = true;
+        }
+    }
+
+    private final long threshold;
+
+    /**
+     * The running task, {@code null} if none is.
+     */
+    private String currentTask;
+
+    private long currentTaskStartTime;
+
+    /**
+     * Number of tasks started, identifying the running one.
+     */
+    private long taskCount;
+
+    /**
+     * The report of the running task, {@code null} unless it was reported.
+     */
+    private StallReport currentReport;
+
+    private final ArrayDeque<StallReport> reports = new ArrayDeque<>();
+
+    /**
+     * @param threshold the time, in nanoseconds, after which a task is
+     * reported as stalled.
+     */
+    AudioWatchdog(long threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return the time, in nanoseconds, after which a task is reported as
+     * stalled.
+     */
+    long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Called on the audio thread when a task starts.
+     *
+     * @param task a description of the task.
+     * @param now the current time, see {@link AudioMetrics#now()}.
+     */
+    synchronized void onTaskStarted(String task, long now) {
+        currentTask = task;
+        currentTaskStartTime = now;
+        taskCount++;
+        currentReport = null;
+    }
+
+    /**
+     * Called on the audio thread when a task ends.
+     *
+     * @param now the current time, see {@link AudioMetrics#now()}.
+     * @return the report of the task if it was reported as stalled, now
+     * holding its whole duration, {@code null} otherwise.
+     */
+    synchronized StallReport onTaskEnded(long now) {
+        StallReport report = currentReport;
+
+        if (report != null) {
+            report.end(now - currentTaskStartTime);
+        }
+        currentTask = null;
+        currentReport = null;
+        return report;
+    }
+
+    /**
+     * Checks whether the running task exceeded the threshold.
+     *
+     * @param now the current time, see {@link AudioMetrics#now()}.
+     * @param thread the audio thread, whose stack is captured.
+     * @param op the operation running, see {@link AudioMetrics}, or -1 if
+     * none is.
+     * @return the report of the task if it just got to be stalled,
+     * {@code null} otherwise.
+     */
+    StallReport check(long now, Thread thread, int op) {
+        long task;
+
+        synchronized (this) {
+            if (currentTask == null
+                    || currentReport != null
+                    || now - currentTaskStartTime < threshold) {
+                return null;
+            }
+            task = taskCount;
+        }
+
+        // Captured outside of the lock, the audio thread would block on it
+        // when the task ends.
+        String stack = formatStack(thread.getStackTrace());
+
+        synchronized (this) {
+            if (currentTask == null || currentReport != null || taskCount != task) {
+                // Ended meanwhile.
+                return null;
+            }
+            currentReport
+                    = new StallReport(currentTask, op, stack, currentTaskStartTime, now - currentTaskStartTime);
+            reports.addLast(currentReport);
+            if (reports.size() > MAX_REPORTS) {
+                reports.removeFirst();
+            }
+            return currentReport;
+        }
+    }
+
+    /**
+     * @return the last reports, oldest first.
+     */
+    synchronized List<StallReport> getReports() {
+        return new ArrayList<>(reports);
+    }
+
+    private static String formatStack(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+
+        for (StackTraceElement element : stack) {
+            sb.append("at ").append(element).append('\n');
+        }
+        return sb.toString();
+    }
+}
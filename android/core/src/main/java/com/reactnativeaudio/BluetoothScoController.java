@@ -0,0 +1,222 @@
+package com.reactnativeaudio;
+
+/**
+ * State machine handling the Bluetooth SCO audio link. The link comes up
+ * asynchronously after {@link AudioSystem#startBluetoothSco()}, sometimes
+ * seconds later or never, so the connection is driven by the
+ * {@code AudioManager.ACTION_SCO_AUDIO_STATE_UPDATED} broadcasts, which must
+ * be fed to {@link #onScoAudioStateUpdated(int, int)}. Attempts which fail or
+ * time out are retried a bounded number of times before giving up, letting
+ * the {@link Listener} fall back to another route.
+ *
+ * Must only be used on the audio thread.
+ */
+class BluetoothScoController {
+
+    /**
+     * Time given to each connection attempt, in milliseconds.
+     */
+    static final int CONNECT_TIMEOUT = 2000;
+
+    /**
+     * Number of connection attempts before giving up.
+     */
+    static final int MAX_ATTEMPTS = 2;
+
+    /**
+     * Link states.
+     */
+    static final int STATE_DISCONNECTED = 0;
+    static final int STATE_CONNECTING   = 1;
+    static final int STATE_CONNECTED    = 2;
+
+    /**
+     * SCO audio states reported by the system, the values of
+     * {@code AudioManager.SCO_AUDIO_STATE_*}.
+     */
+    static final int SCO_AUDIO_STATE_ERROR        = -1;
+    static final int SCO_AUDIO_STATE_DISCONNECTED = 0;
+    static final int SCO_AUDIO_STATE_CONNECTED    = 1;
+    static final int SCO_AUDIO_STATE_CONNECTING   = 2;
+
+    /**
+     * Runs tasks on the audio thread.
+     */
+    interface Scheduler {
+        /**
+         * Runs the given task on the audio thread after the given delay.
+         *
+         * @param task the task to run.
+         * @param delayMs the delay, in milliseconds.
+         */
+        void schedule(Runnable task, long delayMs);
+    }
+
+    /**
+     * Receives the outcome of the connection attempts.
+     */
+    interface Listener {
+        /**
+         * The SCO link is up.
+         *
+         * @param latency time since the link was first requested, in
+         * nanoseconds.
+         * @param attempts number of attempts it took.
+         */
+        void onBluetoothScoConnected(long latency, int attempts);
+
+        /**
+         * The SCO link could not be established, or was lost.
+         */
+        void onBluetoothScoFailed();
+
+        /**
+         * A connection attempt failed, it will be retried if there are
+         * attempts left.
+         *
+         * @param attempt the number of the attempt which failed.
+         * @param reason why it failed.
+         */
+        void onBluetoothScoAttemptFailed(int attempt, String reason);
+    }
+
+    private final Scheduler scheduler;
+    private final AudioManagerShadow audioManagerShadow;
+    private final Listener listener;
+
+    private int state = STATE_DISCONNECTED;
+
+    /**
+     * Number of attempts done for the current connection.
+     */
+    private int attempts = 0;
+
+    /**
+     * Time at which the current connection was first requested.
+     */
+    private long connectStartTime;
+
+    /**
+     * Incremented on every attempt so that stale timeouts can be ignored.
+     */
+    private int attemptId = 0;
+
+    BluetoothScoController(Scheduler scheduler, AudioManagerShadow audioManagerShadow, Listener listener) {
+        this.scheduler = scheduler;
+        this.audioManagerShadow = audioManagerShadow;
+        this.listener = listener;
+    }
+
+    /**
+     * Cancels the pending timeouts, for when SCO state changes are no longer
+     * being listened to. The link is left as is.
+     */
+    void stop() {
+        attemptId++;
+    }
+
+    /**
+     * Requests the SCO link to be brought up. Nothing is done if it's already
+     * coming up. If it's already up, audio is only routed to it again, in
+     * case another app changed that.
+     */
+    void connect() {
+        if (state == STATE_CONNECTED) {
+            audioManagerShadow.setBluetoothScoOn(true);
+            return;
+        }
+        if (state != STATE_DISCONNECTED) {
+            return;
+        }
+        attempts = 0;
+        connectStartTime = AudioMetrics.now();
+        startAttempt();
+    }
+
+    /**
+     * Tears the SCO link down.
+     */
+    void disconnect() {
+        attemptId++;
+        state = STATE_DISCONNECTED;
+        audioManagerShadow.setBluetoothScoOn(false);
+        audioManagerShadow.setBluetoothScoStarted(false);
+    }
+
+    /**
+     * @return the current link state.
+     */
+    int getState() {
+        return state;
+    }
+
+    private void startAttempt() {
+        final int id = ++attemptId;
+
+        attempts++;
+        state = STATE_CONNECTING;
+        audioManagerShadow.setBluetoothScoStarted(true);
+
+        scheduler.schedule(() -> {
+            if (id == attemptId && state == STATE_CONNECTING) {
+                onAttemptFailed("timed out");
+            }
+        }, CONNECT_TIMEOUT);
+    }
+
+    private void onAttemptFailed(String reason) {
+        listener.onBluetoothScoAttemptFailed(attempts, reason);
+
+        // Release our SCO request so that the next one starts from scratch.
+        audioManagerShadow.setBluetoothScoOn(false);
+        audioManagerShadow.setBluetoothScoStarted(false);
+
+        if (attempts < MAX_ATTEMPTS) {
+            startAttempt();
+            return;
+        }
+
+        attemptId++;
+        state = STATE_DISCONNECTED;
+        listener.onBluetoothScoFailed();
+    }
+
+    /**
+     * Handles a SCO audio state update broadcast by the system.
+     *
+     * @param scoState the new state, one of the {@code SCO_AUDIO_STATE_*}
+     * constants.
+     * @param previousScoState the previous state.
+     */
+    void onScoAudioStateUpdated(int scoState, int previousScoState) {
+        switch (scoState) {
+            case SCO_AUDIO_STATE_CONNECTED:
+                if (state == STATE_CONNECTING) {
+                    long latency = AudioMetrics.now() - connectStartTime;
+
+                    attemptId++;
+                    state = STATE_CONNECTED;
+                    audioManagerShadow.setBluetoothScoOn(true);
+                    listener.onBluetoothScoConnected(latency, attempts);
+                }
+                break;
+            case SCO_AUDIO_STATE_DISCONNECTED:
+                if (state == STATE_CONNECTED) {
+                    // The link went away behind our back, e.g. the headset was
+                    // turned off.
+                    state = STATE_DISCONNECTED;
+                    audioManagerShadow.invalidateBluetoothSco();
+                    listener.onBluetoothScoFailed();
+                } else if (state == STATE_CONNECTING
+                        && previousScoState == SCO_AUDIO_STATE_CONNECTING) {
+                    onAttemptFailed("failed");
+                }
+                break;
+            case SCO_AUDIO_STATE_ERROR:
+                if (state == STATE_CONNECTING) {
+                    onAttemptFailed("errored");
+                }
+                break;
+        }
+    }
+}
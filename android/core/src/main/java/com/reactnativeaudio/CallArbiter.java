@@ -0,0 +1,95 @@
+package com.reactnativeaudio;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which of several simultaneous calls has the audio. The audio
+ * follows the foreground call: the active call most recently activated,
+ * connected, answered, resumed or brought to the foreground. When it goes on
+ * hold or ends, the previous one takes over.
+ *
+ * Under {@link #POLICY_HOLD_OTHERS} activating a call puts the other active
+ * ones on hold, under {@link #POLICY_KEEP_OTHERS} they stay active in the
+ * background.
+ *
+ * Thread safe: calls are activated from both the Telecom and the bridge
+ * threads.
+ */
+final class CallArbiter {
+    /**
+     * Activating a call puts the other active ones on hold.
+     */
+    static final int POLICY_HOLD_OTHERS = 0;
+
+    /**
+     * Activating a call leaves the other active ones as they are.
+     */
+    static final int POLICY_KEEP_OTHERS = 1;
+
+    /**
+     * Active calls, by UUID, most recently activated last.
+     */
+    private final ArrayList<String> activeCalls = new ArrayList<>();
+
+    private int policy = POLICY_KEEP_OTHERS;
+
+    static boolean isValidPolicy(int policy) {
+        return policy == POLICY_HOLD_OTHERS || policy == POLICY_KEEP_OTHERS;
+    }
+
+    synchronized int getPolicy() {
+        return policy;
+    }
+
+    synchronized void setPolicy(int policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @return the UUID of the call which has the audio, or {@code null} if
+     * none is active.
+     */
+    synchronized String getForegroundCall() {
+        return activeCalls.isEmpty() ? null : activeCalls.get(activeCalls.size() - 1);
+    }
+
+    /**
+     * Makes a call the foreground one, as it became active or was brought to
+     * the foreground.
+     *
+     * @param callUUID the call's UUID.
+     * @return the UUIDs of the calls to be put on hold as a result, which
+     * are no longer active as far as the arbiter is concerned.
+     */
+    synchronized List<String> activate(String callUUID) {
+        activeCalls.remove(callUUID);
+
+        List<String> toHold = Collections.emptyList();
+        if (policy == POLICY_HOLD_OTHERS && !activeCalls.isEmpty()) {
+            toHold = new ArrayList<>(activeCalls);
+            activeCalls.clear();
+        }
+        activeCalls.add(callUUID);
+        return toHold;
+    }
+
+    /**
+     * Removes a call which went on hold or ended.
+     *
+     * @param callUUID the call's UUID.
+     * @return the UUID of the call which becomes the foreground one as a
+     * result, or {@code null} if the foreground call didn't change or no
+     * call is left.
+     */
+    synchronized String deactivate(String callUUID) {
+        int index = activeCalls.indexOf(callUUID);
+
+        if (index == -1) {
+            return null;
+        }
+        activeCalls.remove(index);
+        return index == activeCalls.size() ? getForegroundCall() : null;
+    }
+}
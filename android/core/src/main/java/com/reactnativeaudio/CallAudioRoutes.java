@@ -0,0 +1,64 @@
+package com.reactnativeaudio;
+
+/**
+ * Translation between {@link AudioDevices} and the {@code CallAudioState}
+ * routes used by ConnectionService.
+ */
+final class CallAudioRoutes {
+    /**
+     * Same values as the {@code CallAudioState} "ROUTE_" constants, which are
+     * part of the public Android API.
+     */
+    static final int ROUTE_EARPIECE      = 0x00000001;
+    static final int ROUTE_BLUETOOTH     = 0x00000002;
+    static final int ROUTE_WIRED_HEADSET = 0x00000004;
+    static final int ROUTE_SPEAKER       = 0x00000008;
+
+    private CallAudioRoutes() {
+    }
+
+    /**
+     * Converts any of the {@link AudioDevices} types into the corresponding
+     * {@code CallAudioState} "ROUTE_" number.
+     *
+     * @param audioDevice one of the {@link AudioDevices} types.
+     * @return a route number, {@link #ROUTE_SPEAKER} if no match is found.
+     */
+    static int toRoute(int audioDevice) {
+        switch (audioDevice) {
+            case AudioDevices.BLUETOOTH:
+                return ROUTE_BLUETOOTH;
+            case AudioDevices.EARPIECE:
+                return ROUTE_EARPIECE;
+            case AudioDevices.HEADPHONES:
+                return ROUTE_WIRED_HEADSET;
+            case AudioDevices.SPEAKER:
+            default:
+                return ROUTE_SPEAKER;
+        }
+    }
+
+    /**
+     * Converts given route mask into a set of {@link AudioDevices}.
+     *
+     * @param supportedRouteMask an integer coming from
+     * {@code CallAudioState#getSupportedRouteMask()}.
+     * @return an {@link AudioDevices} mask.
+     */
+    static int toDevices(int supportedRouteMask) {
+        int devices = AudioDevices.NONE;
+        if ((supportedRouteMask & ROUTE_EARPIECE) == ROUTE_EARPIECE) {
+            devices |= AudioDevices.EARPIECE;
+        }
+        if ((supportedRouteMask & ROUTE_BLUETOOTH) == ROUTE_BLUETOOTH) {
+            devices |= AudioDevices.BLUETOOTH;
+        }
+        if ((supportedRouteMask & ROUTE_SPEAKER) == ROUTE_SPEAKER) {
+            devices |= AudioDevices.SPEAKER;
+        }
+        if ((supportedRouteMask & ROUTE_WIRED_HEADSET) == ROUTE_WIRED_HEADSET) {
+            devices |= AudioDevices.HEADPHONES;
+        }
+        return devices;
+    }
+}
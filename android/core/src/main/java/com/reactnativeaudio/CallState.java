@@ -0,0 +1,94 @@
+package com.reactnativeaudio;
+
+/**
+ * States of a call handled by {@code ConnectionService}, and the transitions
+ * allowed between them:
+ *
+ * <pre>
+ * PENDING ---&gt; DIALING ---&gt; ACTIVE ---&gt; DISCONNECTING
+ *    |                           ^
+ *    +------&gt; RINGING --------+
+ * </pre>
+ *
+ * Outgoing calls go through {@link #DIALING}, incoming ones through
+ * {@link #RINGING}. Both can also go to {@link #DISCONNECTING} directly.
+ * Active calls can be put on {@link #HOLDING} and back, or be ended from it.
+ *
+ * Every state but {@link #DISCONNECTED} can also go to it directly.
+ */
+final class CallState {
+    /**
+     * The call was requested, Telecom didn't create its connection yet.
+     */
+    static final int PENDING       = 0;
+
+    /**
+     * The connection was created, the call isn't connected yet.
+     */
+    static final int DIALING       = 1;
+
+    /**
+     * The call is connected.
+     */
+    static final int ACTIVE        = 2;
+
+    /**
+     * The call is being ended, Telecom didn't confirm it yet.
+     */
+    static final int DISCONNECTING = 3;
+
+    /**
+     * The call ended. Final.
+     */
+    static final int DISCONNECTED  = 4;
+
+    /**
+     * The connection of an incoming call was created, the call isn't
+     * answered yet.
+     */
+    static final int RINGING       = 5;
+
+    /**
+     * The call is on hold, e.g. while a cellular call takes over.
+     */
+    static final int HOLDING       = 6;
+
+    private static final String[] NAMES = {
+        "PENDING", "DIALING", "ACTIVE", "DISCONNECTING", "DISCONNECTED", "RINGING", "HOLDING"
+    };
+
+    /**
+     * States reachable from each state, as a mask of {@code 1 << state}.
+     */
+    private static final int[] TRANSITIONS = {
+        /* PENDING */       1 << DIALING | 1 << RINGING | 1 << DISCONNECTED,
+        /* DIALING */       1 << ACTIVE | 1 << DISCONNECTING | 1 << DISCONNECTED,
+        /* ACTIVE */        1 << HOLDING | 1 << DISCONNECTING | 1 << DISCONNECTED,
+        /* DISCONNECTING */ 1 << DISCONNECTED,
+        /* DISCONNECTED */  0,
+        /* RINGING */       1 << ACTIVE | 1 << DISCONNECTING | 1 << DISCONNECTED,
+        /* HOLDING */       1 << ACTIVE | 1 << DISCONNECTING | 1 << DISCONNECTED
+    };
+
+    private CallState() {
+    }
+
+    /**
+     * Checks whether a call can go from one state to another.
+     *
+     * @param from the current state.
+     * @param to the new state.
+     * @return {@code true} if the transition is allowed.
+     */
+    static boolean canMove(int from, int to) {
+        return (TRANSITIONS[from] & (1 << to)) != 0;
+    }
+
+    /**
+     * @param state the call state.
+     * @return the name of the state, for logging.
+     */
+    static String getName(int state) {
+        return NAMES[state];
+    }
+}
@@ -0,0 +1,97 @@
+package com.reactnativeaudio;
+
+import java.util.ArrayDeque;
+
+/**
+ * Queue of the commands to be carried out on the audio thread, in the order
+ * they were made. A command offered while the last queued one is of the same
+ * kind supersedes it, so that a burst of calls only results in the last
+ * intent being carried out once the audio thread gets to it.
+ *
+ * Commands are never reordered, nor superseded across a command of another
+ * kind, since what a command does may depend on the ones before it: e.g. a
+ * device selected, a mode set, then another device selected are all carried
+ * out, in that order.
+ *
+ * Every command queued must be matched by a {@link #take()} scheduled on the
+ * audio thread, which takes the oldest one.
+ *
+ * Thread safe: commands are offered from the bridge threads and taken on the
+ * audio thread.
+ *
+ * @param <T> the command type.
+ */
+final class CommandQueue<T extends CommandQueue.Command> {
+    /**
+     * A queued command.
+     */
+    static class Command {
+        /**
+         * The kind of the command, from {@code 0} to the number of kinds the
+         * queue was created for.
+         */
+        final int kind;
+
+        Command(int kind) {
+            this.kind = kind;
+        }
+    }
+
+    private final ArrayDeque<T> commands = new ArrayDeque<>();
+
+    /**
+     * Number of commands of each kind superseded since the last
+     * {@link #takeSuperseded(int)}.
+     */
+    private final int[] superseded;
+
+    /**
+     * @param kinds the number of kinds of commands.
+     */
+    CommandQueue(int kinds) {
+        superseded = new int[kinds];
+    }
+
+    /**
+     * Offers a command, superseding the last queued one if it's of the same
+     * kind.
+     *
+     * @param command the command.
+     * @return the superseded command, or {@code null} if the command was
+     * queued after the others, in which case the caller must schedule a
+     * {@link #take()}.
+     */
+    synchronized T offer(T command) {
+        T last = commands.peekLast();
+
+        if (last != null && last.kind == command.kind) {
+            commands.pollLast();
+            commands.addLast(command);
+            superseded[command.kind]++;
+            return last;
+        }
+        commands.addLast(command);
+        return null;
+    }
+
+    /**
+     * Takes the oldest command.
+     *
+     * @return the command, or {@code null} if none is queued.
+     */
+    synchronized T take() {
+        return commands.pollFirst();
+    }
+
+    /**
+     * @param kind the kind of commands.
+     * @return the number of commands of the given kind superseded since the
+     * last call.
+     */
+    synchronized int takeSuperseded(int kind) {
+        int count = superseded[kind];
+
+        superseded[kind] = 0;
+        return count;
+    }
+}
@@ -0,0 +1,51 @@
+package com.reactnativeaudio;
+
+/**
+ * Remembers the last device list published to JS, so that publishing the
+ * same list again can be skipped.
+ */
+class DeviceListDiff {
+    private int devices = -1;
+    private int selectedDevice = -1;
+
+    /**
+     * Gets the devices to be shown to the user out of the available ones. The
+     * earpiece is hidden when headphones are plugged in.
+     *
+     * @param availableDevices the available devices, as an
+     * {@link AudioDevices} mask.
+     * @return the devices to be shown, as an {@link AudioDevices} mask.
+     */
+    static int getVisibleDevices(int availableDevices) {
+        if (AudioDevices.contains(availableDevices, AudioDevices.HEADPHONES)) {
+            return availableDevices & ~AudioDevices.EARPIECE;
+        }
+        return availableDevices;
+    }
+
+    /**
+     * Records the given device list as published if it differs from the last
+     * one.
+     *
+     * @param newDevices the devices, as an {@link AudioDevices} mask.
+     * @param newSelectedDevice the device in use.
+     * @return {@code true} if the list changed and must be published.
+     */
+    boolean update(int newDevices, int newSelectedDevice) {
+        if (newDevices == devices && newSelectedDevice == selectedDevice) {
+            return false;
+        }
+        devices = newDevices;
+        selectedDevice = newSelectedDevice;
+        return true;
+    }
+
+    /**
+     * Forgets the last published list, so that the next one is published
+     * regardless.
+     */
+    void reset() {
+        devices = -1;
+        selectedDevice = -1;
+    }
+}
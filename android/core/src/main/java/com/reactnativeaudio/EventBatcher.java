@@ -0,0 +1,113 @@
+package com.reactnativeaudio;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Accumulates the events sent to JS so that they are flushed in batches, a
+ * single bridge call per frame or interval, rather than one bridge call per
+ * event.
+ *
+ * State events, such as the device list, describe the whole state, so only
+ * the latest one matters: an event added while another one with the same name
+ * is pending replaces it, and moves to the end of the batch so that the order
+ * relative to the other events is kept. The other events, such as those of a
+ * call's lifecycle, are all delivered in the order they were added.
+ *
+ * Thread safe: events are added from the audio, Telecom and bridge threads,
+ * and taken on the thread flushing them.
+ *
+ * @param <T> the event data type.
+ */
+final class EventBatcher<T> {
+    /**
+     * A pending event.
+     *
+     * @param <T> the event data type.
+     */
+    static final class Event<T> {
+        final String name;
+        final T data;
+
+        Event(String name, T data) {
+            this.name = name;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Names of the state events, for which only the latest one is delivered.
+     */
+    private final Set<String> stateEvents;
+
+    private ArrayList<Event<T>> pending = new ArrayList<>();
+
+    /**
+     * Number of state events replaced by a later one since the last
+     * {@link #takeMerged()}.
+     */
+    private int merged;
+
+    /**
+     * @param stateEvents the names of the state events, for which only the
+     * latest one is delivered.
+     */
+    EventBatcher(Collection<String> stateEvents) {
+        this.stateEvents = new HashSet<>(stateEvents);
+    }
+
+    /**
+     * Adds an event to the pending batch.
+     *
+     * @param name the event name.
+     * @param data the event data.
+     * @return {@code true} if the batch was empty, in which case the caller
+     * must schedule a {@link #take()}.
+     */
+    synchronized boolean add(String name, T data) {
+        boolean first = pending.isEmpty();
+
+        if (!first && stateEvents.contains(name)) {
+            for (int i = 0; i < pending.size(); i++) {
+                if (pending.get(i).name.equals(name)) {
+                    pending.remove(i);
+                    merged++;
+                    break;
+                }
+            }
+        }
+        pending.add(new Event<>(name, data));
+        return first;
+    }
+
+    /**
+     * Takes the pending batch.
+     *
+     * @return the events, oldest first, empty if none is pending.
+     */
+    synchronized List<Event<T>> take() {
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Event<T>> events = pending;
+
+        pending = new ArrayList<>();
+        return events;
+    }
+
+    /**
+     * @return the number of state events replaced by a later one since the
+     * last call.
+     */
+    synchronized int takeMerged() {
+        int count = merged;
+
+        merged = 0;
+        return count;
+    }
+}
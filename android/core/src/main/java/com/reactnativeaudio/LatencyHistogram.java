@@ -0,0 +1,117 @@
+package com.reactnativeaudio;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies with fixed, roughly logarithmic buckets, from 50us to
+ * 5s. Recording doesn't allocate, percentiles are approximated by the upper
+ * bound of the bucket they fall in.
+ *
+ * Not thread safe.
+ */
+class LatencyHistogram {
+    /**
+     * Upper bounds of the buckets, in nanoseconds. Values above the last one
+     * go in an extra overflow bucket.
+     */
+    private static final long[] BUCKET_BOUNDS = {
+        50_000L,
+        100_000L,
+        250_000L,
+        500_000L,
+        1_000_000L,
+        2_500_000L,
+        5_000_000L,
+        10_000_000L,
+        25_000_000L,
+        50_000_000L,
+        100_000_000L,
+        250_000_000L,
+        500_000_000L,
+        1_000_000_000L,
+        2_500_000_000L,
+        5_000_000_000L
+    };
+
+    private final long[] counts = new long[BUCKET_BOUNDS.length + 1];
+
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+
+        counts[bucket]++;
+        count++;
+        sum += nanos;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    /**
+     * @return the number of recorded latencies.
+     */
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds, or 0 if empty.
+     */
+    long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @return the highest recorded latency in nanoseconds.
+     */
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * Gets an approximation of the given percentile.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the latency in nanoseconds, or 0 if empty.
+     */
+    long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS[i], max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Forgets all the recorded latencies.
+     */
+    void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+}
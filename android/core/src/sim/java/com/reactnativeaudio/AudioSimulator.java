@@ -0,0 +1,266 @@
+package com.reactnativeaudio;
+
+/**
+ * Host side simulation of {@code AudioModule} and its device handlers. Drives
+ * the real {@link AudioRouter}, {@link AudioManagerShadow} and
+ * {@link BluetoothScoController} through a {@link FakeAudioSystem} on a
+ * {@link VirtualClock}, replaying a {@link Scenario} and recording the route
+ * decisions, the events emitted to JS and the system calls into a
+ * {@link SimulationTrace}.
+ *
+ * Besides the scenario's own expectations, the following invariants are
+ * checked:
+ * - the route must not change more than {@link #MAX_ROUTES_PER_INPUT} times
+ *   in reaction to a single input (flapping);
+ * - once things settle, the selected device must be available and, with the
+ *   generic handler and while holding the audio focus, be the one the audio
+ *   system is actually routed to (e.g. not a stuck SCO link or a
+ *   speakerphone left on after a focus regain);
+ * - the published {@link AudioState} must match the device events and, once
+ *   things settle, the router.
+ */
+class AudioSimulator implements AudioRouter.Backend {
+    /**
+     * Route changes allowed in reaction to a single input.
+     */
+    static final int MAX_ROUTES_PER_INPUT = 3;
+
+    /**
+     * Time given to things to settle after the last input, covering all the
+     * Bluetooth SCO attempts.
+     */
+    static final long SETTLE_TIME
+            = BluetoothScoController.CONNECT_TIMEOUT * (BluetoothScoController.MAX_ATTEMPTS + 1);
+
+    private final VirtualClock clock = new VirtualClock();
+    private final SimulationTrace trace = new SimulationTrace(clock);
+    private final FakeAudioSystem audioSystem = new FakeAudioSystem(clock, trace);
+    private final AudioRouter router = new AudioRouter(this);
+
+    private final Scenario scenario;
+    private final SimulatedDeviceHandler handler;
+
+    private int routesSinceInput = 0;
+
+    /**
+     * Records the trace sections, {@code null} unless they are traced.
+     */
+    private SimulationTracer tracer;
+
+    AudioSimulator(Scenario scenario) {
+        this.scenario = scenario;
+        if (Scenario.HANDLER_CONNECTION_SERVICE.equals(scenario.handler)) {
+            handler = new SimulatedConnectionServiceHandler(this, audioSystem);
+        } else {
+            handler = new SimulatedGenericHandler(this, audioSystem);
+        }
+    }
+
+    VirtualClock getClock() {
+        return clock;
+    }
+
+    SimulationTrace getTrace() {
+        return trace;
+    }
+
+    /**
+     * Records the {@link AudioTrace} sections into the trace and checks that
+     * they are balanced. Tracing is process wide, so only one simulation may
+     * trace them at a time.
+     */
+    void setTracingSections(boolean tracing) {
+        tracer = tracing ? new SimulationTracer(trace) : null;
+    }
+
+    AudioRouter getRouter() {
+        return router;
+    }
+
+    int getDeviceChangeCoalesceWindow() {
+        return scenario.coalesceWindow;
+    }
+
+    /**
+     * Replays the scenario, then lets things settle and checks the final
+     * state.
+     *
+     * @return the trace of the simulation.
+     */
+    SimulationTrace run() {
+        if (tracer != null) {
+            AudioTrace.setTracer(tracer);
+        }
+        try {
+            runScenario();
+        } finally {
+            if (tracer != null) {
+                AudioTrace.setTracer(null);
+                tracer.checkBalanced();
+            }
+        }
+        return trace;
+    }
+
+    private void runScenario() {
+        clock.schedule(handler::start, 0);
+
+        long lastTime = 0;
+        for (final Scenario.Step step : scenario.steps) {
+            clock.scheduleAt(() -> apply(step), step.time);
+            lastTime = step.time;
+        }
+
+        if (!clock.runUntilIdle(lastTime + SETTLE_TIME)) {
+            trace.failure("still busy " + SETTLE_TIME + "ms after the last input");
+        }
+        checkSettled();
+    }
+
+    private void apply(Scenario.Step step) {
+        if (trace.isRecording()) {
+            trace.input(step.describe());
+        }
+        routesSinceInput = 0;
+
+        switch (step.command) {
+            case Scenario.ADD:
+                audioSystem.addDevice(step.arg);
+                handler.onDeviceAdded(step.arg);
+                break;
+            case Scenario.REMOVE:
+                audioSystem.removeDevice(step.arg);
+                handler.onDeviceRemoved(step.arg);
+                break;
+            case Scenario.FOCUS:
+                if (audioSystem.changeAudioFocus(step.arg)) {
+                    handler.onAudioFocusChange(step.arg);
+                }
+                break;
+            case Scenario.STEAL:
+                audioSystem.stealAudioState();
+                break;
+            case Scenario.CALL_AUDIO_STATE:
+                handler.onCallAudioStateChange(CallAudioRoutes.toRoute(step.arg), toRouteMask(step.arg2));
+                break;
+            case Scenario.SET_MODE:
+                jsSetMode(step.arg);
+                break;
+            case Scenario.SET_AUDIO_DEVICE:
+                jsSetAudioDevice(step.arg);
+                break;
+            case Scenario.SCO_DELAY:
+                audioSystem.setScoConnectDelay(step.arg);
+                break;
+            case Scenario.SCO_FAIL:
+                audioSystem.setScoFailures(step.arg);
+                break;
+            case Scenario.SCO_STUCK:
+                audioSystem.setScoStuck(step.arg != 0);
+                break;
+            case Scenario.SCO_DROP:
+                audioSystem.dropScoLink();
+                break;
+            case Scenario.EXPECT:
+                if (router.getSelectedDevice() != step.arg) {
+                    trace.failure("expected " + nameOf(step.arg)
+                            + ", selected " + nameOf(router.getSelectedDevice()));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Mirrors {@code AudioModule#setMode}.
+     */
+    private void jsSetMode(int mode) {
+        boolean success;
+
+        router.beginOperation(AudioMetrics.OP_SET_MODE, AudioMetrics.now());
+        try {
+            success = router.setMode(mode);
+        } finally {
+            router.endOperation();
+        }
+        trace.event("setMode " + (success ? "resolved" : "rejected"));
+    }
+
+    /**
+     * Mirrors {@code AudioModule#setAudioDevice}.
+     */
+    private void jsSetAudioDevice(int device) {
+        router.beginOperation(AudioMetrics.OP_SET_AUDIO_DEVICE, AudioMetrics.now());
+        try {
+            router.selectDevice(device);
+        } finally {
+            router.endOperation();
+        }
+    }
+
+    private void checkSettled() {
+        int mode = router.getMode();
+        int selected = router.getSelectedDevice();
+        AudioState state = router.getState();
+
+        if (state.getMode() != mode
+                || state.getAvailableDevices() != router.getAvailableDevices()
+                || state.getSelectedDevice() != selected) {
+            trace.failure("published state is stale: " + state);
+        }
+
+        if (mode == AudioRouter.MODE_UNSET || mode == AudioRouter.DEFAULT) {
+            if (audioSystem.getScoLinkState() != BluetoothScoController.SCO_AUDIO_STATE_DISCONNECTED) {
+                trace.failure("SCO link left up outside of a call");
+            }
+            return;
+        }
+
+        if (!AudioDevices.contains(router.getAvailableDevices(), selected)) {
+            trace.failure("selected " + nameOf(selected) + " is not available");
+        } else if (handler instanceof SimulatedGenericHandler
+                && audioSystem.isAudioFocusHeld()
+                && !audioSystem.isRoutedTo(selected)) {
+            trace.failure("selected " + nameOf(selected) + " but the audio system is routed elsewhere");
+        }
+    }
+
+    @Override
+    public boolean setMode(int mode) {
+        return handler.setMode(mode);
+    }
+
+    @Override
+    public void setAudioRoute(int device) {
+        trace.route(device);
+        if (++routesSinceInput == MAX_ROUTES_PER_INPUT + 1) {
+            trace.failure("route flapping, changed more than " + MAX_ROUTES_PER_INPUT
+                    + " times after one input");
+        }
+        handler.setAudioRoute(device);
+    }
+
+    @Override
+    public void notifyDevicesChanged(int devices, int selectedDevice) {
+        trace.devicesChanged(devices, selectedDevice);
+
+        AudioState state = router.getState();
+        if (state.getVisibleDevices() != devices || state.getSelectedDevice() != selectedDevice) {
+            trace.failure("event doesn't match the published state " + state);
+        }
+    }
+
+    private static int toRouteMask(int devices) {
+        int mask = 0;
+        for (int i = 0; i < AudioDevices.COUNT; i++) {
+            int device = AudioDevices.valueAt(i);
+            if (AudioDevices.contains(devices, device)) {
+                mask |= CallAudioRoutes.toRoute(device);
+            }
+        }
+        return mask;
+    }
+
+    static String nameOf(int device) {
+        return device == AudioDevices.NONE ? "NONE" : AudioDevices.getName(device);
+    }
+}
@@ -0,0 +1,297 @@
+package com.reactnativeaudio;
+
+/**
+ * Fake of the Android audio system: the {@code AudioManager} state, the
+ * connected output devices, the audio focus and the Bluetooth SCO link.
+ * Every call made into it is recorded as a system call in the trace.
+ *
+ * The SCO link comes up {@link #setScoConnectDelay(long) some time} after
+ * being started, and can be made to fail a number of times or to never come
+ * up at all, like on some headsets. The SCO state broadcasts are delivered
+ * asynchronously on the clock, as the system does.
+ */
+class FakeAudioSystem implements AudioSystem {
+    /**
+     * Receives the SCO audio state broadcasts.
+     */
+    interface ScoReceiver {
+        void onScoAudioStateUpdated(int scoState, int previousScoState);
+    }
+
+    private final VirtualClock clock;
+    private final SimulationTrace trace;
+
+    private ScoReceiver scoReceiver;
+
+    /**
+     * Connected output devices, see {@link AudioDevices}.
+     */
+    private int devices = AudioDevices.NONE;
+
+    private int mode = MODE_NORMAL;
+    private boolean speakerphoneOn;
+    private boolean bluetoothScoOn;
+    private boolean microphoneMute;
+    private boolean audioFocusHeld;
+    private boolean audioFocusRequested;
+
+    /**
+     * Whether an app other than ours is holding the audio focus, in which
+     * case focus requests are delayed.
+     */
+    private boolean audioFocusTaken;
+
+    private int scoLinkState = BluetoothScoController.SCO_AUDIO_STATE_DISCONNECTED;
+    private long scoConnectDelay = 300;
+    private int scoFailures = 0;
+    private boolean scoStuck = false;
+
+    /**
+     * Incremented whenever the SCO link is started or stopped, so that a
+     * pending connection can be dropped.
+     */
+    private int scoGeneration = 0;
+
+    FakeAudioSystem(VirtualClock clock, SimulationTrace trace) {
+        this.clock = clock;
+        this.trace = trace;
+    }
+
+    void setScoReceiver(ScoReceiver scoReceiver) {
+        this.scoReceiver = scoReceiver;
+    }
+
+    /**
+     * Sets the time the SCO link takes to come up.
+     *
+     * @param delayMs the delay, in milliseconds.
+     */
+    void setScoConnectDelay(long delayMs) {
+        scoConnectDelay = delayMs;
+    }
+
+    /**
+     * Makes the next SCO connection attempts fail.
+     *
+     * @param failures the number of attempts which will fail.
+     */
+    void setScoFailures(int failures) {
+        scoFailures = failures;
+    }
+
+    /**
+     * Makes the SCO link never come up, nor report a failure.
+     *
+     * @param stuck whether the link is stuck.
+     */
+    void setScoStuck(boolean stuck) {
+        scoStuck = stuck;
+    }
+
+    /**
+     * Drops the SCO link, as when the headset goes out of range.
+     */
+    void dropScoLink() {
+        scoGeneration++;
+        setScoLinkState(BluetoothScoController.SCO_AUDIO_STATE_DISCONNECTED);
+    }
+
+    /**
+     * @return the connected output devices, see {@link AudioDevices}.
+     */
+    int getDevices() {
+        return devices;
+    }
+
+    void addDevice(int device) {
+        devices |= device;
+    }
+
+    void removeDevice(int device) {
+        devices &= ~device;
+        if (device == AudioDevices.BLUETOOTH) {
+            dropScoLink();
+        }
+    }
+
+    int getScoLinkState() {
+        return scoLinkState;
+    }
+
+    /**
+     * @return whether we hold the audio focus.
+     */
+    boolean isAudioFocusHeld() {
+        return audioFocusHeld;
+    }
+
+    /**
+     * Changes the audio focus as another app taking or releasing it would.
+     * Releasing it gives it back to us if we still requested it: taking it
+     * for good drops our request, which must then be made again.
+     *
+     * @param focusChange the change as we'd see it, one of the
+     * {@code AudioFocusManager.AUDIOFOCUS_*} changes.
+     * @return whether the change is reported to us, which is only the case
+     * while we requested the focus.
+     */
+    boolean changeAudioFocus(int focusChange) {
+        boolean requested = audioFocusRequested;
+
+        audioFocusTaken = focusChange != AudioFocusManager.AUDIOFOCUS_GAIN;
+        if (focusChange == AudioFocusManager.AUDIOFOCUS_LOSS) {
+            audioFocusRequested = false;
+        }
+        audioFocusHeld = !audioFocusTaken && audioFocusRequested;
+        return requested;
+    }
+
+    /**
+     * @return whether another app is holding the audio focus.
+     */
+    boolean isAudioFocusTaken() {
+        return audioFocusTaken;
+    }
+
+    /**
+     * @return one of the {@code AudioFocusManager.AUDIOFOCUS_REQUEST_*}
+     * results, delayed while another app holds the focus.
+     */
+    int requestAudioFocus() {
+        trace.systemCall("requestAudioFocus()");
+        audioFocusRequested = true;
+        audioFocusHeld = !audioFocusTaken;
+        return audioFocusHeld
+                ? AudioFocusManager.AUDIOFOCUS_REQUEST_GRANTED
+                : AudioFocusManager.AUDIOFOCUS_REQUEST_DELAYED;
+    }
+
+    void abandonAudioFocus() {
+        trace.systemCall("abandonAudioFocus()");
+        audioFocusRequested = false;
+        audioFocusHeld = false;
+    }
+
+    @Override
+    public int getMode() {
+        trace.systemCall("getMode()");
+        return mode;
+    }
+
+    @Override
+    public void setMode(int mode) {
+        trace.systemCall("setMode(" + (mode == MODE_NORMAL ? "MODE_NORMAL" : "MODE_IN_COMMUNICATION") + ")");
+        this.mode = mode;
+    }
+
+    @Override
+    public boolean isSpeakerphoneOn() {
+        trace.systemCall("isSpeakerphoneOn()");
+        return speakerphoneOn;
+    }
+
+    @Override
+    public void setSpeakerphoneOn(boolean on) {
+        trace.systemCall("setSpeakerphoneOn(" + on + ")");
+        speakerphoneOn = on;
+    }
+
+    @Override
+    public void startBluetoothSco() {
+        trace.systemCall("startBluetoothSco()");
+
+        final int generation = ++scoGeneration;
+
+        if (!AudioDevices.contains(devices, AudioDevices.BLUETOOTH)) {
+            broadcast(BluetoothScoController.SCO_AUDIO_STATE_ERROR, scoLinkState);
+            return;
+        }
+
+        setScoLinkState(BluetoothScoController.SCO_AUDIO_STATE_CONNECTING);
+        if (scoStuck) {
+            return;
+        }
+        clock.schedule(() -> {
+            if (generation != scoGeneration) {
+                return;
+            }
+            if (scoFailures > 0) {
+                scoFailures--;
+                setScoLinkState(BluetoothScoController.SCO_AUDIO_STATE_DISCONNECTED);
+            } else {
+                setScoLinkState(BluetoothScoController.SCO_AUDIO_STATE_CONNECTED);
+            }
+        }, scoConnectDelay);
+    }
+
+    @Override
+    public void stopBluetoothSco() {
+        trace.systemCall("stopBluetoothSco()");
+        scoGeneration++;
+        setScoLinkState(BluetoothScoController.SCO_AUDIO_STATE_DISCONNECTED);
+    }
+
+    @Override
+    public boolean isBluetoothScoOn() {
+        trace.systemCall("isBluetoothScoOn()");
+        return bluetoothScoOn;
+    }
+
+    @Override
+    public void setBluetoothScoOn(boolean on) {
+        trace.systemCall("setBluetoothScoOn(" + on + ")");
+        bluetoothScoOn = on;
+    }
+
+    @Override
+    public boolean isMicrophoneMute() {
+        trace.systemCall("isMicrophoneMute()");
+        return microphoneMute;
+    }
+
+    @Override
+    public void setMicrophoneMute(boolean mute) {
+        trace.systemCall("setMicrophoneMute(" + mute + ")");
+        microphoneMute = mute;
+    }
+
+    /**
+     * Changes the state as another app would, without going through the
+     * trace.
+     */
+    void stealAudioState() {
+        mode = MODE_NORMAL;
+        speakerphoneOn = !speakerphoneOn;
+        bluetoothScoOn = false;
+    }
+
+    /**
+     * @return whether the system output matches the given device.
+     */
+    boolean isRoutedTo(int device) {
+        switch (device) {
+            case AudioDevices.SPEAKER:
+                return speakerphoneOn && !bluetoothScoOn;
+            case AudioDevices.BLUETOOTH:
+                return bluetoothScoOn && !speakerphoneOn
+                        && scoLinkState == BluetoothScoController.SCO_AUDIO_STATE_CONNECTED;
+            default:
+                return !speakerphoneOn && !bluetoothScoOn;
+        }
+    }
+
+    private void setScoLinkState(int state) {
+        if (state == scoLinkState) {
+            return;
+        }
+        broadcast(state, scoLinkState);
+        scoLinkState = state;
+    }
+
+    private void broadcast(final int scoState, final int previousScoState) {
+        trace.sco("broadcast state=" + scoState + " previous=" + previousScoState);
+        if (scoReceiver != null) {
+            clock.schedule(() -> scoReceiver.onScoAudioStateUpdated(scoState, previousScoState), 0);
+        }
+    }
+}
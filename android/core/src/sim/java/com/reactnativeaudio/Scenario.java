@@ -0,0 +1,362 @@
+package com.reactnativeaudio;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Timeline of inputs replayed by the {@link AudioSimulator}.
+ *
+ * Scenarios are written one step per line, as {@code <time in ms> <command>
+ * [arguments]}, in increasing time order. Lines starting with {@code #} are
+ * comments, and the following settings can be given before the steps:
+ * <pre>
+ * handler generic|connection-service
+ * coalesce &lt;device change coalesce window in ms&gt;
+ * </pre>
+ *
+ * Commands, with devices named as in {@link AudioDevices}:
+ * <pre>
+ * add &lt;device&gt;               an output device is connected
+ * remove &lt;device&gt;            an output device is disconnected
+ * focus gain|loss|transient|duck   another app releases or takes the audio
+ *                              focus, reported if ours is requested
+ * steal                        another app changes the audio state
+ * call-audio-state &lt;device&gt; &lt;device,...&gt;   Telecom route and supported routes
+ * set-mode DEFAULT|AUDIO_CALL|VIDEO_CALL   JS setMode()
+ * set-audio-device &lt;device&gt;  JS setAudioDevice()
+ * sco-delay &lt;ms&gt;             time the SCO link takes to come up
+ * sco-fail &lt;n&gt;               the next n SCO attempts fail
+ * sco-stuck on|off             the SCO link never comes up
+ * sco-drop                     the SCO link is lost
+ * expect &lt;device&gt;|NONE       the selected device must be this one
+ * </pre>
+ */
+class Scenario {
+    static final String HANDLER_GENERIC = "generic";
+    static final String HANDLER_CONNECTION_SERVICE = "connection-service";
+
+    static final int ADD = 0;
+    static final int REMOVE = 1;
+    static final int FOCUS = 2;
+    static final int STEAL = 3;
+    static final int CALL_AUDIO_STATE = 4;
+    static final int SET_MODE = 5;
+    static final int SET_AUDIO_DEVICE = 6;
+    static final int SCO_DELAY = 7;
+    static final int SCO_FAIL = 8;
+    static final int SCO_STUCK = 9;
+    static final int SCO_DROP = 10;
+    static final int EXPECT = 11;
+
+    private static final String[] COMMANDS = {
+        "add",
+        "remove",
+        "focus",
+        "steal",
+        "call-audio-state",
+        "set-mode",
+        "set-audio-device",
+        "sco-delay",
+        "sco-fail",
+        "sco-stuck",
+        "sco-drop",
+        "expect",
+    };
+
+    private static final String[] MODE_NAMES = { "DEFAULT", "AUDIO_CALL", "VIDEO_CALL" };
+
+    private static final String[] FOCUS_NAMES = { "gain", "loss", "transient", "duck" };
+    private static final int[] FOCUS_CHANGES = {
+        AudioFocusManager.AUDIOFOCUS_GAIN,
+        AudioFocusManager.AUDIOFOCUS_LOSS,
+        AudioFocusManager.AUDIOFOCUS_LOSS_TRANSIENT,
+        AudioFocusManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK,
+    };
+
+    /**
+     * One input. {@code arg} and {@code arg2} depend on the command: devices
+     * as {@link AudioDevices} values or masks, modes, focus changes,
+     * durations or counts.
+     */
+    static final class Step {
+        final long time;
+        final int command;
+        final int arg;
+        final int arg2;
+
+        Step(long time, int command, int arg, int arg2) {
+            this.time = time;
+            this.command = command;
+            this.arg = arg;
+            this.arg2 = arg2;
+        }
+
+        @Override
+        public String toString() {
+            return time + " " + describe();
+        }
+
+        /**
+         * @return the step as written in a scenario, without its time.
+         */
+        String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(COMMANDS[command]);
+            switch (command) {
+                case ADD:
+                case REMOVE:
+                case SET_AUDIO_DEVICE:
+                    sb.append(' ').append(AudioDevices.getName(arg));
+                    break;
+                case EXPECT:
+                    sb.append(' ').append(arg == AudioDevices.NONE ? "NONE" : AudioDevices.getName(arg));
+                    break;
+                case FOCUS:
+                    for (int i = 0; i < FOCUS_CHANGES.length; i++) {
+                        if (FOCUS_CHANGES[i] == arg) {
+                            sb.append(' ').append(FOCUS_NAMES[i]);
+                        }
+                    }
+                    break;
+                case CALL_AUDIO_STATE:
+                    sb.append(' ').append(AudioDevices.getName(arg)).append(' ').append(deviceList(arg2));
+                    break;
+                case SET_MODE:
+                    sb.append(' ').append(MODE_NAMES[arg]);
+                    break;
+                case SCO_DELAY:
+                case SCO_FAIL:
+                    sb.append(' ').append(arg);
+                    break;
+                case SCO_STUCK:
+                    sb.append(arg != 0 ? " on" : " off");
+                    break;
+            }
+            return sb.toString();
+        }
+    }
+
+    final String name;
+
+    String handler = HANDLER_GENERIC;
+
+    /**
+     * Device change coalesce window, see
+     * {@code AudioModule#setDeviceChangeCoalesceWindow}.
+     */
+    int coalesceWindow = 50;
+
+    final List<Step> steps = new ArrayList<>();
+
+    Scenario(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Parses a scenario.
+     *
+     * @param name the name used in reports.
+     * @param lines the lines of the scenario.
+     * @return the scenario.
+     * @throws IllegalArgumentException if a line is malformed.
+     */
+    static Scenario parse(String name, List<String> lines) {
+        Scenario scenario = new Scenario(name);
+        long lastTime = 0;
+
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] words = line.split("\\s+");
+            try {
+                switch (words[0]) {
+                    case "handler":
+                        if (!HANDLER_GENERIC.equals(words[1])
+                                && !HANDLER_CONNECTION_SERVICE.equals(words[1])) {
+                            throw new IllegalArgumentException("unknown handler " + words[1]);
+                        }
+                        scenario.handler = words[1];
+                        continue;
+                    case "coalesce":
+                        scenario.coalesceWindow = Integer.parseInt(words[1]);
+                        continue;
+                }
+
+                long time = Long.parseLong(words[0]);
+                if (time < lastTime) {
+                    throw new IllegalArgumentException("steps must be in time order");
+                }
+                lastTime = time;
+                scenario.steps.add(parseStep(time, words));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(
+                        name + ":" + (n + 1) + ": " + e.getMessage() + ": " + line, e);
+            }
+        }
+
+        return scenario;
+    }
+
+    private static Step parseStep(long time, String[] words) {
+        int command = indexOf(COMMANDS, words[1], "command");
+        int arg = 0;
+        int arg2 = 0;
+
+        switch (command) {
+            case ADD:
+            case REMOVE:
+            case SET_AUDIO_DEVICE:
+                arg = parseDevice(words[2]);
+                break;
+            case EXPECT:
+                arg = "NONE".equals(words[2]) ? AudioDevices.NONE : parseDevice(words[2]);
+                break;
+            case FOCUS:
+                arg = FOCUS_CHANGES[indexOf(FOCUS_NAMES, words[2], "focus change")];
+                break;
+            case CALL_AUDIO_STATE:
+                arg = parseDevice(words[2]);
+                for (String device : words[3].split(",")) {
+                    arg2 |= parseDevice(device);
+                }
+                break;
+            case SET_MODE:
+                arg = indexOf(MODE_NAMES, words[2], "mode");
+                break;
+            case SCO_DELAY:
+            case SCO_FAIL:
+                arg = Integer.parseInt(words[2]);
+                break;
+            case SCO_STUCK:
+                arg = "on".equals(words[2]) ? 1 : 0;
+                break;
+        }
+
+        return new Step(time, command, arg, arg2);
+    }
+
+    private static int parseDevice(String name) {
+        int device = AudioDevices.fromName(name);
+        if (device == AudioDevices.NONE) {
+            throw new IllegalArgumentException("unknown device " + name);
+        }
+        return device;
+    }
+
+    private static int indexOf(String[] names, String name, String what) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown " + what + " " + name);
+    }
+
+    private static String deviceList(int devices) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < AudioDevices.COUNT; i++) {
+            int device = AudioDevices.valueAt(i);
+            if (AudioDevices.contains(devices, device)) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(AudioDevices.getName(device));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generates a random scenario, for fuzzing.
+     *
+     * @param name the name used in reports.
+     * @param random the source of randomness.
+     * @param length the number of steps.
+     * @return the scenario.
+     */
+    static Scenario generate(String name, Random random, int length) {
+        Scenario scenario = new Scenario(name);
+        boolean connectionService = random.nextInt(4) == 0;
+        boolean focusLost = false;
+        long time = 0;
+
+        scenario.handler = connectionService ? HANDLER_CONNECTION_SERVICE : HANDLER_GENERIC;
+        scenario.coalesceWindow = random.nextInt(3) * 50;
+
+        if (!connectionService) {
+            scenario.steps.add(new Step(0, ADD, AudioDevices.EARPIECE, 0));
+            scenario.steps.add(new Step(0, ADD, AudioDevices.SPEAKER, 0));
+        }
+
+        for (int i = 0; i < length; i++) {
+            time += random.nextInt(4) == 0 ? 0 : random.nextInt(1000);
+
+            int device = random.nextBoolean() ? AudioDevices.BLUETOOTH : AudioDevices.HEADPHONES;
+            int command = connectionService
+                    ? (random.nextBoolean() ? CALL_AUDIO_STATE : random.nextBoolean() ? SET_MODE : SET_AUDIO_DEVICE)
+                    : random.nextInt(SCO_DROP + 1);
+            int arg = 0;
+            int arg2 = 0;
+
+            switch (command) {
+                case ADD:
+                case REMOVE:
+                    arg = device;
+                    break;
+                case FOCUS:
+                    arg = FOCUS_CHANGES[random.nextInt(FOCUS_CHANGES.length)];
+                    focusLost = arg != AudioFocusManager.AUDIOFOCUS_GAIN;
+                    break;
+                case STEAL:
+                    // Only other apps holding the focus change the state.
+                    if (!focusLost) {
+                        continue;
+                    }
+                    break;
+                case CALL_AUDIO_STATE:
+                    if (!connectionService) {
+                        continue;
+                    }
+                    arg2 = random.nextInt(AudioDevices.ALL) + 1;
+                    do {
+                        arg = AudioDevices.valueAt(random.nextInt(AudioDevices.COUNT));
+                    } while (!AudioDevices.contains(arg2, arg));
+                    break;
+                case SET_MODE:
+                    arg = random.nextInt(MODE_NAMES.length);
+                    break;
+                case SET_AUDIO_DEVICE:
+                    arg = AudioDevices.valueAt(random.nextInt(AudioDevices.COUNT));
+                    break;
+                case SCO_DELAY:
+                    arg = random.nextInt(3000);
+                    break;
+                case SCO_FAIL:
+                    arg = random.nextInt(3);
+                    break;
+                case SCO_STUCK:
+                    arg = random.nextInt(4) == 0 ? 1 : 0;
+                    break;
+            }
+            scenario.steps.add(new Step(time, command, arg, arg2));
+        }
+
+        return scenario;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# ").append(name).append(System.lineSeparator());
+        sb.append("handler ").append(handler).append(System.lineSeparator());
+        sb.append("coalesce ").append(coalesceWindow).append(System.lineSeparator());
+        for (Step step : steps) {
+            sb.append(step).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,71 @@
+package com.reactnativeaudio;
+
+/**
+ * Simulated {@code AudioDeviceHandlerConnectionService}, mirroring the real
+ * handler, which must be kept in sync with it. Devices and focus are handled
+ * by Telecom, so only the {@code CallAudioState} updates matter.
+ */
+class SimulatedConnectionServiceHandler implements SimulatedDeviceHandler {
+    private final AudioSimulator simulator;
+    private final FakeAudioSystem audioSystem;
+
+    private int supportedRouteMask = -1;
+
+    SimulatedConnectionServiceHandler(AudioSimulator simulator, FakeAudioSystem audioSystem) {
+        this.simulator = simulator;
+        this.audioSystem = audioSystem;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void onCallAudioStateChange(int route, int supportedRouteMask) {
+        AudioRouter router = simulator.getRouter();
+        boolean audioRouteChanged
+                = CallAudioRoutes.toRoute(router.getSelectedDevice()) != route;
+        if (!audioRouteChanged) {
+            router.onAudioRouteConfirmed(router.getSelectedDevice());
+        }
+        boolean audioDevicesChanged = this.supportedRouteMask != supportedRouteMask;
+        if (audioDevicesChanged) {
+            this.supportedRouteMask = supportedRouteMask;
+            router.replaceDevices(CallAudioRoutes.toDevices(supportedRouteMask));
+        }
+
+        if (audioRouteChanged || audioDevicesChanged) {
+            router.resetSelectedDevice();
+            router.updateAudioRoute();
+        }
+    }
+
+    @Override
+    public void onDeviceAdded(int device) {
+        // Reported through the CallAudioState.
+    }
+
+    @Override
+    public void onDeviceRemoved(int device) {
+        // Reported through the CallAudioState.
+    }
+
+    @Override
+    public void onAudioFocusChange(int focusChange) {
+        // Handled by Telecom.
+    }
+
+    @Override
+    public void setAudioRoute(int device) {
+        // Telecom is not asked to change the route yet, see
+        // AudioDeviceHandlerConnectionService#setAudioRoute.
+    }
+
+    @Override
+    public boolean setMode(int mode) {
+        if (mode != AudioRouter.DEFAULT) {
+            audioSystem.setMicrophoneMute(false);
+        }
+        return true;
+    }
+}
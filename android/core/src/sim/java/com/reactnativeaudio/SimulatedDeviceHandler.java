@@ -0,0 +1,37 @@
+package com.reactnativeaudio;
+
+/**
+ * Simulated counterpart of {@code AudioModule.AudioDeviceHandlerInterface},
+ * also receiving the platform callbacks the real handlers register for.
+ * Everything runs on the {@link VirtualClock}.
+ */
+interface SimulatedDeviceHandler {
+    void start();
+
+    void setAudioRoute(int device);
+
+    boolean setMode(int mode);
+
+    /**
+     * An output device was connected.
+     */
+    void onDeviceAdded(int device);
+
+    /**
+     * An output device was disconnected.
+     */
+    void onDeviceRemoved(int device);
+
+    /**
+     * The audio focus changed, see {@code AudioManager.AUDIOFOCUS_*}.
+     */
+    void onAudioFocusChange(int focusChange);
+
+    /**
+     * Telecom reported a new {@code CallAudioState}.
+     *
+     * @param route the current route, see {@link CallAudioRoutes}.
+     * @param supportedRouteMask the supported routes.
+     */
+    void onCallAudioStateChange(int route, int supportedRouteMask);
+}
@@ -0,0 +1,203 @@
+package com.reactnativeaudio;
+
+/**
+ * Simulated {@code AudioDeviceHandlerGeneric}. The Bluetooth SCO link and the
+ * {@link AudioManagerShadow} and {@link AudioFocusManager} are the real ones,
+ * running against the {@link FakeAudioSystem}; the focus and device change
+ * handling mirror the
+ * ones of the real handler, which must be kept in sync with it.
+ */
+class SimulatedGenericHandler implements
+        SimulatedDeviceHandler, AudioFocusManager.Listener, BluetoothScoController.Listener {
+
+    private final AudioSimulator simulator;
+    private final FakeAudioSystem audioSystem;
+    private final AudioManagerShadow audioManagerShadow;
+    private final BluetoothScoController bluetoothScoController;
+    private final AudioFocusManager audioFocusManager;
+
+    private final AudioDeviceInventory inventory = new AudioDeviceInventory();
+
+    private int pendingDeviceChanges = 0;
+
+    private int deviceChangeCookie;
+
+    private final Runnable onAudioDeviceChangeRunner = new Runnable() {
+        @Override
+        public void run() {
+            int callbacks = pendingDeviceChanges;
+            pendingDeviceChanges = 0;
+            AudioTrace.endQueued(AudioMetrics.OP_DEVICE_CHANGE, deviceChangeCookie);
+
+            AudioRouter router = simulator.getRouter();
+
+            router.beginOperation(AudioMetrics.OP_DEVICE_CHANGE, AudioMetrics.now());
+            try {
+                router.onDeviceChangeRescan(callbacks);
+
+                AudioTrace.Tracer tracer = AudioTrace.begin(AudioTrace.SECTION_RESCAN);
+                boolean changed;
+                try {
+                    if (inventory.isOutOfSync()) {
+                        resyncInventory();
+                    }
+                    changed = router.replaceDevices(inventory.getDevices());
+                } finally {
+                    AudioTrace.end(tracer);
+                }
+
+                if (changed) {
+                    router.updateAudioRoute();
+                }
+            } finally {
+                router.endOperation();
+            }
+        }
+    };
+
+    SimulatedGenericHandler(AudioSimulator simulator, FakeAudioSystem audioSystem) {
+        this.simulator = simulator;
+        this.audioSystem = audioSystem;
+        this.audioManagerShadow = new AudioManagerShadow(audioSystem);
+        this.bluetoothScoController
+                = new BluetoothScoController(simulator.getClock(), audioManagerShadow, this);
+        this.audioFocusManager = new AudioFocusManager(new AudioFocusManager.FocusSystem() {
+            @Override
+            public int requestAudioFocus() {
+                return audioSystem.requestAudioFocus();
+            }
+
+            @Override
+            public void abandonAudioFocus() {
+                audioSystem.abandonAudioFocus();
+            }
+        }, this);
+    }
+
+    @Override
+    public void start() {
+        audioSystem.setScoReceiver(bluetoothScoController::onScoAudioStateUpdated);
+        pendingDeviceChanges++;
+        deviceChangeCookie = AudioTrace.beginQueued(AudioMetrics.OP_DEVICE_CHANGE);
+        onAudioDeviceChangeRunner.run();
+    }
+
+    /**
+     * Devices are identified by their type, there is at most one of each.
+     */
+    private void resyncInventory() {
+        int devices = audioSystem.getDevices();
+        int[] ids = new int[AudioDevices.COUNT];
+        int count = 0;
+
+        for (int i = 0; i < AudioDevices.COUNT; i++) {
+            int device = AudioDevices.valueAt(i);
+            if (AudioDevices.contains(devices, device)) {
+                ids[count++] = device;
+            }
+        }
+        inventory.resync(ids, ids, count);
+    }
+
+    private void onAudioDeviceChange() {
+        if (pendingDeviceChanges++ == 0) {
+            deviceChangeCookie = AudioTrace.beginQueued(AudioMetrics.OP_DEVICE_CHANGE);
+            simulator.getClock().schedule(
+                    onAudioDeviceChangeRunner, simulator.getDeviceChangeCoalesceWindow());
+        }
+    }
+
+    @Override
+    public void onDeviceAdded(int device) {
+        inventory.add(device, device);
+        onAudioDeviceChange();
+    }
+
+    @Override
+    public void onDeviceRemoved(int device) {
+        inventory.remove(device);
+        onAudioDeviceChange();
+    }
+
+    @Override
+    public void onAudioFocusChange(int focusChange) {
+        audioFocusManager.onAudioFocusChange(focusChange);
+    }
+
+    @Override
+    public void onAudioFocusRegained(int previousState) {
+        int changed = audioManagerShadow.resync();
+        if ((changed & AudioManagerShadow.CHANGED_ROUTE) != 0) {
+            simulator.getRouter().resetAudioRoute();
+        } else if (changed != 0) {
+            setCallMode();
+        }
+    }
+
+    @Override
+    public void onCallAudioStateChange(int route, int supportedRouteMask) {
+        // Only reported when using ConnectionService.
+    }
+
+    @Override
+    public void onBluetoothScoConnected(long latency, int attempts) {
+        simulator.getTrace().sco("connected, attempts: " + attempts);
+        simulator.getRouter().onAudioRouteConfirmed(AudioDevices.BLUETOOTH);
+    }
+
+    @Override
+    public void onBluetoothScoFailed() {
+        simulator.getTrace().sco("failed or lost");
+        simulator.getRouter().getMetrics().increment(AudioMetrics.COUNTER_BLUETOOTH_SCO_FAILED, 1);
+        simulator.getRouter().markDeviceUnusable(AudioDevices.BLUETOOTH);
+    }
+
+    @Override
+    public void onBluetoothScoAttemptFailed(int attempt, String reason) {
+        simulator.getTrace().sco("attempt " + attempt + " " + reason);
+    }
+
+    @Override
+    public void setAudioRoute(int device) {
+        audioManagerShadow.setSpeakerphoneOn(device == AudioDevices.SPEAKER);
+
+        if (device == AudioDevices.BLUETOOTH) {
+            bluetoothScoController.connect();
+        } else {
+            bluetoothScoController.disconnect();
+        }
+
+        if (device != AudioDevices.BLUETOOTH
+                || bluetoothScoController.getState() == BluetoothScoController.STATE_CONNECTED) {
+            simulator.getRouter().onAudioRouteConfirmed(device);
+        }
+    }
+
+    @Override
+    public boolean setMode(int mode) {
+        if (mode == AudioRouter.DEFAULT) {
+            audioManagerShadow.setMode(AudioSystem.MODE_NORMAL);
+            audioFocusManager.abandon();
+            audioManagerShadow.setSpeakerphoneOn(false);
+            bluetoothScoController.disconnect();
+
+            return true;
+        }
+
+        if (!audioFocusManager.isRequested()) {
+            audioFocusManager.takeStateChanged();
+            if ((audioManagerShadow.resync() & AudioManagerShadow.CHANGED_ROUTE) != 0) {
+                simulator.getRouter().invalidateAudioRoute();
+            }
+        }
+
+        setCallMode();
+
+        return audioFocusManager.request();
+    }
+
+    private void setCallMode() {
+        audioManagerShadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        audioManagerShadow.setMicrophoneMute(false);
+    }
+}
@@ -0,0 +1,140 @@
+package com.reactnativeaudio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Output of a simulation: the inputs, the route decisions, the events
+ * emitted to JS and the calls into the audio system, in order. Recording the
+ * lines can be turned off when only the failures matter, e.g. when fuzzing.
+ */
+class SimulationTrace {
+    static final String INPUT   = "input";
+    static final String ROUTE   = "route";
+    static final String EVENT   = "event";
+    static final String SYSCALL = "syscall";
+    static final String SCO     = "sco";
+    static final String SECTION = "section";
+    static final String FAILURE = "FAIL";
+
+    private final VirtualClock clock;
+
+    private final StringBuilder lines = new StringBuilder();
+
+    private final List<String> failures = new ArrayList<>();
+
+    private boolean recording = true;
+
+    private int routeDecisions;
+    private int events;
+    private int systemCalls;
+
+    SimulationTrace(VirtualClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Turns the recording of the trace lines on or off. Counters and
+     * failures are always recorded.
+     */
+    void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    boolean isRecording() {
+        return recording;
+    }
+
+    void input(String what) {
+        line(INPUT, what);
+    }
+
+    void route(int device) {
+        routeDecisions++;
+        if (recording) {
+            line(ROUTE, AudioSimulator.nameOf(device));
+        }
+    }
+
+    void event(String what) {
+        events++;
+        line(EVENT, what);
+    }
+
+    /**
+     * Records the device list emitted to JS.
+     *
+     * @param devices the devices, see {@link AudioDevices}.
+     * @param selectedDevice the selected device.
+     */
+    void devicesChanged(int devices, int selectedDevice) {
+        events++;
+        if (recording) {
+            StringBuilder sb = new StringBuilder("devices [");
+            for (int i = 0; i < AudioDevices.COUNT; i++) {
+                int device = AudioDevices.valueAt(i);
+                if (AudioDevices.contains(devices, device)) {
+                    sb.append(' ').append(AudioDevices.getName(device));
+                }
+            }
+            sb.append(" ] selected ").append(AudioSimulator.nameOf(selectedDevice));
+            line(EVENT, sb.toString());
+        }
+    }
+
+    void systemCall(String what) {
+        systemCalls++;
+        line(SYSCALL, what);
+    }
+
+    void sco(String what) {
+        line(SCO, what);
+    }
+
+    void section(String what) {
+        line(SECTION, what);
+    }
+
+    void failure(String what) {
+        failures.add(clock.now() + "ms: " + what);
+        line(FAILURE, what);
+    }
+
+    int getRouteDecisions() {
+        return routeDecisions;
+    }
+
+    int getEvents() {
+        return events;
+    }
+
+    int getSystemCalls() {
+        return systemCalls;
+    }
+
+    List<String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Clears everything recorded so far.
+     */
+    void reset() {
+        lines.setLength(0);
+        failures.clear();
+        routeDecisions = 0;
+        events = 0;
+        systemCalls = 0;
+    }
+
+    @Override
+    public String toString() {
+        return lines.toString();
+    }
+
+    private void line(String kind, String what) {
+        if (recording) {
+            lines.append(String.format("%7d  %-7s %s%n", clock.now(), kind, what));
+        }
+    }
+}
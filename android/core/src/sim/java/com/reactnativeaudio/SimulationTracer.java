@@ -0,0 +1,76 @@
+package com.reactnativeaudio;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * {@link AudioTrace.Tracer} recording the trace sections into the
+ * {@link SimulationTrace}, indented by nesting depth, and checking that they
+ * are balanced.
+ */
+class SimulationTracer implements AudioTrace.Tracer {
+    private final SimulationTrace trace;
+
+    private int depth = 0;
+
+    /**
+     * Async slices begun and not ended yet, as name and cookie.
+     */
+    private final Set<String> openSlices = new HashSet<>();
+
+    SimulationTracer(SimulationTrace trace) {
+        this.trace = trace;
+    }
+
+    @Override
+    public void beginSection(String name) {
+        trace.section(indent() + "begin " + name);
+        depth++;
+    }
+
+    @Override
+    public void endSection() {
+        if (depth == 0) {
+            trace.failure("trace section ended without being begun");
+            return;
+        }
+        depth--;
+        trace.section(indent() + "end");
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+        if (!openSlices.add(name + "#" + cookie)) {
+            trace.failure("async trace slice " + name + " begun twice");
+        }
+        trace.section(indent() + "async begin " + name);
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+        if (!openSlices.remove(name + "#" + cookie)) {
+            trace.failure("async trace slice " + name + " ended without being begun");
+        }
+        trace.section(indent() + "async end " + name);
+    }
+
+    /**
+     * Checks that no section was left open, once the simulation is over.
+     */
+    void checkBalanced() {
+        if (depth != 0) {
+            trace.failure(depth + " trace sections left open");
+        }
+        for (String slice : openSlices) {
+            trace.failure("async trace slice " + slice + " left open");
+        }
+    }
+
+    private String indent() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+        return sb.toString();
+    }
+}
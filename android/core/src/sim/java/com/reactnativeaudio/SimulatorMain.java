@@ -0,0 +1,149 @@
+package com.reactnativeaudio;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Command line entry point of the {@link AudioSimulator}.
+ *
+ * <pre>
+ * simulate [--quiet] [--sections] [--repeat N] scenario...
+ *     Replays the given scenario files and prints their traces. With
+ *     --sections, the traces include the {@link AudioTrace} sections. With
+ *     --repeat, each one is then replayed N more times for timing.
+ *
+ * simulate --fuzz N [--seed S] [--length L] [--sections]
+ *     Replays N random scenarios of L steps, and prints the ones breaking an
+ *     invariant so that they can be saved and replayed. With --sections, the
+ *     {@link AudioTrace} sections are checked to be balanced.
+ * </pre>
+ *
+ * Exits with status 1 if any scenario failed.
+ */
+public class SimulatorMain {
+    public static void main(String[] args) throws IOException {
+        boolean quiet = false;
+        boolean sections = false;
+        int repeat = 0;
+        int fuzz = 0;
+        long seed = System.currentTimeMillis();
+        int length = 30;
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--quiet":
+                    quiet = true;
+                    break;
+                case "--sections":
+                    sections = true;
+                    break;
+                case "--repeat":
+                    repeat = Integer.parseInt(args[++i]);
+                    break;
+                case "--fuzz":
+                    fuzz = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--length":
+                    length = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+
+        if (files.isEmpty() && fuzz == 0) {
+            System.err.println("Usage: simulate [--quiet] [--sections] [--repeat N] scenario...");
+            System.err.println("       simulate --fuzz N [--seed S] [--length L] [--sections]");
+            System.exit(2);
+        }
+
+        boolean failed = false;
+
+        for (String file : files) {
+            Scenario scenario = Scenario.parse(
+                    file, Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8));
+            failed |= replay(scenario, quiet, sections, repeat);
+        }
+
+        if (fuzz > 0) {
+            failed |= fuzz(fuzz, seed, length, sections);
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+
+    private static boolean replay(Scenario scenario, boolean quiet, boolean sections, int repeat) {
+        AudioSimulator simulator = new AudioSimulator(scenario);
+        simulator.setTracingSections(sections);
+        SimulationTrace trace = simulator.run();
+
+        System.out.println("== " + scenario.name);
+        if (!quiet) {
+            System.out.print(trace);
+        }
+        printSummary(trace);
+
+        if (repeat > 0) {
+            long start = System.nanoTime();
+            for (int i = 0; i < repeat; i++) {
+                AudioSimulator repeated = new AudioSimulator(scenario);
+                repeated.getTrace().setRecording(false);
+                repeated.run();
+            }
+            printRate(repeat, System.nanoTime() - start);
+        }
+
+        return !trace.getFailures().isEmpty();
+    }
+
+    private static boolean fuzz(int count, long seed, int length, boolean sections) {
+        Random random = new Random(seed);
+        int failures = 0;
+        long start = System.nanoTime();
+
+        System.out.println("== fuzzing " + count + " scenarios, seed " + seed);
+        for (int i = 0; i < count; i++) {
+            Scenario scenario = Scenario.generate("seed " + seed + " #" + i, random, length);
+            AudioSimulator simulator = new AudioSimulator(scenario);
+            simulator.getTrace().setRecording(false);
+            simulator.setTracingSections(sections);
+
+            SimulationTrace trace = simulator.run();
+            if (!trace.getFailures().isEmpty()) {
+                failures++;
+                System.out.print(scenario);
+                for (String failure : trace.getFailures()) {
+                    System.out.println("# FAIL " + failure);
+                }
+                System.out.println();
+            }
+        }
+        printRate(count, System.nanoTime() - start);
+        System.out.println(failures + " failed");
+
+        return failures > 0;
+    }
+
+    private static void printSummary(SimulationTrace trace) {
+        System.out.println(trace.getRouteDecisions() + " route decisions, "
+                + trace.getEvents() + " events, "
+                + trace.getSystemCalls() + " system calls");
+        for (String failure : trace.getFailures()) {
+            System.out.println("FAIL " + failure);
+        }
+    }
+
+    private static void printRate(int count, long nanos) {
+        System.out.println(String.format("%d scenarios in %.1fms, %.0f/s",
+                count, nanos / 1e6, count * 1e9 / nanos));
+    }
+}
@@ -0,0 +1,94 @@
+package com.reactnativeaudio;
+
+import java.util.PriorityQueue;
+
+/**
+ * Virtual clock standing in for the audio thread. Tasks run in the order of
+ * their due time, and in the order they were scheduled when due at the same
+ * time, so a simulation is fully deterministic.
+ */
+class VirtualClock implements BluetoothScoController.Scheduler {
+    private static final class Task implements Comparable<Task> {
+        final long time;
+        final long seq;
+        final Runnable runnable;
+
+        Task(long time, long seq, Runnable runnable) {
+            this.time = time;
+            this.seq = seq;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>();
+
+    private long now = 0;
+
+    private long seq = 0;
+
+    /**
+     * @return the current virtual time, in milliseconds.
+     */
+    long now() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        tasks.add(new Task(now + Math.max(0, delayMs), seq++, task));
+    }
+
+    /**
+     * Runs the given task at the given absolute time.
+     *
+     * @param task the task to run.
+     * @param time the virtual time, in milliseconds.
+     */
+    void scheduleAt(Runnable task, long time) {
+        tasks.add(new Task(Math.max(now, time), seq++, task));
+    }
+
+    /**
+     * Runs every task due up to the given time, including the ones they
+     * schedule, and moves the clock to it.
+     *
+     * @param time the virtual time, in milliseconds.
+     */
+    void advanceTo(long time) {
+        while (!tasks.isEmpty() && tasks.peek().time <= time) {
+            Task task = tasks.poll();
+            now = task.time;
+            task.runnable.run();
+        }
+        now = Math.max(now, time);
+    }
+
+    /**
+     * Runs tasks until there are none left, or until the given time.
+     *
+     * @param limit the virtual time after which to stop, in milliseconds.
+     * @return {@code true} if the clock went idle before the limit.
+     */
+    boolean runUntilIdle(long limit) {
+        advanceTo(limit);
+        return tasks.isEmpty();
+    }
+
+    /**
+     * Drops all the tasks and rewinds the clock, for reusing it in another
+     * simulation.
+     */
+    void reset() {
+        tasks.clear();
+        now = 0;
+        seq = 0;
+    }
+}
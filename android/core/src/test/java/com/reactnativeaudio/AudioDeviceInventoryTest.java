@@ -0,0 +1,121 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioDeviceInventoryTest {
+    private static final int EARPIECE = AudioDevices.EARPIECE;
+    private static final int SPEAKER = AudioDevices.SPEAKER;
+    private static final int HEADPHONES = AudioDevices.HEADPHONES;
+    private static final int BLUETOOTH = AudioDevices.BLUETOOTH;
+    private static final int NONE = AudioDevices.NONE;
+
+    private AudioDeviceInventory inventory;
+
+    @Before
+    public void setUp() {
+        inventory = new AudioDeviceInventory();
+        inventory.resync(new int[] { 1, 2 }, new int[] { EARPIECE, SPEAKER }, 2);
+    }
+
+    private void assertDevices(int devices) {
+        assertEquals(devices, inventory.getDevices());
+    }
+
+    @Test
+    public void startsOutOfSync() {
+        assertTrue(new AudioDeviceInventory().isOutOfSync());
+    }
+
+    @Test
+    public void resyncReplacesTheDevices() {
+        assertFalse(inventory.isOutOfSync());
+        assertDevices(EARPIECE | SPEAKER);
+
+        inventory.resync(new int[] { 3, 4, 5 }, new int[] { SPEAKER, NONE, BLUETOOTH }, 2);
+
+        assertFalse(inventory.isOutOfSync());
+        assertDevices(SPEAKER);
+    }
+
+    @Test
+    public void deltasAreApplied() {
+        inventory.add(3, HEADPHONES);
+        inventory.add(4, BLUETOOTH);
+        assertDevices(EARPIECE | SPEAKER | HEADPHONES | BLUETOOTH);
+
+        inventory.remove(3);
+        assertDevices(EARPIECE | SPEAKER | BLUETOOTH);
+
+        inventory.remove(1);
+        assertDevices(SPEAKER | BLUETOOTH);
+        assertFalse(inventory.isOutOfSync());
+    }
+
+    @Test
+    public void typeStaysAvailableWhileOneOfItsDevicesIs() {
+        inventory.add(3, HEADPHONES);
+        inventory.add(4, HEADPHONES);
+        inventory.remove(3);
+
+        assertDevices(EARPIECE | SPEAKER | HEADPHONES);
+    }
+
+    @Test
+    public void unroutableDevicesAreTrackedButNotReported() {
+        inventory.add(3, NONE);
+        assertDevices(EARPIECE | SPEAKER);
+
+        inventory.remove(3);
+        assertFalse(inventory.isOutOfSync());
+    }
+
+    @Test
+    public void repeatedAddIsNotADrift() {
+        inventory.add(1, EARPIECE);
+
+        assertFalse(inventory.isOutOfSync());
+        assertDevices(EARPIECE | SPEAKER);
+    }
+
+    @Test
+    public void reusedIdIsADrift() {
+        inventory.add(2, HEADPHONES);
+
+        assertTrue(inventory.isOutOfSync());
+        assertDevices(EARPIECE | HEADPHONES);
+    }
+
+    @Test
+    public void unknownRemovalIsADrift() {
+        inventory.remove(7);
+
+        assertTrue(inventory.isOutOfSync());
+        assertDevices(EARPIECE | SPEAKER);
+    }
+
+    @Test
+    public void clearLeavesItOutOfSync() {
+        inventory.clear();
+
+        assertTrue(inventory.isOutOfSync());
+        assertDevices(NONE);
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        for (int id = 10; id < 30; id++) {
+            inventory.add(id, id % 2 == 0 ? HEADPHONES : NONE);
+        }
+        for (int id = 10; id < 30; id++) {
+            inventory.remove(id);
+        }
+
+        assertFalse(inventory.isOutOfSync());
+        assertDevices(EARPIECE | SPEAKER);
+    }
+}
@@ -0,0 +1,124 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioFocusManagerTest {
+    private int requestResult;
+
+    private int requests;
+
+    private final List<Integer> regains = new ArrayList<>();
+
+    private AudioFocusManager focusManager;
+
+    @Before
+    public void setUp() {
+        requestResult = AudioFocusManager.AUDIOFOCUS_REQUEST_GRANTED;
+        focusManager = new AudioFocusManager(new AudioFocusManager.FocusSystem() {
+            @Override
+            public int requestAudioFocus() {
+                requests++;
+                return requestResult;
+            }
+
+            @Override
+            public void abandonAudioFocus() {
+            }
+        }, regains::add);
+    }
+
+    @Test
+    public void heldFocusIsNotRequestedAgain() {
+        assertTrue(focusManager.request());
+        assertTrue(focusManager.request());
+
+        assertEquals(1, requests);
+        assertEquals(1, focusManager.getSkippedCalls());
+    }
+
+    @Test
+    public void transientLossIsNotRequestedAgain() {
+        focusManager.request();
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        focusManager.request();
+
+        assertEquals(1, requests);
+    }
+
+    @Test
+    public void permanentLossIsRequestedAgain() {
+        focusManager.request();
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_LOSS);
+
+        assertFalse(focusManager.isRequested());
+        focusManager.request();
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void regainAfterLossIsReported() {
+        focusManager.request();
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_LOSS_TRANSIENT);
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_GAIN);
+
+        assertEquals(1, regains.size());
+        assertEquals(AudioFocusManager.STATE_LOST_TRANSIENT, (int) regains.get(0));
+        assertFalse(focusManager.takeStateChanged());
+    }
+
+    @Test
+    public void delayedGrantIsReportedOnceGained() {
+        requestResult = AudioFocusManager.AUDIOFOCUS_REQUEST_DELAYED;
+        focusManager.request();
+
+        assertEquals(AudioFocusManager.STATE_DELAYED, focusManager.getState());
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_GAIN);
+        assertEquals(AudioFocusManager.STATE_GRANTED, focusManager.getState());
+        assertEquals(1, regains.size());
+    }
+
+    @Test
+    public void gainWhileHeldIsNotReported() {
+        focusManager.request();
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_GAIN);
+
+        assertTrue(regains.isEmpty());
+    }
+
+    @Test
+    public void changesAfterAbandonAreIgnored() {
+        focusManager.request();
+        focusManager.abandon();
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_LOSS);
+
+        assertEquals(AudioFocusManager.STATE_NONE, focusManager.getState());
+    }
+
+    @Test
+    public void stateMayChangeWhileFocusIsAbandoned() {
+        focusManager.request();
+        assertFalse(focusManager.takeStateChanged());
+
+        focusManager.abandon();
+        assertTrue(focusManager.takeStateChanged());
+        assertFalse(focusManager.takeStateChanged());
+    }
+
+    @Test
+    public void lossIsKeptAcrossAbandon() {
+        focusManager.request();
+        focusManager.onAudioFocusChange(AudioFocusManager.AUDIOFOCUS_LOSS);
+        focusManager.abandon();
+        focusManager.request();
+
+        assertTrue(focusManager.takeStateChanged());
+    }
+}
@@ -0,0 +1,150 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioManagerShadowTest {
+    /**
+     * Audio system counting the calls changing its state.
+     */
+    private static final class CountingAudioSystem implements AudioSystem {
+        int mode = MODE_NORMAL;
+        boolean speakerphoneOn;
+        boolean bluetoothScoOn;
+        boolean microphoneMute;
+        int calls;
+
+        @Override
+        public int getMode() {
+            return mode;
+        }
+
+        @Override
+        public void setMode(int mode) {
+            calls++;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean isSpeakerphoneOn() {
+            return speakerphoneOn;
+        }
+
+        @Override
+        public void setSpeakerphoneOn(boolean on) {
+            calls++;
+            speakerphoneOn = on;
+        }
+
+        @Override
+        public void startBluetoothSco() {
+            calls++;
+        }
+
+        @Override
+        public void stopBluetoothSco() {
+            calls++;
+        }
+
+        @Override
+        public boolean isBluetoothScoOn() {
+            return bluetoothScoOn;
+        }
+
+        @Override
+        public void setBluetoothScoOn(boolean on) {
+            calls++;
+            bluetoothScoOn = on;
+        }
+
+        @Override
+        public boolean isMicrophoneMute() {
+            return microphoneMute;
+        }
+
+        @Override
+        public void setMicrophoneMute(boolean mute) {
+            calls++;
+            microphoneMute = mute;
+        }
+    }
+
+    private CountingAudioSystem audioSystem;
+
+    private AudioManagerShadow shadow;
+
+    @Before
+    public void setUp() {
+        audioSystem = new CountingAudioSystem();
+        shadow = new AudioManagerShadow(audioSystem);
+    }
+
+    @Test
+    public void unchangedStateIsNotSetAgain() {
+        shadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        shadow.setSpeakerphoneOn(true);
+        shadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        shadow.setSpeakerphoneOn(true);
+
+        assertEquals(2, audioSystem.calls);
+        assertEquals(2, shadow.getSystemCalls());
+        assertEquals(2, shadow.getSkippedCalls());
+    }
+
+    @Test
+    public void invalidatedStateIsSetAgain() {
+        shadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        shadow.setSpeakerphoneOn(true);
+        shadow.setBluetoothScoStarted(false);
+        shadow.invalidate();
+        shadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        shadow.setSpeakerphoneOn(true);
+        shadow.setBluetoothScoStarted(false);
+
+        assertEquals(6, audioSystem.calls);
+    }
+
+    @Test
+    public void invalidatingBluetoothScoKeepsTheRest() {
+        shadow.setSpeakerphoneOn(false);
+        shadow.setBluetoothScoStarted(true);
+        shadow.setBluetoothScoOn(true);
+        shadow.invalidateBluetoothSco();
+        shadow.setSpeakerphoneOn(false);
+        shadow.setBluetoothScoStarted(true);
+        shadow.setBluetoothScoOn(true);
+
+        assertEquals(5, audioSystem.calls);
+    }
+
+    @Test
+    public void resyncReportsTheChangesMadeByOthers() {
+        shadow.resync();
+        shadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        shadow.setSpeakerphoneOn(true);
+        assertEquals(0, shadow.resync());
+
+        audioSystem.mode = AudioSystem.MODE_NORMAL;
+        audioSystem.speakerphoneOn = false;
+        assertEquals(
+                AudioManagerShadow.CHANGED_MODE | AudioManagerShadow.CHANGED_SPEAKERPHONE,
+                shadow.resync());
+
+        // The state read back is what gets set again.
+        audioSystem.calls = 0;
+        shadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        shadow.setSpeakerphoneOn(true);
+        assertEquals(2, audioSystem.calls);
+    }
+
+    @Test
+    public void unknownStateIsReportedAsChanged() {
+        assertEquals(
+                AudioManagerShadow.CHANGED_MODE
+                        | AudioManagerShadow.CHANGED_ROUTE
+                        | AudioManagerShadow.CHANGED_MICROPHONE_MUTE,
+                shadow.resync());
+    }
+}
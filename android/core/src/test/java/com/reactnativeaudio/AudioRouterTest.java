@@ -0,0 +1,180 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioRouterTest {
+    private static final int BLUETOOTH = AudioDevices.BLUETOOTH;
+    private static final int EARPIECE = AudioDevices.EARPIECE;
+    private static final int HEADPHONES = AudioDevices.HEADPHONES;
+    private static final int SPEAKER = AudioDevices.SPEAKER;
+    private static final int NONE = AudioDevices.NONE;
+
+    /**
+     * Backend recording the routes set and the device lists published.
+     */
+    private static final class RecordingBackend implements AudioRouter.Backend {
+        AudioRouter router;
+        boolean setModeResult = true;
+        boolean routeChangedBehindOurBack;
+        final List<Integer> routes = new ArrayList<>();
+        int notifications;
+        int notifiedDevices;
+        int notifiedSelectedDevice;
+
+        @Override
+        public boolean setMode(int mode) {
+            if (routeChangedBehindOurBack) {
+                routeChangedBehindOurBack = false;
+                router.invalidateAudioRoute();
+            }
+            return setModeResult;
+        }
+
+        @Override
+        public void setAudioRoute(int device) {
+            routes.add(device);
+        }
+
+        @Override
+        public void notifyDevicesChanged(int devices, int selectedDevice) {
+            notifications++;
+            notifiedDevices = devices;
+            notifiedSelectedDevice = selectedDevice;
+        }
+    }
+
+    private RecordingBackend backend;
+    private AudioRouter router;
+
+    @Before
+    public void setUp() {
+        backend = new RecordingBackend();
+        router = new AudioRouter(backend);
+        backend.router = router;
+        router.replaceDevices(EARPIECE | SPEAKER);
+    }
+
+    private int lastRoute() {
+        return backend.routes.get(backend.routes.size() - 1);
+    }
+
+    @Test
+    public void callModesPickTheirDefaultDevice() {
+        assertTrue(router.setMode(AudioRouter.AUDIO_CALL));
+        assertEquals(EARPIECE, lastRoute());
+        assertEquals(EARPIECE, router.getSelectedDevice());
+
+        assertTrue(router.setMode(AudioRouter.VIDEO_CALL));
+        assertEquals(SPEAKER, lastRoute());
+    }
+
+    @Test
+    public void unchangedRouteIsNotSetAgain() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        router.updateAudioRoute();
+        router.setMode(AudioRouter.AUDIO_CALL);
+
+        assertEquals(1, backend.routes.size());
+    }
+
+    @Test
+    public void resetSetsTheRouteAgain() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        router.resetAudioRoute();
+
+        assertEquals(2, backend.routes.size());
+        assertEquals(EARPIECE, lastRoute());
+    }
+
+    @Test
+    public void invalidatedRouteIsSetAgainOnce() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        backend.routeChangedBehindOurBack = true;
+        router.setMode(AudioRouter.AUDIO_CALL);
+        router.setMode(AudioRouter.AUDIO_CALL);
+
+        assertEquals(2, backend.routes.size());
+        assertEquals(EARPIECE, lastRoute());
+    }
+
+    @Test
+    public void failedModeIsNotKept() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        backend.setModeResult = false;
+
+        assertFalse(router.setMode(AudioRouter.VIDEO_CALL));
+        assertEquals(AudioRouter.AUDIO_CALL, router.getMode());
+        assertEquals(1, backend.routes.size());
+    }
+
+    @Test
+    public void newDevicesAreRoutedTo() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        router.addDevice(BLUETOOTH);
+        router.updateAudioRoute();
+        assertEquals(BLUETOOTH, lastRoute());
+
+        router.removeDevice(BLUETOOTH);
+        router.updateAudioRoute();
+        assertEquals(EARPIECE, lastRoute());
+    }
+
+    @Test
+    public void userSelectionWinsWhileAvailable() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        router.selectDevice(SPEAKER);
+        assertEquals(SPEAKER, lastRoute());
+
+        router.selectDevice(BLUETOOTH);
+        assertEquals(SPEAKER, lastRoute());
+
+        router.addDevice(HEADPHONES);
+        router.updateAudioRoute();
+        assertEquals(HEADPHONES, lastRoute());
+    }
+
+    @Test
+    public void unusableDeviceIsSkippedUntilTheDevicesChange() {
+        router.addDevice(BLUETOOTH);
+        router.setMode(AudioRouter.AUDIO_CALL);
+        assertEquals(BLUETOOTH, lastRoute());
+
+        router.markDeviceUnusable(BLUETOOTH);
+        assertEquals(EARPIECE, lastRoute());
+
+        router.addDevice(HEADPHONES);
+        router.updateAudioRoute();
+        assertEquals(BLUETOOTH, lastRoute());
+    }
+
+    @Test
+    public void deviceListIsOnlyPublishedWhenItChanges() {
+        router.setMode(AudioRouter.AUDIO_CALL);
+        assertEquals(1, backend.notifications);
+        assertEquals(EARPIECE | SPEAKER, backend.notifiedDevices);
+        assertEquals(EARPIECE, backend.notifiedSelectedDevice);
+
+        router.resetAudioRoute();
+        assertEquals(1, backend.notifications);
+
+        router.setMode(AudioRouter.DEFAULT);
+        assertEquals(2, backend.notifications);
+        assertEquals(NONE, backend.notifiedSelectedDevice);
+    }
+
+    @Test
+    public void earpieceIsHiddenBehindHeadphones() {
+        router.addDevice(HEADPHONES);
+        router.setMode(AudioRouter.AUDIO_CALL);
+
+        assertEquals(HEADPHONES | SPEAKER, backend.notifiedDevices);
+    }
+}
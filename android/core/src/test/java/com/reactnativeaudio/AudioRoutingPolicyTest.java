@@ -0,0 +1,95 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioRoutingPolicyTest {
+    private static final int BLUETOOTH = AudioDevices.BLUETOOTH;
+    private static final int EARPIECE = AudioDevices.EARPIECE;
+    private static final int HEADPHONES = AudioDevices.HEADPHONES;
+    private static final int SPEAKER = AudioDevices.SPEAKER;
+    private static final int NONE = AudioDevices.NONE;
+
+    private AudioRoutingPolicy policy;
+
+    @Before
+    public void setUp() {
+        policy = new AudioRoutingPolicy();
+    }
+
+    @Test
+    public void audioCallsDefaultToTheEarpiece() {
+        assertEquals(EARPIECE, policy.resolve(AudioRouter.AUDIO_CALL, EARPIECE | SPEAKER, NONE));
+    }
+
+    @Test
+    public void videoCallsDefaultToTheSpeaker() {
+        assertEquals(SPEAKER, policy.resolve(AudioRouter.VIDEO_CALL, EARPIECE | SPEAKER, NONE));
+    }
+
+    @Test
+    public void headsetsArePreferred() {
+        int devices = EARPIECE | HEADPHONES | SPEAKER;
+
+        for (int mode = 0; mode < AudioRoutingPolicy.MODE_COUNT; mode++) {
+            assertEquals(HEADPHONES, policy.resolve(mode, devices, NONE));
+            assertEquals(BLUETOOTH, policy.resolve(mode, devices | BLUETOOTH, NONE));
+        }
+    }
+
+    @Test
+    public void availableSelectionWins() {
+        int devices = BLUETOOTH | EARPIECE | SPEAKER;
+
+        assertEquals(SPEAKER, policy.resolve(AudioRouter.AUDIO_CALL, devices, SPEAKER));
+        assertEquals(EARPIECE, policy.resolve(AudioRouter.VIDEO_CALL, devices, EARPIECE));
+    }
+
+    @Test
+    public void unavailableSelectionIsIgnored() {
+        assertEquals(EARPIECE, policy.resolve(AudioRouter.AUDIO_CALL, EARPIECE | SPEAKER, BLUETOOTH));
+        assertEquals(SPEAKER, policy.resolve(AudioRouter.VIDEO_CALL, EARPIECE | SPEAKER, HEADPHONES));
+    }
+
+    @Test
+    public void resolvedDeviceIsAlwaysAvailable() {
+        for (int mode = 0; mode < AudioRoutingPolicy.MODE_COUNT; mode++) {
+            for (int devices = 0; devices <= AudioDevices.ALL; devices++) {
+                for (int selection = -1; selection < AudioDevices.COUNT; selection++) {
+                    int selected = selection == -1 ? NONE : AudioDevices.valueAt(selection);
+                    int device = policy.resolve(mode, devices, selected);
+                    String message = "mode " + mode + ", devices " + devices + ", selected " + selected;
+
+                    if (devices == NONE) {
+                        assertEquals(message, NONE, device);
+                    } else {
+                        assertTrue(message, AudioDevices.contains(devices, device));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unpreferredDevicesAreFallenBackTo() {
+        assertEquals(EARPIECE, policy.resolve(AudioRouter.VIDEO_CALL, EARPIECE, NONE));
+        assertEquals(EARPIECE, policy.resolve(AudioRouter.DEFAULT, EARPIECE, NONE));
+
+        policy.setPriorities(AudioRouter.AUDIO_CALL, new int[] { BLUETOOTH });
+
+        assertEquals(SPEAKER, policy.resolve(AudioRouter.AUDIO_CALL, EARPIECE | HEADPHONES | SPEAKER, NONE));
+        assertEquals(EARPIECE, policy.resolve(AudioRouter.AUDIO_CALL, EARPIECE | HEADPHONES, NONE));
+        assertEquals(HEADPHONES, policy.resolve(AudioRouter.AUDIO_CALL, HEADPHONES, NONE));
+    }
+
+    @Test
+    public void prioritiesOnlyApplyToTheirMode() {
+        policy.setPriorities(AudioRouter.AUDIO_CALL, new int[] { SPEAKER, EARPIECE });
+
+        assertEquals(SPEAKER, policy.resolve(AudioRouter.AUDIO_CALL, BLUETOOTH | EARPIECE | SPEAKER, NONE));
+        assertEquals(BLUETOOTH, policy.resolve(AudioRouter.VIDEO_CALL, BLUETOOTH | EARPIECE | SPEAKER, NONE));
+    }
+}
@@ -0,0 +1,172 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioStateTest {
+    private static final int BLUETOOTH = AudioDevices.BLUETOOTH;
+    private static final int EARPIECE = AudioDevices.EARPIECE;
+    private static final int SPEAKER = AudioDevices.SPEAKER;
+
+    /**
+     * Backend checking that the published state is the one the device list
+     * events are about.
+     */
+    private static final class CheckingBackend implements AudioRouter.Backend {
+        AudioRouter router;
+        int notifications;
+
+        @Override
+        public boolean setMode(int mode) {
+            return true;
+        }
+
+        @Override
+        public void setAudioRoute(int device) {
+        }
+
+        @Override
+        public void notifyDevicesChanged(int devices, int selectedDevice) {
+            AudioState state = router.getState();
+
+            notifications++;
+            assertEquals(devices, state.getVisibleDevices());
+            assertEquals(selectedDevice, state.getSelectedDevice());
+        }
+    }
+
+    private CheckingBackend backend;
+    private AudioRouter router;
+
+    @Before
+    public void setUp() {
+        backend = new CheckingBackend();
+        router = new AudioRouter(backend);
+        backend.router = router;
+    }
+
+    private void assertMatchesRouter(AudioState state) {
+        assertEquals(router.getMode(), state.getMode());
+        assertEquals(router.getAvailableDevices(), state.getAvailableDevices());
+        assertEquals(router.getSelectedDevice(), state.getSelectedDevice());
+    }
+
+    @Test
+    public void routerStartsWithTheInitialState() {
+        assertSame(AudioState.INITIAL, router.getState());
+        assertEquals(0, AudioState.INITIAL.getVersion());
+        assertEquals(AudioRouter.MODE_UNSET, AudioState.INITIAL.getMode());
+    }
+
+    @Test
+    public void everyChangeIsPublished() {
+        router.replaceDevices(EARPIECE | SPEAKER);
+        AudioState devicesState = router.getState();
+        assertEquals(1, devicesState.getVersion());
+        assertMatchesRouter(devicesState);
+
+        router.setMode(AudioRouter.AUDIO_CALL);
+        AudioState callState = router.getState();
+        assertEquals(2, callState.getVersion());
+        assertMatchesRouter(callState);
+        assertEquals(EARPIECE, callState.getSelectedDevice());
+
+        router.selectDevice(SPEAKER);
+        assertMatchesRouter(router.getState());
+        assertEquals(SPEAKER, router.getState().getUserSelectedDevice());
+
+        // Snapshots already handed out don't change.
+        assertEquals(AudioRouter.MODE_UNSET, devicesState.getMode());
+        assertEquals(EARPIECE, callState.getSelectedDevice());
+    }
+
+    @Test
+    public void unchangedStateIsNotPublishedAgain() {
+        router.replaceDevices(EARPIECE | SPEAKER);
+        router.setMode(AudioRouter.AUDIO_CALL);
+        AudioState state = router.getState();
+
+        router.setMode(AudioRouter.AUDIO_CALL);
+        router.updateAudioRoute();
+        router.replaceDevices(EARPIECE | SPEAKER);
+
+        assertSame(state, router.getState());
+    }
+
+    @Test
+    public void operationIsPublishedOnceItEnds() {
+        router.replaceDevices(EARPIECE | SPEAKER);
+        router.setMode(AudioRouter.AUDIO_CALL);
+        AudioState before = router.getState();
+
+        router.beginOperation(AudioMetrics.OP_DEVICE_CHANGE, AudioMetrics.now());
+        router.replaceDevices(EARPIECE | SPEAKER | BLUETOOTH);
+        assertSame(before, router.getState());
+
+        router.updateAudioRoute();
+        router.endOperation();
+
+        AudioState after = router.getState();
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertMatchesRouter(after);
+        assertEquals(BLUETOOTH, after.getSelectedDevice());
+    }
+
+    @Test
+    public void eventsFollowThePublishedState() {
+        router.replaceDevices(EARPIECE | SPEAKER);
+        router.beginOperation(AudioMetrics.OP_SET_MODE, AudioMetrics.now());
+        router.setMode(AudioRouter.VIDEO_CALL);
+        router.endOperation();
+
+        assertEquals(1, backend.notifications);
+    }
+
+    @Test
+    public void readersOnOtherThreadsSeeConsistentSnapshots() throws Exception {
+        final int iterations = 20000;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        router.replaceDevices(EARPIECE | SPEAKER);
+        router.setMode(AudioRouter.AUDIO_CALL);
+
+        Thread reader = new Thread(() -> {
+            long version = -1;
+
+            try {
+                while (version < iterations) {
+                    AudioState state = router.getState();
+
+                    assertTrue(state.getVersion() >= version);
+                    version = state.getVersion();
+                    // The selected device is always one of the devices
+                    // available along with it.
+                    assertTrue(state.toString(),
+                            AudioDevices.contains(state.getAvailableDevices(), state.getSelectedDevice()));
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+
+        // Device changes run as operations, as they do in the module.
+        for (int i = 0; i < iterations; i++) {
+            router.beginOperation(AudioMetrics.OP_DEVICE_CHANGE, AudioMetrics.now());
+            router.replaceDevices(i % 2 == 0 ? EARPIECE | SPEAKER | BLUETOOTH : EARPIECE | SPEAKER);
+            router.updateAudioRoute();
+            router.endOperation();
+        }
+        reader.join(10000);
+
+        assertNull(failure.get());
+        assertEquals(2 + iterations, router.getState().getVersion());
+    }
+}
@@ -0,0 +1,76 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioTraceTest {
+    /**
+     * Tracer keeping the async slices which are open.
+     */
+    private static final class SliceTracer implements AudioTrace.Tracer {
+        final Set<String> open = new HashSet<>();
+
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+
+        @Override
+        public void beginAsyncSection(String name, int cookie) {
+            assertTrue(name + " " + cookie + " begun twice", open.add(name + " " + cookie));
+        }
+
+        @Override
+        public void endAsyncSection(String name, int cookie) {
+            assertTrue(name + " " + cookie + " not begun", open.remove(name + " " + cookie));
+        }
+    }
+
+    private final SliceTracer tracer = new SliceTracer();
+
+    @Before
+    public void setUp() {
+        AudioTrace.setTracer(tracer);
+    }
+
+    @After
+    public void tearDown() {
+        AudioTrace.setTracer(null);
+    }
+
+    @Test
+    public void overlappingSlicesOfAnOperationAreKeptApart() {
+        int first = AudioTrace.beginQueued(AudioMetrics.OP_PREWARM);
+        int second = AudioTrace.beginQueued(AudioMetrics.OP_PREWARM);
+
+        assertNotEquals(first, second);
+        assertEquals(2, tracer.open.size());
+
+        AudioTrace.endQueued(AudioMetrics.OP_PREWARM, first);
+        assertEquals(1, tracer.open.size());
+        AudioTrace.endQueued(AudioMetrics.OP_PREWARM, second);
+        assertTrue(tracer.open.isEmpty());
+    }
+
+    @Test
+    public void slicesBegunWhileTracingIsOffAreNotEnded() {
+        AudioTrace.setTracer(null);
+        int cookie = AudioTrace.beginQueued(AudioMetrics.OP_RESUME_CALL);
+
+        assertEquals(AudioTrace.NO_COOKIE, cookie);
+        AudioTrace.setTracer(tracer);
+        AudioTrace.endQueued(AudioMetrics.OP_RESUME_CALL, cookie);
+        assertTrue(tracer.open.isEmpty());
+    }
+}
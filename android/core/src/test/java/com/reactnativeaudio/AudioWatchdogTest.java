@@ -0,0 +1,164 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AudioWatchdogTest {
+    private static final long THRESHOLD = 100;
+
+    /**
+     * Audio thread running the given action while its stack is captured,
+     * i.e. between the two halves of {@link AudioWatchdog#check}.
+     */
+    private static final class RacingThread extends Thread {
+        private final Runnable action;
+
+        RacingThread(Runnable action) {
+            this.action = action;
+        }
+
+        @Override
+        public StackTraceElement[] getStackTrace() {
+            action.run();
+            return new StackTraceElement[0];
+        }
+    }
+
+    private final Thread audioThread = new Thread();
+
+    private AudioWatchdog watchdog;
+
+    @Before
+    public void setUp() {
+        watchdog = new AudioWatchdog(THRESHOLD);
+    }
+
+    @Test
+    public void taskIsNotReportedBeforeTheThreshold() {
+        watchdog.onTaskStarted("task", 1000);
+
+        assertNull(watchdog.check(1000 + THRESHOLD - 1, audioThread, -1));
+        assertTrue(watchdog.getReports().isEmpty());
+    }
+
+    @Test
+    public void stalledTaskIsReportedOnce() {
+        watchdog.onTaskStarted("task", 1000);
+
+        AudioWatchdog.StallReport report
+                = watchdog.check(1000 + THRESHOLD, audioThread, AudioMetrics.OP_SET_MODE);
+        assertNotNull(report);
+        assertEquals("task", report.task);
+        assertEquals(AudioMetrics.OP_SET_MODE, report.op);
+        assertEquals(THRESHOLD, report.getDuration());
+        assertFalse(report.hasEnded());
+
+        assertNull(watchdog.check(1000 + 2 * THRESHOLD, audioThread, AudioMetrics.OP_SET_MODE));
+        assertEquals(Collections.singletonList(report), watchdog.getReports());
+    }
+
+    @Test
+    public void reportGetsTheWholeDurationOnceTheTaskEnds() {
+        watchdog.onTaskStarted("task", 1000);
+        AudioWatchdog.StallReport report = watchdog.check(1000 + THRESHOLD, audioThread, -1);
+
+        assertSame(report, watchdog.onTaskEnded(1000 + 3 * THRESHOLD));
+        assertTrue(report.hasEnded());
+        assertEquals(3 * THRESHOLD, report.getDuration());
+    }
+
+    @Test
+    public void endedTaskIsNotReported() {
+        watchdog.onTaskStarted("task", 1000);
+
+        assertNull(watchdog.onTaskEnded(1000 + THRESHOLD - 1));
+        assertNull(watchdog.check(1000 + THRESHOLD, audioThread, -1));
+    }
+
+    @Test
+    public void taskEndingWhileTheStackIsCapturedIsNotReported() {
+        watchdog.onTaskStarted("task", 1000);
+        Thread thread = new RacingThread(() -> assertNull(watchdog.onTaskEnded(1000 + THRESHOLD)));
+
+        assertNull(watchdog.check(1000 + THRESHOLD, thread, -1));
+        assertTrue(watchdog.getReports().isEmpty());
+    }
+
+    @Test
+    public void nextTaskIsNotReportedWithThePreviousOnesStack() {
+        watchdog.onTaskStarted("first", 1000);
+        Thread thread = new RacingThread(() -> {
+            watchdog.onTaskEnded(1000);
+            watchdog.onTaskStarted("second", 1000);
+        });
+
+        assertNull(watchdog.check(1000 + THRESHOLD, thread, -1));
+
+        // The second task is reported on its own check.
+        AudioWatchdog.StallReport report = watchdog.check(1000 + THRESHOLD, audioThread, -1);
+        assertNotNull(report);
+        assertEquals("second", report.task);
+    }
+
+    @Test
+    public void onlyTheLastReportsAreKept() {
+        int tasks = AudioWatchdog.MAX_REPORTS + 3;
+
+        for (int i = 0; i < tasks; i++) {
+            watchdog.onTaskStarted("task " + i, i * 1000);
+            assertNotNull(watchdog.check(i * 1000 + THRESHOLD, audioThread, -1));
+            watchdog.onTaskEnded(i * 1000 + 2 * THRESHOLD);
+        }
+
+        List<AudioWatchdog.StallReport> reports = watchdog.getReports();
+        assertEquals(AudioWatchdog.MAX_REPORTS, reports.size());
+        assertEquals("task 3", reports.get(0).task);
+        assertEquals("task " + (tasks - 1), reports.get(reports.size() - 1).task);
+    }
+
+    @Test
+    public void everyReportIsEndedByItsTask() throws Exception {
+        final int tasks = 20000;
+        final AudioWatchdog watchdog = new AudioWatchdog(0);
+        final Set<AudioWatchdog.StallReport> ended
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<AudioWatchdog.StallReport> reported
+                = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Thread audio = new Thread(() -> {
+            for (int i = 0; i < tasks; i++) {
+                watchdog.onTaskStarted("task", i);
+                AudioWatchdog.StallReport report = watchdog.onTaskEnded(i);
+                if (report != null) {
+                    ended.add(report);
+                }
+            }
+        });
+        audio.start();
+        while (audio.isAlive()) {
+            AudioWatchdog.StallReport report = watchdog.check(tasks, audioThread, -1);
+            if (report != null) {
+                assertTrue(reported.add(report));
+            }
+        }
+        audio.join();
+
+        // Each task is reported at most once, and ends its own report.
+        assertEquals(reported, ended);
+        for (AudioWatchdog.StallReport report : ended) {
+            assertTrue(report.hasEnded());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BluetoothScoControllerTest {
+    private static final int CONNECTED = BluetoothScoController.SCO_AUDIO_STATE_CONNECTED;
+    private static final int CONNECTING = BluetoothScoController.SCO_AUDIO_STATE_CONNECTING;
+    private static final int DISCONNECTED = BluetoothScoController.SCO_AUDIO_STATE_DISCONNECTED;
+    private static final int ERROR = BluetoothScoController.SCO_AUDIO_STATE_ERROR;
+
+    /**
+     * Audio system keeping the SCO state we set.
+     */
+    private static final class ScoAudioSystem implements AudioSystem {
+        int scoStarts;
+        boolean scoStarted;
+        boolean bluetoothScoOn;
+
+        @Override
+        public int getMode() {
+            return MODE_NORMAL;
+        }
+
+        @Override
+        public void setMode(int mode) {
+        }
+
+        @Override
+        public boolean isSpeakerphoneOn() {
+            return false;
+        }
+
+        @Override
+        public void setSpeakerphoneOn(boolean on) {
+        }
+
+        @Override
+        public void startBluetoothSco() {
+            scoStarts++;
+            scoStarted = true;
+        }
+
+        @Override
+        public void stopBluetoothSco() {
+            scoStarted = false;
+        }
+
+        @Override
+        public boolean isBluetoothScoOn() {
+            return bluetoothScoOn;
+        }
+
+        @Override
+        public void setBluetoothScoOn(boolean on) {
+            bluetoothScoOn = on;
+        }
+
+        @Override
+        public boolean isMicrophoneMute() {
+            return false;
+        }
+
+        @Override
+        public void setMicrophoneMute(boolean mute) {
+        }
+    }
+
+    /**
+     * Scheduler whose tasks only run when the test says so.
+     */
+    private static final class ManualScheduler implements BluetoothScoController.Scheduler {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            assertEquals(BluetoothScoController.CONNECT_TIMEOUT, delayMs);
+            tasks.add(task);
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    /**
+     * Listener recording the outcome of the connection.
+     */
+    private static final class RecordingListener implements BluetoothScoController.Listener {
+        int connected;
+        int connectedAttempts;
+        int failed;
+        final List<String> attemptFailures = new ArrayList<>();
+
+        @Override
+        public void onBluetoothScoConnected(long latency, int attempts) {
+            connected++;
+            connectedAttempts = attempts;
+        }
+
+        @Override
+        public void onBluetoothScoFailed() {
+            failed++;
+        }
+
+        @Override
+        public void onBluetoothScoAttemptFailed(int attempt, String reason) {
+            attemptFailures.add(attempt + " " + reason);
+        }
+    }
+
+    private ScoAudioSystem audioSystem;
+    private AudioManagerShadow shadow;
+    private ManualScheduler scheduler;
+    private RecordingListener listener;
+    private BluetoothScoController controller;
+
+    @Before
+    public void setUp() {
+        audioSystem = new ScoAudioSystem();
+        scheduler = new ManualScheduler();
+        listener = new RecordingListener();
+        shadow = new AudioManagerShadow(audioSystem);
+        controller = new BluetoothScoController(scheduler, shadow, listener);
+    }
+
+    private void connect() {
+        controller.connect();
+        controller.onScoAudioStateUpdated(CONNECTING, DISCONNECTED);
+        controller.onScoAudioStateUpdated(CONNECTED, CONNECTING);
+    }
+
+    @Test
+    public void audioIsOnlyRoutedOnceTheLinkIsUp() {
+        controller.connect();
+
+        assertEquals(BluetoothScoController.STATE_CONNECTING, controller.getState());
+        assertTrue(audioSystem.scoStarted);
+        assertFalse(audioSystem.bluetoothScoOn);
+
+        controller.onScoAudioStateUpdated(CONNECTING, DISCONNECTED);
+        controller.onScoAudioStateUpdated(CONNECTED, CONNECTING);
+
+        assertEquals(BluetoothScoController.STATE_CONNECTED, controller.getState());
+        assertTrue(audioSystem.bluetoothScoOn);
+        assertEquals(1, listener.connected);
+        assertEquals(1, listener.connectedAttempts);
+    }
+
+    @Test
+    public void connectingTwiceStartsOneLink() {
+        controller.connect();
+        controller.connect();
+
+        assertEquals(1, audioSystem.scoStarts);
+    }
+
+    @Test
+    public void connectingWhileUpRoutesToTheLinkAgain() {
+        connect();
+        audioSystem.bluetoothScoOn = false;
+        shadow.resync();
+
+        controller.connect();
+
+        assertTrue(audioSystem.bluetoothScoOn);
+        assertEquals(1, audioSystem.scoStarts);
+        assertEquals(1, listener.connected);
+    }
+
+    @Test
+    public void failedAttemptIsRetried() {
+        controller.connect();
+        controller.onScoAudioStateUpdated(CONNECTING, DISCONNECTED);
+        controller.onScoAudioStateUpdated(DISCONNECTED, CONNECTING);
+
+        assertEquals(BluetoothScoController.STATE_CONNECTING, controller.getState());
+        assertEquals(2, audioSystem.scoStarts);
+
+        controller.onScoAudioStateUpdated(CONNECTING, DISCONNECTED);
+        controller.onScoAudioStateUpdated(CONNECTED, CONNECTING);
+
+        assertEquals(1, listener.connected);
+        assertEquals(2, listener.connectedAttempts);
+        assertEquals(0, listener.failed);
+    }
+
+    @Test
+    public void stuckLinkTimesOutAndGivesUp() {
+        controller.connect();
+        scheduler.runAll();
+        scheduler.runAll();
+
+        assertEquals(BluetoothScoController.STATE_DISCONNECTED, controller.getState());
+        assertEquals(BluetoothScoController.MAX_ATTEMPTS, audioSystem.scoStarts);
+        assertEquals(1, listener.failed);
+        assertEquals("1 timed out", listener.attemptFailures.get(0));
+        assertEquals("2 timed out", listener.attemptFailures.get(1));
+        assertFalse(audioSystem.scoStarted);
+        assertFalse(audioSystem.bluetoothScoOn);
+    }
+
+    @Test
+    public void errorsCountAsFailedAttempts() {
+        controller.connect();
+        controller.onScoAudioStateUpdated(ERROR, DISCONNECTED);
+        controller.onScoAudioStateUpdated(ERROR, DISCONNECTED);
+
+        assertEquals(1, listener.failed);
+        assertEquals("2 errored", listener.attemptFailures.get(1));
+    }
+
+    @Test
+    public void staleTimeoutsAreIgnored() {
+        connect();
+        scheduler.runAll();
+
+        assertEquals(BluetoothScoController.STATE_CONNECTED, controller.getState());
+        assertTrue(listener.attemptFailures.isEmpty());
+
+        controller.disconnect();
+        controller.connect();
+        controller.disconnect();
+        scheduler.runAll();
+
+        assertTrue(listener.attemptFailures.isEmpty());
+    }
+
+    @Test
+    public void droppedLinkIsReported() {
+        connect();
+        controller.onScoAudioStateUpdated(DISCONNECTED, CONNECTED);
+
+        assertEquals(BluetoothScoController.STATE_DISCONNECTED, controller.getState());
+        assertEquals(1, listener.failed);
+
+        // The link state is no longer known, so it's started again.
+        controller.connect();
+        assertEquals(2, audioSystem.scoStarts);
+    }
+
+    @Test
+    public void disconnectTearsTheLinkDown() {
+        connect();
+        controller.disconnect();
+
+        assertEquals(BluetoothScoController.STATE_DISCONNECTED, controller.getState());
+        assertFalse(audioSystem.scoStarted);
+        assertFalse(audioSystem.bluetoothScoOn);
+        assertEquals(0, listener.failed);
+    }
+}
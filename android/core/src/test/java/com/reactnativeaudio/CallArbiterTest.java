@@ -0,0 +1,112 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallArbiterTest {
+    private CallArbiter arbiter;
+
+    @Before
+    public void setUp() {
+        arbiter = new CallArbiter();
+    }
+
+    @Test
+    public void keepsOtherCallsByDefault() {
+        assertEquals(CallArbiter.POLICY_KEEP_OTHERS, arbiter.getPolicy());
+        assertNull(arbiter.getForegroundCall());
+
+        assertTrue(arbiter.activate("a").isEmpty());
+        assertTrue(arbiter.activate("b").isEmpty());
+        assertEquals("b", arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void audioFollowsTheLatestActivatedCall() {
+        arbiter.activate("a");
+        arbiter.activate("b");
+        arbiter.activate("a");
+
+        assertEquals("a", arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void previousCallTakesOverWhenTheForegroundOneEnds() {
+        arbiter.activate("a");
+        arbiter.activate("b");
+        arbiter.activate("c");
+
+        assertEquals("b", arbiter.deactivate("c"));
+        assertEquals("b", arbiter.getForegroundCall());
+        assertEquals("a", arbiter.deactivate("b"));
+        assertNull(arbiter.deactivate("a"));
+        assertNull(arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void endingABackgroundCallKeepsTheForegroundOne() {
+        arbiter.activate("a");
+        arbiter.activate("b");
+
+        assertNull(arbiter.deactivate("a"));
+        assertEquals("b", arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void unknownCallsAreIgnored() {
+        arbiter.activate("a");
+
+        assertNull(arbiter.deactivate("b"));
+        assertEquals("a", arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void holdOthersHoldsEveryOtherActiveCall() {
+        arbiter.activate("a");
+        arbiter.activate("b");
+        arbiter.setPolicy(CallArbiter.POLICY_HOLD_OTHERS);
+
+        assertEquals(Arrays.asList("a", "b"), arbiter.activate("c"));
+        assertEquals("c", arbiter.getForegroundCall());
+
+        // The held calls are no longer active, so none takes over.
+        assertNull(arbiter.deactivate("c"));
+        assertNull(arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void holdOthersDoesNotHoldTheActivatedCall() {
+        arbiter.setPolicy(CallArbiter.POLICY_HOLD_OTHERS);
+        arbiter.activate("a");
+
+        assertEquals(Collections.emptyList(), arbiter.activate("a"));
+        assertEquals(Collections.singletonList("a"), arbiter.activate("b"));
+        assertEquals("b", arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void resumedCallIsActiveAgain() {
+        arbiter.setPolicy(CallArbiter.POLICY_HOLD_OTHERS);
+        arbiter.activate("a");
+        arbiter.activate("b");
+
+        assertEquals(Collections.singletonList("b"), arbiter.activate("a"));
+        assertEquals("a", arbiter.getForegroundCall());
+    }
+
+    @Test
+    public void onlyKnownPoliciesAreValid() {
+        assertTrue(CallArbiter.isValidPolicy(CallArbiter.POLICY_HOLD_OTHERS));
+        assertTrue(CallArbiter.isValidPolicy(CallArbiter.POLICY_KEEP_OTHERS));
+        assertFalse(CallArbiter.isValidPolicy(2));
+        assertFalse(CallArbiter.isValidPolicy(-1));
+    }
+}
@@ -0,0 +1,64 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CallStateTest {
+    @Test
+    public void outgoingCallGoesThroughDialing() {
+        assertTrue(CallState.canMove(CallState.PENDING, CallState.DIALING));
+        assertTrue(CallState.canMove(CallState.DIALING, CallState.ACTIVE));
+        assertTrue(CallState.canMove(CallState.ACTIVE, CallState.DISCONNECTING));
+        assertTrue(CallState.canMove(CallState.DISCONNECTING, CallState.DISCONNECTED));
+    }
+
+    @Test
+    public void incomingCallGoesThroughRinging() {
+        assertTrue(CallState.canMove(CallState.PENDING, CallState.RINGING));
+        assertTrue(CallState.canMove(CallState.RINGING, CallState.ACTIVE));
+        assertTrue(CallState.canMove(CallState.RINGING, CallState.DISCONNECTING));
+    }
+
+    @Test
+    public void onlyActiveCallsAreHeld() {
+        assertTrue(CallState.canMove(CallState.ACTIVE, CallState.HOLDING));
+        assertTrue(CallState.canMove(CallState.HOLDING, CallState.ACTIVE));
+        assertTrue(CallState.canMove(CallState.HOLDING, CallState.DISCONNECTING));
+
+        assertFalse(CallState.canMove(CallState.PENDING, CallState.HOLDING));
+        assertFalse(CallState.canMove(CallState.DIALING, CallState.HOLDING));
+        assertFalse(CallState.canMove(CallState.RINGING, CallState.HOLDING));
+    }
+
+    @Test
+    public void callsAreNotConnectedBeforeTheirConnectionIsCreated() {
+        assertFalse(CallState.canMove(CallState.PENDING, CallState.ACTIVE));
+        assertFalse(CallState.canMove(CallState.PENDING, CallState.DISCONNECTING));
+    }
+
+    @Test
+    public void callsDoNotGoBack() {
+        assertFalse(CallState.canMove(CallState.ACTIVE, CallState.DIALING));
+        assertFalse(CallState.canMove(CallState.ACTIVE, CallState.RINGING));
+        assertFalse(CallState.canMove(CallState.HOLDING, CallState.RINGING));
+        assertFalse(CallState.canMove(CallState.DISCONNECTING, CallState.ACTIVE));
+    }
+
+    @Test
+    public void everyStateButDisconnectedCanBeEnded() {
+        for (int state = CallState.PENDING; state <= CallState.HOLDING; state++) {
+            if (state != CallState.DISCONNECTED) {
+                assertTrue(CallState.getName(state), CallState.canMove(state, CallState.DISCONNECTED));
+            }
+        }
+    }
+
+    @Test
+    public void disconnectedIsFinal() {
+        for (int state = CallState.PENDING; state <= CallState.HOLDING; state++) {
+            assertFalse(CallState.getName(state), CallState.canMove(CallState.DISCONNECTED, state));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class CommandQueueTest {
+    private static final int SET_MODE = 0;
+    private static final int SET_AUDIO_DEVICE = 1;
+
+    private static final class NamedCommand extends CommandQueue.Command {
+        final String name;
+
+        NamedCommand(int kind, String name) {
+            super(kind);
+            this.name = name;
+        }
+    }
+
+    private final CommandQueue<NamedCommand> queue = new CommandQueue<>(2);
+
+    /**
+     * Offers a command, and schedules a take if it was queued, as the audio
+     * module does.
+     *
+     * @return the number of takes to schedule, 1 or 0.
+     */
+    private int offer(int kind, String name) {
+        return queue.offer(new NamedCommand(kind, name)) == null ? 1 : 0;
+    }
+
+    /**
+     * Runs the scheduled takes.
+     *
+     * @return the names of the commands taken, in order.
+     */
+    private String takeAll(int takes) {
+        StringBuilder names = new StringBuilder();
+
+        for (int i = 0; i < takes; i++) {
+            if (names.length() > 0) {
+                names.append(' ');
+            }
+            names.append(queue.take().name);
+        }
+        assertNull(queue.take());
+        return names.toString();
+    }
+
+    @Test
+    public void consecutiveCommandsOfOneKindAreSuperseded() {
+        int takes = offer(SET_AUDIO_DEVICE, "SPEAKER")
+                + offer(SET_AUDIO_DEVICE, "EARPIECE")
+                + offer(SET_AUDIO_DEVICE, "BLUETOOTH");
+
+        assertEquals("BLUETOOTH", takeAll(takes));
+        assertEquals(2, queue.takeSuperseded(SET_AUDIO_DEVICE));
+        assertEquals(0, queue.takeSuperseded(SET_AUDIO_DEVICE));
+        assertEquals(0, queue.takeSuperseded(SET_MODE));
+    }
+
+    @Test
+    public void supersededCommandIsReturned() {
+        NamedCommand first = new NamedCommand(SET_MODE, "AUDIO_CALL");
+
+        assertNull(queue.offer(first));
+        assertSame(first, queue.offer(new NamedCommand(SET_MODE, "VIDEO_CALL")));
+    }
+
+    @Test
+    public void interleavedCommandsKeepTheirOrder() {
+        int takes = offer(SET_AUDIO_DEVICE, "SPEAKER")
+                + offer(SET_MODE, "AUDIO_CALL")
+                + offer(SET_AUDIO_DEVICE, "EARPIECE");
+
+        assertEquals("SPEAKER AUDIO_CALL EARPIECE", takeAll(takes));
+        assertEquals(0, queue.takeSuperseded(SET_AUDIO_DEVICE));
+    }
+
+    @Test
+    public void onlyTheLastQueuedCommandIsSuperseded() {
+        int takes = offer(SET_MODE, "AUDIO_CALL")
+                + offer(SET_AUDIO_DEVICE, "SPEAKER")
+                + offer(SET_MODE, "VIDEO_CALL")
+                + offer(SET_MODE, "DEFAULT")
+                + offer(SET_AUDIO_DEVICE, "EARPIECE");
+
+        assertEquals("AUDIO_CALL SPEAKER DEFAULT EARPIECE", takeAll(takes));
+        assertEquals(1, queue.takeSuperseded(SET_MODE));
+    }
+
+    @Test
+    public void takenCommandIsNotSuperseded() {
+        int takes = offer(SET_AUDIO_DEVICE, "SPEAKER");
+
+        assertEquals("SPEAKER", takeAll(takes));
+        takes = offer(SET_AUDIO_DEVICE, "EARPIECE");
+        assertEquals("EARPIECE", takeAll(takes));
+        assertEquals(0, queue.takeSuperseded(SET_AUDIO_DEVICE));
+    }
+
+    @Test
+    public void commandsOfferedWhileTakingAreQueued() {
+        int takes = offer(SET_MODE, "AUDIO_CALL") + offer(SET_AUDIO_DEVICE, "SPEAKER");
+
+        assertEquals("AUDIO_CALL", queue.take().name);
+        takes--;
+        takes += offer(SET_AUDIO_DEVICE, "EARPIECE") + offer(SET_MODE, "VIDEO_CALL");
+        assertEquals("EARPIECE VIDEO_CALL", takeAll(takes));
+    }
+}
@@ -0,0 +1,98 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventBatcherTest {
+    private static final String DEVICES = "devices";
+    private static final String HOLD = "hold";
+    private static final String UNHOLD = "unhold";
+
+    private EventBatcher<Integer> batcher;
+
+    @Before
+    public void setUp() {
+        batcher = new EventBatcher<>(Collections.singletonList(DEVICES));
+    }
+
+    private List<String> take() {
+        List<String> events = new ArrayList<>();
+
+        for (EventBatcher.Event<Integer> event : batcher.take()) {
+            events.add(event.name + " " + event.data);
+        }
+        return events;
+    }
+
+    @Test
+    public void onlyTheFirstEventOfABatchSchedulesIt() {
+        assertTrue(batcher.add(HOLD, 1));
+        assertFalse(batcher.add(UNHOLD, 1));
+        assertFalse(batcher.add(DEVICES, 1));
+
+        take();
+        assertTrue(batcher.add(DEVICES, 2));
+    }
+
+    @Test
+    public void latestStateEventWins() {
+        batcher.add(DEVICES, 1);
+        batcher.add(DEVICES, 2);
+        batcher.add(DEVICES, 3);
+
+        assertEquals(Collections.singletonList("devices 3"), take());
+        assertEquals(2, batcher.takeMerged());
+        assertEquals(0, batcher.takeMerged());
+    }
+
+    @Test
+    public void mergedStateEventMovesAfterTheOthers() {
+        batcher.add(DEVICES, 1);
+        batcher.add(HOLD, 1);
+        batcher.add(DEVICES, 2);
+        batcher.add(UNHOLD, 1);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("hold 1");
+        expected.add("devices 2");
+        expected.add("unhold 1");
+        assertEquals(expected, take());
+    }
+
+    @Test
+    public void otherEventsAreAllKeptInOrder() {
+        batcher.add(HOLD, 1);
+        batcher.add(HOLD, 2);
+        batcher.add(UNHOLD, 1);
+
+        List<String> expected = new ArrayList<>();
+        expected.add("hold 1");
+        expected.add("hold 2");
+        expected.add("unhold 1");
+        assertEquals(expected, take());
+        assertEquals(0, batcher.takeMerged());
+    }
+
+    @Test
+    public void stateEventsAreOnlyMergedWithinABatch() {
+        batcher.add(DEVICES, 1);
+        assertEquals(Collections.singletonList("devices 1"), take());
+
+        batcher.add(DEVICES, 2);
+        assertEquals(Collections.singletonList("devices 2"), take());
+        assertEquals(0, batcher.takeMerged());
+    }
+
+    @Test
+    public void emptyBatchIsTaken() {
+        assertTrue(batcher.take().isEmpty());
+    }
+}
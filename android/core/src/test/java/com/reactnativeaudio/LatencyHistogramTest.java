@@ -0,0 +1,103 @@
+package com.reactnativeaudio;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    private static final long MS = 1_000_000L;
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void countMeanAndMaxAreExact() {
+        histogram.record(1 * MS);
+        histogram.record(2 * MS);
+        histogram.record(6 * MS);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(3 * MS, histogram.getMean());
+        assertEquals(6 * MS, histogram.getMax());
+    }
+
+    @Test
+    public void percentilesAreTheUpperBoundOfTheirBucket() {
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3 * MS);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(40 * MS);
+        }
+        histogram.record(60 * MS);
+
+        assertEquals(5 * MS, histogram.getPercentile(50));
+        assertEquals(5 * MS, histogram.getPercentile(89));
+        assertEquals(50 * MS, histogram.getPercentile(95));
+        assertEquals(60 * MS, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void bucketBoundsAreInclusive() {
+        histogram.record(5 * MS);
+        histogram.record(5 * MS + 1);
+
+        assertEquals(5 * MS, histogram.getPercentile(50));
+        assertEquals(5 * MS + 1, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesNeverExceedTheMax() {
+        histogram.record(3 * MS);
+
+        assertEquals(3 * MS, histogram.getPercentile(50));
+        assertEquals(3 * MS, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void overflowIsReportedAsTheMax() {
+        histogram.record(1 * MS);
+        histogram.record(7_000 * MS);
+
+        assertEquals(1 * MS, histogram.getPercentile(50));
+        assertEquals(7_000 * MS, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void negativeLatenciesCountAsZero() {
+        histogram.record(-5 * MS);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        histogram.record(3 * MS);
+        histogram.record(7_000 * MS);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+
+        histogram.record(1 * MS);
+        assertEquals(1 * MS, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,64 @@
+package com.reactnativeaudio;
+
+import android.media.AudioManager;
+
+/**
+ * {@link AudioSystem} backed by the Android {@link AudioManager}.
+ */
+class AndroidAudioSystem implements AudioSystem {
+    private final AudioManager audioManager;
+
+    AndroidAudioSystem(AudioManager audioManager) {
+        this.audioManager = audioManager;
+    }
+
+    @Override
+    public int getMode() {
+        return audioManager.getMode();
+    }
+
+    @Override
+    public void setMode(int mode) {
+        audioManager.setMode(mode);
+    }
+
+    @Override
+    public boolean isSpeakerphoneOn() {
+        return audioManager.isSpeakerphoneOn();
+    }
+
+    @Override
+    public void setSpeakerphoneOn(boolean on) {
+        audioManager.setSpeakerphoneOn(on);
+    }
+
+    @Override
+    public void startBluetoothSco() {
+        audioManager.startBluetoothSco();
+    }
+
+    @Override
+    public void stopBluetoothSco() {
+        audioManager.stopBluetoothSco();
+    }
+
+    @Override
+    public boolean isBluetoothScoOn() {
+        return audioManager.isBluetoothScoOn();
+    }
+
+    @Override
+    public void setBluetoothScoOn(boolean on) {
+        audioManager.setBluetoothScoOn(on);
+    }
+
+    @Override
+    public boolean isMicrophoneMute() {
+        return audioManager.isMicrophoneMute();
+    }
+
+    @Override
+    public void setMicrophoneMute(boolean mute) {
+        audioManager.setMicrophoneMute(mute);
+    }
+}
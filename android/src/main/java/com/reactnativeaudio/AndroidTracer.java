@@ -0,0 +1,35 @@
+package com.reactnativeaudio;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * {@link AudioTrace.Tracer} backed by {@link Trace}, for the sections to show
+ * up in systrace and Perfetto captures. The async slices need Android >= Q,
+ * they are dropped on older versions.
+ */
+class AndroidTracer implements AudioTrace.Tracer {
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+}
@@ -7,9 +7,6 @@ import android.util.Log;
 
 import androidx.annotation.RequiresApi;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * {@link AudioModule.AudioDeviceHandlerInterface} module implementing device handling for
  * Android versions >= O when ConnectionService is enabled.
@@ -31,61 +28,10 @@ public class AudioDeviceHandlerConnectionService implements
      */
     private AudioModule module;
 
-    /**
-     * Converts any of the "DEVICE_" constants into the corresponding
-     * {@link CallAudioState} "ROUTE_" number.
-     *
-     * @param audioDevice one of the "DEVICE_" constants.
-     * @return a route number {@link CallAudioState#ROUTE_EARPIECE} if
-     * no match is found.
-     */
-    private static int audioDeviceToRouteInt(String audioDevice) {
-        if (audioDevice == null) {
-            return CallAudioState.ROUTE_SPEAKER;
-        }
-        switch (audioDevice) {
-            case AudioModule.DEVICE_BLUETOOTH:
-                return CallAudioState.ROUTE_BLUETOOTH;
-            case AudioModule.DEVICE_EARPIECE:
-                return CallAudioState.ROUTE_EARPIECE;
-            case AudioModule.DEVICE_HEADPHONES:
-                return CallAudioState.ROUTE_WIRED_HEADSET;
-            case AudioModule.DEVICE_SPEAKER:
-                return CallAudioState.ROUTE_SPEAKER;
-            default:
-                Log.e(TAG, " Unsupported device name: " + audioDevice);
-                return CallAudioState.ROUTE_SPEAKER;
-        }
-    }
-
-    /**
-     * Populates given route mask into the "DEVICE_" list.
-     *
-     * @param supportedRouteMask an integer coming from
-     * {@link CallAudioState#getSupportedRouteMask()}.
-     * @return a list of device names.
-     */
-    private static Set<String> routesToDeviceNames(int supportedRouteMask) {
-        Set<String> devices = new HashSet<>();
-        if ((supportedRouteMask & CallAudioState.ROUTE_EARPIECE) == CallAudioState.ROUTE_EARPIECE) {
-            devices.add(AudioModule.DEVICE_EARPIECE);
-        }
-        if ((supportedRouteMask & CallAudioState.ROUTE_BLUETOOTH) == CallAudioState.ROUTE_BLUETOOTH) {
-            devices.add(AudioModule.DEVICE_BLUETOOTH);
-        }
-        if ((supportedRouteMask & CallAudioState.ROUTE_SPEAKER) == CallAudioState.ROUTE_SPEAKER) {
-            devices.add(AudioModule.DEVICE_SPEAKER);
-        }
-        if ((supportedRouteMask & CallAudioState.ROUTE_WIRED_HEADSET) == CallAudioState.ROUTE_WIRED_HEADSET) {
-            devices.add(AudioModule.DEVICE_HEADPHONES);
-        }
-        return devices;
-    }
-
     /**
      * Used to store the most recently reported audio devices.
      * Makes it easier to compare for a change, because the devices are stored
-     * as a mask in the {@link CallAudioState}. The mask is populated into
+     * as a mask in the {@link CallAudioState}. The mask is converted into
      * the {@code availableDevices} on each update.
      */
     private int supportedRouteMask = -1;
@@ -97,19 +43,22 @@ public class AudioDeviceHandlerConnectionService implements
     @Override
     public void onCallAudioStateChange(final CallAudioState state) {
         module.runInAudioThread(() -> {
+            AudioRouter router = module.getRouter();
             boolean audioRouteChanged
-                    = audioDeviceToRouteInt(module.getSelectedDevice()) != state.getRoute();
+                    = CallAudioRoutes.toRoute(router.getSelectedDevice()) != state.getRoute();
+            if (!audioRouteChanged) {
+                router.onAudioRouteConfirmed(router.getSelectedDevice());
+            }
             int newSupportedRoutes = state.getSupportedRouteMask();
             boolean audioDevicesChanged = supportedRouteMask != newSupportedRoutes;
             if (audioDevicesChanged) {
                 supportedRouteMask = newSupportedRoutes;
-                Set<String> devices = routesToDeviceNames(supportedRouteMask);
-                module.replaceDevices(devices);
+                router.replaceDevices(CallAudioRoutes.toDevices(supportedRouteMask));
             }
 
             if (audioRouteChanged || audioDevicesChanged) {
-                module.resetSelectedDevice();
-                module.updateAudioRoute();
+                router.resetSelectedDevice();
+                router.updateAudioRoute();
             }
         });
     }
@@ -125,6 +74,11 @@ public class AudioDeviceHandlerConnectionService implements
         }
     }
 
+    @Override
+    public void prewarm(AudioModule audioModule) {
+        // Nothing to create ahead of time, Telecom does the routing.
+    }
+
     @Override
     public void stop() {
         /*
@@ -137,8 +91,13 @@ public class AudioDeviceHandlerConnectionService implements
         */
     }
 
-    public void setAudioRoute(String audioDevice) {
-        // int newAudioRoute = audioDeviceToRouteInt(audioDevice);
+    @Override
+    public void restoreAudio() {
+        // Telecom restores the focus and the route of the resumed call.
+    }
+
+    public void setAudioRoute(int audioDevice) {
+        // int newAudioRoute = CallAudioRoutes.toRoute(audioDevice);
 
         // RNConnectionService.setAudioRoute(newAudioRoute);
     }
@@ -1,13 +1,17 @@
 package com.reactnativeaudio;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.media.AudioAttributes;
 import android.media.AudioDeviceInfo;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
 import android.os.Build;
+import android.util.Log;
 
-import java.util.HashSet;
-import java.util.Set;
+import androidx.annotation.RequiresApi;
 
 /**
  * {@link AudioModule.AudioDeviceHandlerInterface} module implementing device handling for
@@ -17,9 +21,11 @@ import java.util.Set;
  */
 public class AudioDeviceHandlerGeneric implements
         AudioModule.AudioDeviceHandlerInterface,
-        AudioManager.OnAudioFocusChangeListener {
+        AudioManager.OnAudioFocusChangeListener,
+        AudioFocusManager.Listener,
+        BluetoothScoController.Listener {
 
-    // private final static String TAG = AudioDeviceHandlerGeneric.class.getSimpleName();
+    private final static String TAG = AudioDeviceHandlerGeneric.class.getSimpleName();
 
     /**
      * Reference to the main {@code AudioModule}.
@@ -33,9 +39,43 @@ public class AudioDeviceHandlerGeneric implements
     private static final int TYPE_USB_HEADSET = 22;
 
     /**
-     * Indicator that we have lost audio focus.
+     * Request used for getting and abandoning the audio focus on Android >= O.
+     * Created once, by {@link #prewarm(AudioModule)} or on first use.
      */
-    private boolean audioFocusLost = false;
+    private AudioFocusRequest audioFocusRequest;
+
+    /**
+     * Issues the focus calls of {@link #audioFocusManager}, with the same
+     * request every time.
+     */
+    private final AudioFocusManager.FocusSystem focusSystem = new AudioFocusManager.FocusSystem() {
+        @Override
+        public int requestAudioFocus() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                return audioManager.requestAudioFocus(getAudioFocusRequest());
+            }
+            return audioManager.requestAudioFocus(
+                    AudioDeviceHandlerGeneric.this,
+                    AudioManager.STREAM_VOICE_CALL,
+                    AudioManager.AUDIOFOCUS_GAIN);
+        }
+
+        @Override
+        public void abandonAudioFocus() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                audioManager.abandonAudioFocusRequest(getAudioFocusRequest());
+            } else {
+                audioManager.abandonAudioFocus(AudioDeviceHandlerGeneric.this);
+            }
+        }
+    };
+
+    /**
+     * Tracks the audio focus, so that it's only requested when not held and
+     * our state is only restored when it was changed. Only accessed on the
+     * audio thread.
+     */
+    private final AudioFocusManager audioFocusManager = new AudioFocusManager(focusSystem, this);
 
     /**
      * {@link AudioManager} instance used to interact with the Android audio
@@ -43,6 +83,53 @@ public class AudioDeviceHandlerGeneric implements
      */
     private final AudioManager audioManager;
 
+    /**
+     * Cache of the {@link AudioManager} state we set, used to avoid redundant
+     * calls into the audio server.
+     */
+    private final AudioManagerShadow audioManagerShadow;
+
+    /**
+     * State machine bringing the Bluetooth SCO link up and down.
+     */
+    private BluetoothScoController bluetoothScoController;
+
+    /**
+     * Feeds the SCO audio state broadcasts to {@link #bluetoothScoController}.
+     * Registered with the audio thread's handler.
+     */
+    private final BroadcastReceiver scoStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final int scoState = intent.getIntExtra(
+                    AudioManager.EXTRA_SCO_AUDIO_STATE,
+                    AudioManager.SCO_AUDIO_STATE_ERROR);
+            final int previousScoState = intent.getIntExtra(
+                    AudioManager.EXTRA_SCO_AUDIO_PREVIOUS_STATE,
+                    AudioManager.SCO_AUDIO_STATE_ERROR);
+            bluetoothScoController.onScoAudioStateUpdated(scoState, previousScoState);
+        }
+    };
+
+    /**
+     * Number of device change callbacks received since the last rescan was
+     * scheduled. A non-zero value means a rescan is pending, so further
+     * callbacks are merged into it. Only accessed on the audio thread.
+     */
+    private int pendingDeviceChanges = 0;
+
+    /**
+     * Time at which the first device change callback of the pending rescan
+     * was received, see {@link AudioMetrics#now()}.
+     */
+    private long deviceChangeTime;
+
+    /**
+     * Cookie of the trace slice of the pending rescan, see
+     * {@link AudioTrace#beginQueued(int)}.
+     */
+    private int deviceChangeCookie;
+
     /**
      * {@link Runnable} for running audio device detection in the audio thread.
      * This is only used on Android >= M.
@@ -50,88 +137,191 @@ public class AudioDeviceHandlerGeneric implements
     private final Runnable onAudioDeviceChangeRunner = new Runnable() {
         @Override
         public void run() {
-            Set<String> devices = new HashSet<>();
-            AudioDeviceInfo[] deviceInfos = audioManager.getDevices(AudioManager.GET_DEVICES_ALL);
-
-            for (AudioDeviceInfo info: deviceInfos) {
-                switch (info.getType()) {
-                    case AudioDeviceInfo.TYPE_BLUETOOTH_SCO:
-                        devices.add(AudioModule.DEVICE_BLUETOOTH);
-                        break;
-                    case AudioDeviceInfo.TYPE_BUILTIN_EARPIECE:
-                        devices.add(AudioModule.DEVICE_EARPIECE);
-                        break;
-                    case AudioDeviceInfo.TYPE_BUILTIN_SPEAKER:
-                        devices.add(AudioModule.DEVICE_SPEAKER);
-                        break;
-                    case AudioDeviceInfo.TYPE_WIRED_HEADPHONES:
-                    case AudioDeviceInfo.TYPE_WIRED_HEADSET:
-                    case TYPE_USB_HEADSET:
-                        devices.add(AudioModule.DEVICE_HEADPHONES);
-                        break;
-                }
+            long startTime = deviceChangeTime;
+            int callbacks = pendingDeviceChanges;
+            pendingDeviceChanges = 0;
+            AudioTrace.endQueued(AudioMetrics.OP_DEVICE_CHANGE, deviceChangeCookie);
+            if (callbacks > 1) {
+                Log.d(TAG, "Coalesced " + callbacks + " device changes into one rescan");
             }
 
-            module.replaceDevices(devices);
+            AudioRouter router = module.getRouter();
+
+            router.beginOperation(AudioMetrics.OP_DEVICE_CHANGE, startTime);
+            try {
+                router.onDeviceChangeRescan(callbacks);
+
+                AudioTrace.Tracer tracer = AudioTrace.begin(AudioTrace.SECTION_RESCAN);
+                boolean changed;
+                try {
+                    if (inventory.isOutOfSync()) {
+                        resyncInventory();
+                    }
+                    changed = router.replaceDevices(inventory.getDevices());
+                } finally {
+                    AudioTrace.end(tracer);
+                }
 
-            module.updateAudioRoute();
+                if (changed) {
+                    router.updateAudioRoute();
+                }
+            } finally {
+                router.endOperation();
+            }
         }
     };
 
+    /**
+     * Registered with the audio thread's handler, so the deltas are applied
+     * right where they are delivered.
+     */
     private final android.media.AudioDeviceCallback audioDeviceCallback =
             new android.media.AudioDeviceCallback() {
                 @Override
                 public void onAudioDevicesAdded(
                         AudioDeviceInfo[] addedDevices) {
+                    for (AudioDeviceInfo info : addedDevices) {
+                        if (info.isSink()) {
+                            inventory.add(info.getId(), deviceForType(info.getType()));
+                        }
+                    }
                     onAudioDeviceChange();
                 }
 
                 @Override
                 public void onAudioDevicesRemoved(
                         AudioDeviceInfo[] removedDevices) {
+                    for (AudioDeviceInfo info : removedDevices) {
+                        if (info.isSink()) {
+                            inventory.remove(info.getId());
+                        }
+                    }
                     onAudioDeviceChange();
                 }
             };
 
+    /**
+     * Output devices currently known, updated incrementally from the deltas
+     * reported by {@link #audioDeviceCallback}. Only accessed on the audio
+     * thread.
+     */
+    private final AudioDeviceInventory inventory = new AudioDeviceInventory();
+
+    /**
+     * Scratch buffers used when doing a full rescan of the output devices.
+     */
+    private int[] scanIds = new int[0];
+    private int[] scanDevices = new int[0];
+
     public AudioDeviceHandlerGeneric(AudioManager audioManager) {
         this.audioManager = audioManager;
+        this.audioManagerShadow = new AudioManagerShadow(new AndroidAudioSystem(audioManager));
     }
 
     /**
-     * Helper method to trigger an audio route update when devices change. It
-     * makes sure the operation is performed on the audio thread.
+     * Maps an {@link AudioDeviceInfo} type into one of the
+     * {@link AudioDevices} types.
+     *
+     * @param type the {@link AudioDeviceInfo} type.
+     * @return the device or {@link AudioDevices#NONE} if it's not one we
+     * route to.
+     */
+    private static int deviceForType(int type) {
+        switch (type) {
+            case AudioDeviceInfo.TYPE_BLUETOOTH_SCO:
+                return AudioDevices.BLUETOOTH;
+            case AudioDeviceInfo.TYPE_BUILTIN_EARPIECE:
+                return AudioDevices.EARPIECE;
+            case AudioDeviceInfo.TYPE_BUILTIN_SPEAKER:
+                return AudioDevices.SPEAKER;
+            case AudioDeviceInfo.TYPE_WIRED_HEADPHONES:
+            case AudioDeviceInfo.TYPE_WIRED_HEADSET:
+            case TYPE_USB_HEADSET:
+                return AudioDevices.HEADPHONES;
+            default:
+                return AudioDevices.NONE;
+        }
+    }
+
+    /**
+     * Rebuilds the device inventory from a full scan of the output devices.
+     * Only done at start or when the inventory drifted from the system.
+     */
+    private void resyncInventory() {
+        AudioDeviceInfo[] deviceInfos = audioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS);
+
+        if (scanIds.length < deviceInfos.length) {
+            scanIds = new int[deviceInfos.length];
+            scanDevices = new int[deviceInfos.length];
+        }
+        for (int i = 0; i < deviceInfos.length; i++) {
+            scanIds[i] = deviceInfos[i].getId();
+            scanDevices[i] = deviceForType(deviceInfos[i].getType());
+        }
+
+        Log.d(TAG, "Resynced device inventory, " + deviceInfos.length + " outputs");
+        inventory.resync(scanIds, scanDevices, deviceInfos.length);
+    }
+
+    /**
+     * Helper method to trigger an audio route update when devices change. Must
+     * be called on the audio thread. Changes arriving within the module's
+     * coalesce window are merged into a single rescan.
      */
     private void onAudioDeviceChange() {
-        module.runInAudioThread(onAudioDeviceChangeRunner);
+        if (pendingDeviceChanges++ == 0) {
+            deviceChangeTime = AudioMetrics.now();
+            deviceChangeCookie = AudioTrace.beginQueued(AudioMetrics.OP_DEVICE_CHANGE);
+            module.runInAudioThread(
+                    onAudioDeviceChangeRunner,
+                    module.getDeviceChangeCoalesceWindow());
+        }
     }
 
     /**
      * {@link AudioManager.OnAudioFocusChangeListener} interface method. Called
-     * when the audio focus of the system is updated.
+     * when the audio focus of the system is updated. Delivered on the audio
+     * thread on Android >= O, on the main thread otherwise.
      *
      * @param focusChange - The type of focus change.
      */
     @Override
     public void onAudioFocusChange(final int focusChange) {
-        module.runInAudioThread(() -> {
-            switch (focusChange) {
-                case AudioManager.AUDIOFOCUS_GAIN: {
-                    // Some other application potentially stole our audio focus
-                    // temporarily. Restore our mode.
-                    if (audioFocusLost) {
-                        module.resetAudioRoute();
-                    }
-                    audioFocusLost = false;
-                    break;
-                }
-                case AudioManager.AUDIOFOCUS_LOSS:
-                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
-                case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT_CAN_DUCK: {
-                    audioFocusLost = true;
-                    break;
-                }
-            }
-        });
+        if (module.isInAudioThread()) {
+            handleAudioFocusChange(focusChange);
+        } else {
+            module.runInAudioThread(() -> handleAudioFocusChange(focusChange));
+        }
+    }
+
+    private void handleAudioFocusChange(int focusChange) {
+        int previousState = audioFocusManager.getState();
+        audioFocusManager.onAudioFocusChange(focusChange);
+        if (audioFocusManager.getState() != previousState) {
+            Log.d(TAG, "Audio focus " + AudioFocusManager.getStateName(previousState)
+                    + " -> " + AudioFocusManager.getStateName(audioFocusManager.getState()));
+        }
+    }
+
+    @Override
+    public void onAudioFocusRegained(int previousState) {
+        // Some other application held the audio focus and potentially changed
+        // the audio state. Read it back and restore what changed.
+        restoreChangedState(audioManagerShadow.resync());
+    }
+
+    /**
+     * Restores only what another application changed: the route if it was
+     * touched, which sets the mode too, otherwise the mode alone.
+     *
+     * @param changed the changed state, see {@link AudioManagerShadow#resync()}.
+     */
+    private void restoreChangedState(int changed) {
+        if ((changed & AudioManagerShadow.CHANGED_ROUTE) != 0) {
+            module.getRouter().resetAudioRoute();
+        } else if (changed != 0) {
+            setCallMode();
+        }
     }
 
     /**
@@ -141,57 +331,151 @@ public class AudioDeviceHandlerGeneric implements
      */
     private void setBluetoothAudioRoute(boolean enabled) {
         if (enabled) {
-            audioManager.startBluetoothSco();
-            audioManager.setBluetoothScoOn(true);
+            bluetoothScoController.connect();
         } else {
-            audioManager.setBluetoothScoOn(false);
-            audioManager.stopBluetoothSco();
+            bluetoothScoController.disconnect();
         }
     }
 
+    @Override
+    public void onBluetoothScoConnected(long latency, int attempts) {
+        Log.i(TAG, "SCO connected in " + latency / 1_000_000 + "ms, attempts: " + attempts);
+        module.getRouter().getMetrics().recordLatency(
+                AudioMetrics.OP_BLUETOOTH_SCO, AudioMetrics.STAGE_CONFIRMED, latency);
+        module.getRouter().onAudioRouteConfirmed(AudioDevices.BLUETOOTH);
+    }
+
+    @Override
+    public void onBluetoothScoFailed() {
+        Log.e(TAG, "SCO connection failed or lost");
+        module.getRouter().getMetrics().increment(AudioMetrics.COUNTER_BLUETOOTH_SCO_FAILED, 1);
+
+        // Fall back to the next best route.
+        module.getRouter().markDeviceUnusable(AudioDevices.BLUETOOTH);
+    }
+
+    @Override
+    public void onBluetoothScoAttemptFailed(int attempt, String reason) {
+        Log.w(TAG, "SCO connection attempt " + attempt + " " + reason);
+    }
+
     @Override
     public void start(AudioModule AudioModule) {
         module = AudioModule;
 
+        bluetoothScoController = new BluetoothScoController(module::runInAudioThread, audioManagerShadow, this);
+        module.getReactContext().registerReceiver(
+                scoStateReceiver,
+                new IntentFilter(AudioManager.ACTION_SCO_AUDIO_STATE_UPDATED),
+                null,
+                module.getAudioHandler());
+
         // Setup runtime device change detection.
-        audioManager.registerAudioDeviceCallback(audioDeviceCallback, null);
+        audioManager.registerAudioDeviceCallback(audioDeviceCallback, module.getAudioHandler());
 
-        // Do an initial detection.
-        onAudioDeviceChange();
+        // Do an initial detection right away, the handler being started
+        // lazily right before the devices are needed. The inventory starts
+        // out of sync so it will be a full scan.
+        deviceChangeTime = AudioMetrics.now();
+        pendingDeviceChanges++;
+        deviceChangeCookie = AudioTrace.beginQueued(AudioMetrics.OP_DEVICE_CHANGE);
+        onAudioDeviceChangeRunner.run();
+    }
+
+    @Override
+    public void prewarm(AudioModule AudioModule) {
+        module = AudioModule;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            getAudioFocusRequest();
+        }
     }
 
     @Override
     public void stop() {
         audioManager.unregisterAudioDeviceCallback(audioDeviceCallback);
+        module.getReactContext().unregisterReceiver(scoStateReceiver);
+        module.getAudioHandler().removeCallbacks(onAudioDeviceChangeRunner);
+        if (pendingDeviceChanges > 0) {
+            AudioTrace.endQueued(AudioMetrics.OP_DEVICE_CHANGE, deviceChangeCookie);
+        }
+        pendingDeviceChanges = 0;
+        bluetoothScoController.stop();
     }
 
     @Override
-    public void setAudioRoute(String device) {
+    public void setAudioRoute(int device) {
         // Turn speaker on / off
-        audioManager.setSpeakerphoneOn(device.equals(AudioModule.DEVICE_SPEAKER));
+        audioManagerShadow.setSpeakerphoneOn(device == AudioDevices.SPEAKER);
 
         // Turn bluetooth on / off
-        setBluetoothAudioRoute(device.equals(AudioModule.DEVICE_BLUETOOTH));
+        setBluetoothAudioRoute(device == AudioDevices.BLUETOOTH);
+
+        // The Bluetooth route is confirmed once the SCO link is up.
+        if (device != AudioDevices.BLUETOOTH
+                || bluetoothScoController.getState() == BluetoothScoController.STATE_CONNECTED) {
+            module.getRouter().onAudioRouteConfirmed(device);
+        }
     }
 
     @Override
     public boolean setMode(int mode) {
         if (mode == AudioModule.DEFAULT) {
-            audioFocusLost = false;
-            audioManager.setMode(AudioManager.MODE_NORMAL);
-            audioManager.abandonAudioFocus(this);
-            audioManager.setSpeakerphoneOn(false);
+            audioManagerShadow.setMode(AudioSystem.MODE_NORMAL);
+            audioFocusManager.abandon();
+            audioManagerShadow.setSpeakerphoneOn(false);
             setBluetoothAudioRoute(false);
 
             return true;
         }
 
-        audioManager.setMode(AudioManager.MODE_IN_COMMUNICATION);
-        audioManager.setMicrophoneMute(false);
+        // Without the focus, e.g. since the last call ended, any other
+        // application may have changed the audio state, whether or not it
+        // took the focus from us. Read it back, so that none of ours is
+        // skipped as already set, and have the route set again if it was
+        // changed. Done on regain instead if the focus is due to come back.
+        if (!audioFocusManager.isRequested()) {
+            audioFocusManager.takeStateChanged();
+            if ((audioManagerShadow.resync() & AudioManagerShadow.CHANGED_ROUTE) != 0) {
+                module.getRouter().invalidateAudioRoute();
+            }
+        }
+
+        setCallMode();
 
-        int gotFocus;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            gotFocus = audioManager.requestAudioFocus(new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
+        // A delayed grant lets the call go ahead, the state is restored once
+        // the focus is actually gained.
+        return audioFocusManager.request();
+    }
+
+    @Override
+    public void restoreAudio() {
+        // The call which held ours may have taken the focus for good. If it's
+        // due to come back instead, the state is restored once it does.
+        if (audioFocusManager.isRequested()) {
+            return;
+        }
+
+        // The focus isn't held, so the state may have changed whatever the
+        // focus manager saw.
+        audioFocusManager.takeStateChanged();
+        int changed = audioManagerShadow.resync();
+
+        if (!audioFocusManager.request()) {
+            Log.w(TAG, "Failed to regain the audio focus");
+        }
+        restoreChangedState(changed);
+    }
+
+    private void setCallMode() {
+        audioManagerShadow.setMode(AudioSystem.MODE_IN_COMMUNICATION);
+        audioManagerShadow.setMicrophoneMute(false);
+    }
+
+    @RequiresApi(Build.VERSION_CODES.O)
+    private AudioFocusRequest getAudioFocusRequest() {
+        if (audioFocusRequest == null) {
+            audioFocusRequest = new AudioFocusRequest.Builder(AudioManager.AUDIOFOCUS_GAIN)
                     .setAudioAttributes(
                             new AudioAttributes.Builder()
                                     .setUsage(AudioAttributes.USAGE_VOICE_COMMUNICATION)
@@ -199,13 +483,9 @@ public class AudioDeviceHandlerGeneric implements
                                     .build()
                     )
                     .setAcceptsDelayedFocusGain(true)
-                    .setOnAudioFocusChangeListener(this)
-                    .build()
-            );
-        } else {
-            gotFocus = audioManager.requestAudioFocus(this, AudioManager.STREAM_VOICE_CALL, AudioManager.AUDIOFOCUS_GAIN);
+                    .setOnAudioFocusChangeListener(this, module.getAudioHandler())
+                    .build();
         }
-
-      return gotFocus != AudioManager.AUDIOFOCUS_REQUEST_FAILED;
+        return audioFocusRequest;
     }
 }
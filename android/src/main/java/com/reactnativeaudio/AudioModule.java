@@ -5,27 +5,28 @@ import android.app.Activity;
 import android.content.Context;
 import android.media.AudioManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 @ReactModule(name = AudioModule.NAME)
-public class AudioModule extends ReactContextBaseJavaModule {
+public class AudioModule extends AudioSpec {
   public static final String NAME = "Audio";
 
   /**
@@ -37,9 +38,9 @@ public class AudioModule extends ReactContextBaseJavaModule {
    * - VIDEO_CALL: Used for video calls. It will use the speaker by default,
    *   unless a wired or Bluetooth headset is connected.
    */
-  static final int DEFAULT    = 0;
-  static final int AUDIO_CALL = 1;
-  static final int VIDEO_CALL = 2;
+  static final int DEFAULT    = AudioRouter.DEFAULT;
+  static final int AUDIO_CALL = AudioRouter.AUDIO_CALL;
+  static final int VIDEO_CALL = AudioRouter.VIDEO_CALL;
 
   /**
    * Whether or not the ConnectionService is used for selecting audio devices.
@@ -58,49 +59,114 @@ public class AudioModule extends ReactContextBaseJavaModule {
    */
   private final AudioManager audioManager;
 
+  /**
+   * Handler doing the device detection and routing, {@code null} while the
+   * detection is stopped. Only accessed on the audio thread.
+   */
   private AudioDeviceHandlerInterface audioDeviceHandler;
 
   /**
-   * {@link ExecutorService} for running all audio operations on a dedicated
-   * thread.
+   * Handler created ahead of time by a prewarm, started by the next
+   * {@link #startDeviceDetection()}. Only accessed on the audio thread.
    */
-  private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private AudioDeviceHandlerInterface preparedAudioDeviceHandler;
 
   /**
-   * Audio mode currently in use.
+   * Whether {@link #prewarm(Promise)} asked for the device detection to keep
+   * running until the next call ends. Only accessed on the audio thread.
    */
-  private int mode = -1;
+  private boolean keepDeviceDetection = false;
 
-  private final ReactApplicationContext reactContext;
+  /**
+   * Whether a call mode was set already, the first one being timed as
+   * {@link AudioMetrics#OP_FIRST_CALL}. Only accessed on the audio thread.
+   */
+  private boolean firstCallStarted = false;
 
   /**
-   * Audio device types.
+   * Number of JS listeners subscribed to the module's events. Only accessed
+   * on the audio thread.
    */
-  static final String DEVICE_BLUETOOTH  = "BLUETOOTH";
-  static final String DEVICE_EARPIECE   = "EARPIECE";
-  static final String DEVICE_HEADPHONES = "HEADPHONES";
-  static final String DEVICE_SPEAKER    = "SPEAKER";
+  private int listenerCount = 0;
 
   /**
-   * Device change event.
+   * Dedicated thread running all audio operations. It runs at audio priority
+   * so that routing doesn't compete with UI and JS work, and the system
+   * callbacks are registered with {@link #audioHandler} so that they are
+   * delivered on it directly, without going through the main thread.
    */
-  public static final String DEVICE_CHANGE_EVENT = "audio-mode#devices-update";
+  private static final HandlerThread audioThread
+    = new HandlerThread("AudioModule", Process.THREAD_PRIORITY_AUDIO);
+
+  private static final Handler audioHandler;
+
+  static {
+    audioThread.start();
+    audioHandler = new Handler(audioThread.getLooper());
+  }
+
+  /**
+   * Watchdog reporting the audio thread tasks which stall, {@code null}
+   * unless enabled with {@link #setAudioThreadWatchdog(double)}.
+   */
+  private volatile AudioThreadWatchdog audioThreadWatchdog;
+
+  /**
+   * Default time window, in milliseconds, during which consecutive device
+   * change callbacks are merged into a single device rescan.
+   */
+  static final int DEFAULT_DEVICE_CHANGE_COALESCE_WINDOW = 50;
+
+  /**
+   * Time window, in milliseconds, used for coalescing device change callbacks.
+   */
+  private volatile int deviceChangeCoalesceWindow = DEFAULT_DEVICE_CHANGE_COALESCE_WINDOW;
+
+  /**
+   * Whether {@link #DEVICE_CHANGE_EVENT} carries the compact form of the
+   * device list, see {@link #createCompactDeviceList(int, int, long)}.
+   */
+  private volatile boolean compactDeviceUpdates = false;
 
   /**
-   * List of currently available audio devices.
+   * Routing state machine, deciding which device gets used. Only accessed on
+   * the audio thread.
    */
-  private Set<String> availableDevices = new HashSet<>();
+  private final AudioRouter router = new AudioRouter(new AudioRouter.Backend() {
+    @Override
+    public boolean setMode(int mode) {
+      if (audioDeviceHandler == null) {
+        // Device detection is stopped, which only happens in the default
+        // mode, so there's nothing to undo.
+        return mode == DEFAULT;
+      }
+      return audioDeviceHandler.setMode(mode);
+    }
+
+    @Override
+    public void setAudioRoute(int device) {
+      if (audioDeviceHandler != null) {
+        audioDeviceHandler.setAudioRoute(device);
+      }
+    }
+
+    @Override
+    public void notifyDevicesChanged(int devices, int selectedDevice) {
+      AudioModule.this.notifyDevicesChanged(devices, selectedDevice);
+    }
+  });
+
+  private final ReactApplicationContext reactContext;
 
   /**
-   * Currently selected device.
+   * Device change event.
    */
-  private String selectedDevice;
+  public static final String DEVICE_CHANGE_EVENT = "audio-mode#devices-update";
 
   /**
-   * User selected device. When null the default is used depending on the
-   * mode.
+   * Audio thread stall event, see {@link #setAudioThreadWatchdog(double)}.
    */
-  private String userSelectedDevice;
+  public static final String AUDIO_THREAD_STALL_EVENT = "audio#thread-stall";
 
   public AudioModule(ReactApplicationContext reactContext) {
     super(reactContext);
@@ -116,11 +182,33 @@ public class AudioModule extends ReactContextBaseJavaModule {
     return NAME;
   }
 
+  /**
+   * Prewarms the call resources once the main thread goes idle, so that it
+   * doesn't compete with the app's startup. See {@link #prewarmResources()}.
+   */
+  @Override
+  public void initialize() {
+    super.initialize();
+
+    final long startTime = AudioMetrics.now();
+    Looper.getMainLooper().getQueue().addIdleHandler(() -> {
+      final int queuedCookie = AudioTrace.beginQueued(AudioMetrics.OP_PREWARM);
+      runInAudioThread(() -> {
+        AudioTrace.endQueued(AudioMetrics.OP_PREWARM, queuedCookie);
+        router.getMetrics().record(AudioMetrics.OP_PREWARM, AudioMetrics.STAGE_QUEUE, startTime);
+        prewarmResources();
+        router.getMetrics().record(AudioMetrics.OP_PREWARM, AudioMetrics.STAGE_HANDLER, startTime);
+      });
+      return false;
+    });
+  }
+
 
   // Example method
   // See https://reactnative.dev/docs/native-modules-android
+  @Override
   @ReactMethod
-  public void multiply(int a, int b, Promise promise) {
+  public void multiply(double a, double b, Promise promise) {
     promise.resolve(a * b);
   }
 
@@ -133,13 +221,23 @@ public class AudioModule extends ReactContextBaseJavaModule {
    * values.
    */
   @Override
-  public Map<String, Object> getConstants() {
+  protected Map<String, Object> getTypedExportedConstants() {
     Map<String, Object> constants = new HashMap<>();
 
     constants.put("DEVICE_CHANGE_EVENT", DEVICE_CHANGE_EVENT);
     constants.put("AUDIO_CALL", AUDIO_CALL);
     constants.put("DEFAULT", DEFAULT);
     constants.put("VIDEO_CALL", VIDEO_CALL);
+    constants.put("SUPERSEDED", SUPERSEDED);
+    constants.put("EVENT_BATCH_EVENT", BatchedEventEmitter.BATCH_EVENT);
+    constants.put("AUDIO_THREAD_STALL_EVENT", AUDIO_THREAD_STALL_EVENT);
+
+    Map<String, Object> devices = new HashMap<>();
+    for (int i = 0; i < AudioDevices.COUNT; i++) {
+      int device = AudioDevices.valueAt(i);
+      devices.put(AudioDevices.getName(device), device);
+    }
+    constants.put("DEVICES", devices);
 
     return constants;
   }
@@ -149,29 +247,89 @@ public class AudioModule extends ReactContextBaseJavaModule {
    * @param runnable ui thread
    */
   void runInAudioThread(Runnable runnable) {
-    executor.execute(runnable);
+    audioHandler.post(runnable);
+  }
+
+  /**
+   * Helper function to run operations on the dedicated audio thread after the
+   * given delay.
+   *
+   * @param runnable operation to be run.
+   * @param delayMs delay in milliseconds.
+   */
+  void runInAudioThread(Runnable runnable, long delayMs) {
+    audioHandler.postDelayed(runnable, delayMs);
+  }
+
+  /**
+   * @return the {@link Handler} of the audio thread, for registering system
+   * callbacks.
+   */
+  Handler getAudioHandler() {
+    return audioHandler;
+  }
+
+  /**
+   * @return whether the caller is running on the audio thread.
+   */
+  boolean isInAudioThread() {
+    return Looper.myLooper() == audioThread.getLooper();
   }
 
   /**
    * Notifies JS land that the devices list has changed.
+   *
+   * @param devices the devices to be listed, see {@link AudioDevices}.
+   * @param selected the device in use.
    */
-  private void notifyDevicesChanged() {
-    runInAudioThread(() -> {
-      WritableArray data = Arguments.createArray();
-      final boolean hasHeadphones = availableDevices.contains(DEVICE_HEADPHONES);
-      for (String device : availableDevices) {
-        if (hasHeadphones && device.equals(DEVICE_EARPIECE)) {
-          // Skip earpiece when headphones are plugged in.
-          continue;
-        }
+  private void notifyDevicesChanged(int devices, int selected) {
+    WritableArray data = compactDeviceUpdates
+      ? createCompactDeviceList(devices, selected, router.getState().getVersion())
+      : createDeviceList(devices, selected);
+
+    ReactInstanceManagerHolder.emitEvent(reactContext, DEVICE_CHANGE_EVENT, data);
+  }
+
+  /**
+   * Creates the device list sent to JS.
+   *
+   * @param devices the devices to be listed, see {@link AudioDevices}.
+   * @param selected the device in use.
+   * @return the list, holding the {@code type} and whether it's
+   * {@code selected} for each device.
+   */
+  private static WritableArray createDeviceList(int devices, int selected) {
+    WritableArray data = Arguments.createArray();
+    for (int i = 0; i < AudioDevices.COUNT; i++) {
+      int device = AudioDevices.valueAt(i);
+      if (AudioDevices.contains(devices, device)) {
         WritableMap deviceInfo = Arguments.createMap();
-        deviceInfo.putString("type", device);
-        deviceInfo.putBoolean("selected", device.equals(selectedDevice));
+        deviceInfo.putString("type", AudioDevices.getName(device));
+        deviceInfo.putBoolean("selected", device == selected);
         data.pushMap(deviceInfo);
       }
+    }
+    return data;
+  }
 
-      ReactInstanceManagerHolder.emitEvent(reactContext, DEVICE_CHANGE_EVENT, data);
-    });
+  /**
+   * Creates the compact form of the device list sent to JS, which is
+   * serialized without any string or nested object.
+   *
+   * @param devices the devices to be listed, see {@link AudioDevices}.
+   * @param selected the device in use.
+   * @param version the version of the state the list is part of, see
+   * {@link AudioState#getVersion()}.
+   * @return the list: the devices as a mask of the {@code DEVICES}
+   * constants, the bit index of the device in use or {@code -1} if none is,
+   * and the version.
+   */
+  private static WritableArray createCompactDeviceList(int devices, int selected, long version) {
+    WritableArray data = Arguments.createArray();
+    data.pushInt(devices);
+    data.pushInt(selected == AudioDevices.NONE ? -1 : AudioDevices.indexOf(selected));
+    data.pushDouble(version);
+    return data;
   }
 
   public ReactApplicationContext getReactContext() {
@@ -179,13 +337,57 @@ public class AudioModule extends ReactContextBaseJavaModule {
   }
 
   /**
-   * Initializes the audio device handler module. This function is called *after* all Catalyst
-   * modules have been created, and that's why we use it, because {@link AudioDeviceHandlerConnectionService}
-   * needs access to another Catalyst module, so doing this in the constructor would be too early.
+   * Starts the device detection, if not running already. It's started lazily,
+   * when JS subscribes to {@link #DEVICE_CHANGE_EVENT} or enters a call mode,
+   * so that apps not making calls don't pay for it. That's always after all
+   * Catalyst modules have been created, which
+   * {@link AudioDeviceHandlerConnectionService} needs since it accesses
+   * another one. Must be called on the audio thread.
    */
-  @Override
-  public void initialize() {
-    runInAudioThread(this::setAudioDeviceHandler);
+  private void startDeviceDetection() {
+    if (audioDeviceHandler == null) {
+      setAudioDeviceHandler();
+    }
+  }
+
+  /**
+   * Creates the device handler and the objects it needs for a call, without
+   * starting the device detection, unless already done. Must be called on
+   * the audio thread.
+   */
+  private void prewarmResources() {
+    if (audioDeviceHandler == null && preparedAudioDeviceHandler == null) {
+      AudioTrace.Tracer tracer = AudioTrace.beginOperation(AudioMetrics.OP_PREWARM);
+      try {
+        preparedAudioDeviceHandler = createAudioDeviceHandler();
+        preparedAudioDeviceHandler.prewarm(this);
+      } finally {
+        AudioTrace.end(tracer);
+      }
+    }
+  }
+
+  /**
+   * Stops the device detection once nobody needs it anymore: no JS listeners
+   * remain and the mode is {@link #DEFAULT}. Must be called on the audio
+   * thread.
+   */
+  private void stopDeviceDetectionIfIdle() {
+    int mode = router.getMode();
+
+    if (audioDeviceHandler == null
+        || listenerCount > 0
+        || keepDeviceDetection
+        || (mode != DEFAULT && mode != AudioRouter.MODE_UNSET)) {
+      return;
+    }
+
+    audioDeviceHandler.stop();
+    audioDeviceHandler = null;
+
+    // The devices are no longer tracked, they'll be published again once
+    // they are.
+    router.clearDevices();
   }
 
   private void setAudioDeviceHandler() {
@@ -194,208 +396,735 @@ public class AudioModule extends ReactContextBaseJavaModule {
       audioDeviceHandler.stop();
     }
 
+    if (preparedAudioDeviceHandler != null) {
+      audioDeviceHandler = preparedAudioDeviceHandler;
+      preparedAudioDeviceHandler = null;
+    } else {
+      audioDeviceHandler = createAudioDeviceHandler();
+    }
+
+    audioDeviceHandler.start(this);
+
+  }
+
+  private AudioDeviceHandlerInterface createAudioDeviceHandler() {
         /*
         if (useConnectionService()) {
-            audioDeviceHandler = new AudioDeviceHandlerConnectionService(audioManager);
+            return new AudioDeviceHandlerConnectionService(audioManager);
         } else {
-            audioDeviceHandler = new AudioDeviceHandlerGeneric(audioManager);
+            return new AudioDeviceHandlerGeneric(audioManager);
         }
         */
-    audioDeviceHandler = new AudioDeviceHandlerGeneric(audioManager);
+    return new AudioDeviceHandlerGeneric(audioManager);
+  }
 
-    audioDeviceHandler.start(this);
+  /**
+   * Error code of the promises of commands superseded by a later one of the
+   * same kind before running.
+   */
+  static final String SUPERSEDED = "SUPERSEDED";
+
+  /**
+   * Kinds of the commands queued for the audio thread, see
+   * {@link CommandQueue}.
+   */
+  private static final int COMMAND_SET_MODE         = 0;
+  private static final int COMMAND_SET_AUDIO_DEVICE = 1;
+  private static final int COMMAND_KINDS            = 2;
+
+  /**
+   * A command queued for the audio thread.
+   */
+  private abstract static class QueuedCommand extends CommandQueue.Command {
+    /**
+     * The operation the command is queued as, see {@link AudioMetrics}.
+     */
+    final int queuedOp;
+
+    /**
+     * Cookie of the slice of the command waiting for the audio thread, see
+     * {@link AudioTrace#beginQueued(int)}.
+     */
+    int queuedCookie = AudioTrace.NO_COOKIE;
+
+    QueuedCommand(int kind, int queuedOp) {
+      super(kind);
+      this.queuedOp = queuedOp;
+    }
+  }
+
+  /**
+   * A pending {@link #setMode(int, Promise)} call, or mode set natively by
+   * {@link #setCallMode(int, int, long)}, which has no {@link Promise}.
+   */
+  private static final class SetModeCommand extends QueuedCommand {
+    final int mode;
+    @Nullable final Promise promise;
+    final int op;
+    final long startTime;
+
+    SetModeCommand(int mode, @Nullable Promise promise, int op, long startTime) {
+      super(COMMAND_SET_MODE, AudioMetrics.OP_SET_MODE);
+      this.mode = mode;
+      this.promise = promise;
+      this.op = op;
+      this.startTime = startTime;
+    }
+  }
 
+  /**
+   * A pending {@link #setAudioDevice(String)} call.
+   */
+  private static final class SetAudioDeviceCommand extends QueuedCommand {
+    final int device;
+    final long startTime;
+
+    SetAudioDeviceCommand(int device, long startTime) {
+      super(COMMAND_SET_AUDIO_DEVICE, AudioMetrics.OP_SET_AUDIO_DEVICE);
+      this.device = device;
+      this.startTime = startTime;
+    }
   }
 
   /**
-   * Sets the user selected audio device as the active audio device.
+   * Pending {@link #setMode} and {@link #setAudioDevice} calls, in the order
+   * they were made. A call made right after one of the same kind which is
+   * still pending supersedes it, so that only the latest intent gets carried
+   * out.
+   */
+  private final CommandQueue<QueuedCommand> pendingCommands
+    = new CommandQueue<>(COMMAND_KINDS);
+
+  /**
+   * Carries out the oldest pending command. Posted once for every command
+   * queued.
+   */
+  private final Runnable commandRunner = new Runnable() {
+    @Override
+    public void run() {
+      QueuedCommand command = pendingCommands.take();
+
+      AudioTrace.endQueued(command.queuedOp, command.queuedCookie);
+      if (command.kind == COMMAND_SET_MODE) {
+        runSetMode((SetModeCommand) command);
+      } else {
+        runSetAudioDevice((SetAudioDeviceCommand) command);
+      }
+    }
+  };
+
+  /**
+   * Queues a command, or supersedes the pending one it follows.
    *
-   * @param device the desired device which will become active.
+   * @param command the command.
+   * @return the superseded command, or {@code null} if none was.
    */
-  @ReactMethod
-  public void setAudioDevice(final String device) {
-    runInAudioThread(() -> {
-      if (!availableDevices.contains(device)) {
-        userSelectedDevice = null;
-        return;
+  @Nullable
+  private QueuedCommand queueCommand(QueuedCommand command) {
+    // Begun first, the command may run as soon as it's offered.
+    command.queuedCookie = AudioTrace.beginQueued(command.queuedOp);
+
+    QueuedCommand superseded = pendingCommands.offer(command);
+
+    if (superseded == null) {
+      runInAudioThread(commandRunner);
+    } else {
+      AudioTrace.endQueued(superseded.queuedOp, superseded.queuedCookie);
+    }
+    return superseded;
+  }
+
+  private void runSetMode(SetModeCommand command) {
+    boolean success;
+
+    router.getMetrics().increment(
+      AudioMetrics.COUNTER_SUPERSEDED_SET_MODE, pendingCommands.takeSuperseded(COMMAND_SET_MODE));
+
+    int previousMode = router.getMode();
+    int op = command.op;
+
+    if (command.mode != DEFAULT) {
+      // The first call pays for whatever wasn't prewarmed, it's timed
+      // apart.
+      if (!firstCallStarted) {
+        firstCallStarted = true;
+        if (op == AudioMetrics.OP_SET_MODE) {
+          op = AudioMetrics.OP_FIRST_CALL;
+        }
       }
+      startDeviceDetection();
+    }
 
-      if (mode != -1) {
-        userSelectedDevice = device;
-        updateAudioRoute(mode, false);
+    router.beginOperation(op, command.startTime);
+    try {
+      success = router.setMode(command.mode);
+    } catch (Throwable e) {
+      success = false;
+    } finally {
+      router.endOperation();
+    }
+    if (success) {
+      if (command.mode == DEFAULT
+          && previousMode != DEFAULT
+          && previousMode != AudioRouter.MODE_UNSET) {
+        // The call the detection was prewarmed for is over.
+        keepDeviceDetection = false;
       }
-    });
+      if (command.promise != null) {
+        command.promise.resolve(null);
+      }
+    } else if (command.promise != null) {
+      command.promise.reject("setMode", "Failed to set audio mode to " + command.mode);
+    }
+
+    stopDeviceDetectionIfIdle();
+  }
+
+  private void runSetAudioDevice(SetAudioDeviceCommand command) {
+    router.getMetrics().increment(
+      AudioMetrics.COUNTER_SUPERSEDED_SET_AUDIO_DEVICE,
+      pendingCommands.takeSuperseded(COMMAND_SET_AUDIO_DEVICE));
+
+    router.beginOperation(AudioMetrics.OP_SET_AUDIO_DEVICE, command.startTime);
+    try {
+      if (command.device == AudioDevices.NONE) {
+        router.clearSelectedDevice();
+      } else {
+        router.selectDevice(command.device);
+      }
+    } finally {
+      router.endOperation();
+    }
+  }
+
+  /**
+   * Sets the user selected audio device as the active audio device. A
+   * selection made right after the previous one, while it's still pending,
+   * supersedes it.
+   *
+   * @param deviceName the desired device which will become active.
+   */
+  @Override
+  @ReactMethod
+  public void setAudioDevice(final String deviceName) {
+    SetAudioDeviceCommand command
+      = new SetAudioDeviceCommand(AudioDevices.fromName(deviceName), AudioMetrics.now());
+
+    queueCommand(command);
   }
 
   /**
    * Public method to set the current audio mode.
    *
-   * @param mode the desired audio mode.
+   * @param modeValue the desired audio mode.
    * @param promise a {@link Promise} which will be resolved if the audio mode
-   * could be updated successfully, and it will be rejected otherwise.
+   * could be updated successfully, and it will be rejected otherwise. It is
+   * rejected with {@link #SUPERSEDED} if another mode is set right after it,
+   * before it got to be.
    */
+  @Override
   @ReactMethod
-  public void setMode(final int mode, final Promise promise) {
-    if (mode != DEFAULT && mode != AUDIO_CALL && mode != VIDEO_CALL) {
+  public void setMode(final double modeValue, final Promise promise) {
+    final long startTime = AudioMetrics.now();
+    final int mode = (int) modeValue;
+
+    if (!AudioRouter.isValidMode(mode)) {
       promise.reject("setMode", "Invalid audio mode " + mode);
       return;
     }
 
+    offerSetMode(new SetModeCommand(mode, promise, AudioMetrics.OP_SET_MODE, startTime));
+  }
+
+  /**
+   * Sets the mode for the call which got the audio, e.g. an incoming call
+   * which was just answered or another call brought to the foreground,
+   * without waiting for JS to do it, so that the audio is routed to the call
+   * right away. JS setting the same mode afterwards is a no-op.
+   *
+   * @param mode {@link #AUDIO_CALL} or {@link #VIDEO_CALL}.
+   * @param op the operation to time it as, see {@link AudioMetrics}.
+   * @param startTime the time the call got the audio at, see
+   * {@link AudioMetrics#now()}.
+   */
+  void setCallMode(int mode, int op, long startTime) {
+    offerSetMode(new SetModeCommand(mode, null, op, startTime));
+  }
+
+  /**
+   * Selects the audio device chosen for the call which got the audio.
+   *
+   * @param device the device, see {@link AudioDevices}, or
+   * {@link AudioDevices#NONE} to drop the selection for the preferred one.
+   * @param startTime the time the device was chosen at, see
+   * {@link AudioMetrics#now()}.
+   */
+  void setCallAudioDevice(int device, long startTime) {
+    queueCommand(new SetAudioDeviceCommand(device, startTime));
+  }
+
+  /**
+   * Restores the audio focus and route of a call resumed from hold, which
+   * the call that held it, e.g. a cellular one, may have taken.
+   *
+   * @param resumeTime the time the call was resumed at, see
+   * {@link AudioMetrics#now()}.
+   */
+  void resumeCall(final long resumeTime) {
+    final int queuedCookie = AudioTrace.beginQueued(AudioMetrics.OP_RESUME_CALL);
+    runInAudioThread(() -> {
+      AudioTrace.endQueued(AudioMetrics.OP_RESUME_CALL, queuedCookie);
+      int mode = router.getMode();
+
+      if (audioDeviceHandler == null || mode == DEFAULT || mode == AudioRouter.MODE_UNSET) {
+        return;
+      }
+      router.beginOperation(AudioMetrics.OP_RESUME_CALL, resumeTime);
+      try {
+        audioDeviceHandler.restoreAudio();
+      } finally {
+        router.endOperation();
+      }
+      router.getMetrics().record(AudioMetrics.OP_RESUME_CALL, AudioMetrics.STAGE_HANDLER, resumeTime);
+    });
+  }
+
+  private void offerSetMode(SetModeCommand command) {
     Activity currentActivity = getCurrentActivity();
     if (currentActivity != null) {
-      if (mode == DEFAULT) {
+      if (command.mode == DEFAULT) {
         currentActivity.setVolumeControlStream(AudioManager.USE_DEFAULT_STREAM_TYPE);
       } else {
         currentActivity.setVolumeControlStream(AudioManager.STREAM_VOICE_CALL);
       }
     }
 
-    runInAudioThread(() -> {
-      boolean success;
+    SetModeCommand superseded = (SetModeCommand) queueCommand(command);
 
-      try {
-        success = updateAudioRoute(mode, false);
-      } catch (Throwable e) {
-        success = false;
-      }
-      if (success) {
-        AudioModule.this.mode = mode;
-        promise.resolve(null);
-      } else {
-        promise.reject("setMode", "Failed to set audio mode to " + mode);
-      }
+    if (superseded != null && superseded.promise != null) {
+      superseded.promise.reject(
+        SUPERSEDED,
+        "Audio mode " + superseded.mode + " superseded by " + command.mode + " before being set");
+    }
+  }
+
+  /**
+   * Sets the time window during which consecutive audio device change
+   * callbacks are merged into a single device rescan, route update and
+   * {@link #DEVICE_CHANGE_EVENT} emit.
+   *
+   * @param windowMs the window in milliseconds, {@code 0} disables coalescing.
+   */
+  @Override
+  @ReactMethod
+  public void setDeviceChangeCoalesceWindow(final double windowMs) {
+    deviceChangeCoalesceWindow = (int) Math.max(0, windowMs);
+  }
+
+  /**
+   * Sets whether {@link #DEVICE_CHANGE_EVENT} carries the compact form of
+   * the device list, a mask, the index of the device in use and a sequence
+   * number, rather than a map per device. Disabled by default.
+   *
+   * @param compact whether the compact form is to be used.
+   */
+  @Override
+  @ReactMethod
+  public void setCompactDeviceUpdates(final boolean compact) {
+    compactDeviceUpdates = compact;
+  }
+
+  /**
+   * Enables or disables sending the module's events in batches: the events
+   * emitted meanwhile are sent as a single
+   * {@link BatchedEventEmitter#BATCH_EVENT} once per frame, or once per
+   * interval, keeping only the latest {@link #DEVICE_CHANGE_EVENT}. Disabled
+   * by default.
+   *
+   * @param enabled whether the events are to be batched.
+   * @param intervalMs the time the events are accumulated for, {@code 0} for
+   * sending them once per frame.
+   */
+  @Override
+  @ReactMethod
+  public void setEventBatching(final boolean enabled, final double intervalMs) {
+    ReactInstanceManagerHolder.setEventBatching(
+      reactContext, enabled, (int) Math.max(0, intervalMs));
+  }
+
+  /**
+   * Turns the trace sections of the audio pipeline on or off, see
+   * {@link AudioTrace}. They show up in system traces, e.g. Perfetto ones,
+   * which capture the app's sections. Off by default.
+   *
+   * @param enabled whether the sections are to be traced.
+   */
+  @Override
+  @ReactMethod
+  public void setTracingEnabled(final boolean enabled) {
+    AudioTrace.setTracer(enabled ? new AndroidTracer() : null);
+  }
+
+  /**
+   * Enables or disables the watchdog of the audio thread. Every operation
+   * runs on that one thread, so a single task stuck in a system call, e.g. a
+   * stalled binder call, holds up all the routing after it. A task running
+   * for longer than the threshold is reported with
+   * {@link #AUDIO_THREAD_STALL_EVENT}, and kept in the audio metrics.
+   *
+   * @param thresholdMs the time, in milliseconds, after which a task is
+   * reported as stalled, {@code 0} disables the watchdog.
+   */
+  @Override
+  @ReactMethod
+  public synchronized void setAudioThreadWatchdog(final double thresholdMs) {
+    AudioThreadWatchdog previous = audioThreadWatchdog;
+
+    if (previous != null) {
+      previous.stop(audioThread.getLooper());
+    }
+    if (thresholdMs > 0) {
+      AudioThreadWatchdog watchdog
+        = new AudioThreadWatchdog((long) thresholdMs, router, this::onAudioThreadStall);
+      watchdog.watch(audioThread.getLooper());
+      audioThreadWatchdog = watchdog;
+    } else {
+      audioThreadWatchdog = null;
+    }
+  }
+
+  /**
+   * Reports an audio thread task detected as stalled. Called on the watchdog
+   * thread.
+   *
+   * @param report the stall report.
+   */
+  private void onAudioThreadStall(AudioWatchdog.StallReport report) {
+    // Counted once the audio thread gets to it.
+    runInAudioThread(() -> router.getMetrics().increment(AudioMetrics.COUNTER_AUDIO_THREAD_STALLS, 1));
+
+    ReactInstanceManagerHolder.emitEvent(reactContext, AUDIO_THREAD_STALL_EVENT, createStallReport(report));
+  }
+
+  /**
+   * Creates the stall report sent to JS.
+   *
+   * @param report the report.
+   * @return the report: the {@code task}, the {@code operation} it was
+   * running (or {@code null}), its {@code duration} in milliseconds so far,
+   * whether it {@code ended} and the audio thread's {@code stack}.
+   */
+  private static WritableMap createStallReport(AudioWatchdog.StallReport report) {
+    WritableMap data = Arguments.createMap();
+    data.putString("task", AudioThreadWatchdog.describeTask(report.task));
+    data.putString("operation", report.op == -1 ? null : AudioMetrics.getOpName(report.op));
+    data.putDouble("duration", toMillis(report.getDuration()));
+    data.putBoolean("ended", report.hasEnded());
+    data.putString("stack", report.stack);
+    return data;
+  }
+
+  /**
+   * Gets statistics about the audio device change coalescing.
+   *
+   * @param promise a {@link Promise} resolved with a map holding the window in
+   * use, the number of rescans and the number of merged callbacks.
+   */
+  @Override
+  @ReactMethod
+  public void getDeviceChangeStats(final Promise promise) {
+    runInAudioThread(() -> {
+      WritableMap stats = Arguments.createMap();
+      stats.putInt("coalesceWindow", deviceChangeCoalesceWindow);
+      AudioMetrics metrics = router.getMetrics();
+      stats.putDouble("rescans", metrics.getCounter(AudioMetrics.COUNTER_DEVICE_RESCANS));
+      stats.putDouble("coalescedCallbacks", metrics.getCounter(AudioMetrics.COUNTER_COALESCED_CALLBACKS));
+      promise.resolve(stats);
     });
   }
 
   /**
-   * Sets whether ConnectionService should be used (if available) for setting the audio mode
-   * or not.
+   * Gets the latency percentiles of the routing operations, in milliseconds,
+   * measured from the bridge call or system callback to each stage, along
+   * with the routing counters.
    *
-   * @param use Boolean indicator of where it should be used or not.
+   * @param reset whether the metrics should be cleared after being read.
+   * @param promise a {@link Promise} resolved with a map of operations, each
+   * holding a map of stages, plus a "counters" map.
    */
+  @Override
   @ReactMethod
-  public void setUseConnectionService(final boolean use) {
+  public void getAudioMetrics(final boolean reset, final Promise promise) {
     runInAudioThread(() -> {
-      useConnectionService_ = use;
-      setAudioDeviceHandler();
+      AudioMetrics metrics = router.getMetrics();
+      WritableMap result = Arguments.createMap();
+
+      metrics.increment(
+        AudioMetrics.COUNTER_MERGED_EVENTS, ReactInstanceManagerHolder.takeMergedEvents());
+
+      for (int op = 0; op < AudioMetrics.getOpCount(); op++) {
+        WritableMap stages = Arguments.createMap();
+        for (int stage = 0; stage < AudioMetrics.getStageCount(); stage++) {
+          LatencyHistogram histogram = metrics.getHistogram(op, stage);
+          WritableMap stats = Arguments.createMap();
+          stats.putDouble("count", histogram.getCount());
+          stats.putDouble("mean", toMillis(histogram.getMean()));
+          stats.putDouble("p50", toMillis(histogram.getPercentile(50)));
+          stats.putDouble("p90", toMillis(histogram.getPercentile(90)));
+          stats.putDouble("p99", toMillis(histogram.getPercentile(99)));
+          stats.putDouble("max", toMillis(histogram.getMax()));
+          stages.putMap(AudioMetrics.getStageName(stage), stats);
+        }
+        result.putMap(AudioMetrics.getOpName(op), stages);
+      }
+
+      WritableMap counters = Arguments.createMap();
+      for (int counter = 0; counter < AudioMetrics.getCounterCount(); counter++) {
+        counters.putDouble(AudioMetrics.getCounterName(counter), metrics.getCounter(counter));
+      }
+      result.putMap("counters", counters);
+
+      WritableArray stalls = Arguments.createArray();
+      AudioThreadWatchdog watchdog = audioThreadWatchdog;
+      if (watchdog != null) {
+        for (AudioWatchdog.StallReport report : watchdog.getWatchdog().getReports()) {
+          stalls.pushMap(createStallReport(report));
+        }
+      }
+      result.putArray("stalls", stalls);
+
+      if (reset) {
+        metrics.reset();
+      }
+      promise.resolve(result);
     });
   }
 
   /**
-   * Updates the audio route for the given mode.
+   * Records the latency of an operation measured outside of the audio thread,
+   * see {@link AudioMetrics}. Can be called from any thread.
    *
-   * @param mode the audio mode to be used when computing the audio route.
-   * @return {@code true} if the audio route was updated successfully;
-   * {@code false}, otherwise.
+   * @param op the operation type.
+   * @param stage the stage reached.
+   * @param latency the latency in nanoseconds.
    */
-  private boolean updateAudioRoute(int mode, boolean force) {
-    if (!audioDeviceHandler.setMode(mode)) {
-      return false;
-    }
+  void recordLatency(final int op, final int stage, final long latency) {
+    runInAudioThread(() -> router.getMetrics().recordLatency(op, stage, latency));
+  }
 
-    if (mode == DEFAULT) {
-      selectedDevice = null;
-      userSelectedDevice = null;
+  private static double toMillis(long nanos) {
+    return nanos / 1e6;
+  }
 
-      notifyDevicesChanged();
-      return true;
-    }
+  /**
+   * Gets the time window used for coalescing audio device change callbacks.
+   *
+   * @return the window in milliseconds.
+   */
+  int getDeviceChangeCoalesceWindow() {
+    return deviceChangeCoalesceWindow;
+  }
 
-    boolean bluetoothAvailable = availableDevices.contains(DEVICE_BLUETOOTH);
-    boolean headsetAvailable = availableDevices.contains(DEVICE_HEADPHONES);
+  /**
+   * Gets the routing state machine, for the device handlers to feed. Must
+   * only be used on the audio thread.
+   *
+   * @return the {@link AudioRouter} instance.
+   */
+  AudioRouter getRouter() {
+    return router;
+  }
 
-    // Pick the desired device based on what's available and the mode.
-    String audioDevice;
-    if (bluetoothAvailable) {
-      audioDevice = DEVICE_BLUETOOTH;
-    } else if (headsetAvailable) {
-      audioDevice = DEVICE_HEADPHONES;
-    } else {
-      audioDevice = DEVICE_SPEAKER;
-    }
+  /**
+   * Sets the devices to be preferred in the given mode.
+   *
+   * @param modeValue the audio mode the policy applies to.
+   * @param devices the device names, most preferred first. Devices missing
+   * from the list are only used when selected by the user.
+   * @param promise a {@link Promise} which will be resolved once the policy is
+   * in use, and it will be rejected if the arguments are invalid.
+   */
+  @Override
+  @ReactMethod
+  public void setRoutingPolicy(final double modeValue, final ReadableArray devices, final Promise promise) {
+    final int mode = (int) modeValue;
 
-    // Consider the user's selection
-    if (userSelectedDevice != null && availableDevices.contains(userSelectedDevice)) {
-      audioDevice = userSelectedDevice;
+    if (mode != AUDIO_CALL && mode != VIDEO_CALL) {
+      promise.reject("setRoutingPolicy", "Invalid audio mode " + mode);
+      return;
     }
 
-    // If the previously selected device and the current default one
-    // match, do nothing.
-    if (!force && selectedDevice != null && selectedDevice.equals(audioDevice)) {
-      return true;
+    final int[] priorities = new int[devices.size()];
+    for (int i = 0; i < priorities.length; i++) {
+      String name = devices.getString(i);
+      priorities[i] = AudioDevices.fromName(name);
+      if (priorities[i] == AudioDevices.NONE) {
+        promise.reject("setRoutingPolicy", "Invalid audio device " + name);
+        return;
+      }
     }
 
-    selectedDevice = audioDevice;
-
-    audioDeviceHandler.setAudioRoute(audioDevice);
+    runInAudioThread(() -> {
+      router.setRoutingPolicy(mode, priorities);
+      promise.resolve(null);
+    });
+  }
 
-    notifyDevicesChanged();
-    return true;
+  /**
+   * Sets whether ConnectionService should be used (if available) for setting the audio mode
+   * or not.
+   *
+   * @param use Boolean indicator of where it should be used or not.
+   */
+  @Override
+  @ReactMethod
+  public void setUseConnectionService(final boolean use) {
+    runInAudioThread(() -> {
+      useConnectionService_ = use;
+      preparedAudioDeviceHandler = null;
+      if (audioDeviceHandler != null) {
+        setAudioDeviceHandler();
+      }
+    });
   }
 
   /**
-   * Gets the currently selected audio device.
+   * Prepares for a call about to be made: creates the objects needed for
+   * it, which is otherwise done once the main thread goes idle after
+   * startup, and starts the device detection so that the devices are known
+   * by the time the call starts. The detection keeps running until the
+   * call ends.
    *
-   * @return The selected audio device.
+   * @param promise a {@link Promise} resolved once done.
    */
-  String getSelectedDevice() {
-    return selectedDevice;
+  @Override
+  @ReactMethod
+  public void prewarm(final Promise promise) {
+    final long startTime = AudioMetrics.now();
+
+    final int queuedCookie = AudioTrace.beginQueued(AudioMetrics.OP_PREWARM);
+    runInAudioThread(() -> {
+      AudioTrace.endQueued(AudioMetrics.OP_PREWARM, queuedCookie);
+      router.getMetrics().record(AudioMetrics.OP_PREWARM, AudioMetrics.STAGE_QUEUE, startTime);
+      prewarmResources();
+      keepDeviceDetection = true;
+      startDeviceDetection();
+      router.getMetrics().record(AudioMetrics.OP_PREWARM, AudioMetrics.STAGE_HANDLER, startTime);
+      promise.resolve(null);
+    });
   }
 
   /**
-   * Resets the current device selection.
+   * Gets the current audio mode. Synchronous, for JS to read the state
+   * without waiting for an event.
+   *
+   * @return the audio mode.
    */
-  void resetSelectedDevice() {
-    selectedDevice = null;
-    userSelectedDevice = null;
+  @Override
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public double getMode() {
+    return getMode(router.getState());
   }
 
   /**
-   * Adds a new device to the list of available devices.
+   * Gets the device in use. Synchronous.
    *
-   * @param device The new device.
+   * @return the device name, see {@link AudioDevices}, or {@code null} if
+   * none is.
    */
-  void addDevice(String device) {
-    availableDevices.add(device);
-    resetSelectedDevice();
+  @Override
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @Nullable
+  public String getSelectedDevice() {
+    return AudioDevices.getName(router.getState().getSelectedDevice());
   }
 
   /**
-   * Removes a device from the list of available devices.
+   * Gets the available devices, as listed in {@link #DEVICE_CHANGE_EVENT}.
+   * Synchronous.
    *
-   * @param device The old device to the removed.
+   * @return the device names, see {@link AudioDevices}.
    */
-  void removeDevice(String device) {
-    availableDevices.remove(device);
-    resetSelectedDevice();
+  @Override
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public WritableArray getAvailableDevices() {
+    int devices = router.getState().getVisibleDevices();
+    WritableArray result = Arguments.createArray();
+
+    for (int i = 0; i < AudioDevices.COUNT; i++) {
+      int device = AudioDevices.valueAt(i);
+      if (AudioDevices.contains(devices, device)) {
+        result.pushString(AudioDevices.getName(device));
+      }
+    }
+    return result;
   }
 
   /**
-   * Replaces the current list of available devices with a new one.
+   * Gets the whole routing state at once. Synchronous, and unlike calling
+   * the individual getters one after the other the values are always
+   * consistent with each other.
    *
-   * @param devices The new devices list.
+   * @return the state: {@code mode}, the {@code devices} as listed in
+   * {@link #DEVICE_CHANGE_EVENT}, the {@code selectedDevice} and
+   * {@code userSelectedDevice} names (or {@code null}), and a
+   * {@code version} increased on every change.
    */
-  void replaceDevices(Set<String> devices) {
-    availableDevices = devices;
-    resetSelectedDevice();
+  @Override
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public WritableMap getAudioState() {
+    AudioState state = router.getState();
+    WritableMap result = Arguments.createMap();
+
+    result.putInt("mode", getMode(state));
+    result.putArray("devices",
+      createDeviceList(state.getVisibleDevices(), state.getSelectedDevice()));
+    result.putString("selectedDevice", AudioDevices.getName(state.getSelectedDevice()));
+    result.putString("userSelectedDevice", AudioDevices.getName(state.getUserSelectedDevice()));
+    result.putDouble("version", state.getVersion());
+    return result;
   }
 
   /**
-   * Re-sets the current audio route. Needed when devices changes have happened.
+   * @return the audio mode of the given state, {@link #DEFAULT} if none was
+   * set yet.
    */
-  void updateAudioRoute() {
-    if (mode != -1) {
-      updateAudioRoute(mode, false);
-    }
+  private static int getMode(AudioState state) {
+    int mode = state.getMode();
+    return mode == AudioRouter.MODE_UNSET ? DEFAULT : mode;
   }
 
   /**
-   * Re-sets the current audio route. Needed when focus is lost and regained.
+   * Called by {@code NativeEventEmitter} when JS subscribes to one of the
+   * module's events. Subscribing to {@link #DEVICE_CHANGE_EVENT} starts the
+   * device detection.
+   *
+   * @param eventName the event subscribed to.
    */
-  void resetAudioRoute() {
-    if (mode != -1) {
-      updateAudioRoute(mode, true);
-    }
+  @Override
+  @ReactMethod
+  public void addListener(final String eventName) {
+    runInAudioThread(() -> {
+      listenerCount++;
+      if (DEVICE_CHANGE_EVENT.equals(eventName)) {
+        startDeviceDetection();
+      }
+    });
+  }
+
+  /**
+   * Called by {@code NativeEventEmitter} when JS unsubscribes from the
+   * module's events.
+   *
+   * @param count the number of listeners removed.
+   */
+  @Override
+  @ReactMethod
+  public void removeListeners(final double count) {
+    runInAudioThread(() -> {
+      listenerCount = Math.max(0, listenerCount - (int) count);
+      stopDeviceDetectionIfIdle();
+    });
   }
 
   /**
@@ -413,12 +1142,20 @@ public class AudioModule extends ReactContextBaseJavaModule {
      */
     void stop();
 
+    /**
+     * Create the objects needed for a call ahead of time, before
+     * {@link #start(AudioModule)} is called.
+     * @param audioModule Reference to the main {@link AudioModule}.
+     */
+    void prewarm(AudioModule audioModule);
+
     /**
      * Set the appropriate route for the given audio device.
      *
-     * @param device Audio device for which the route must be set.
+     * @param device Audio device for which the route must be set, see
+     * {@link AudioDevices}.
      */
-    void setAudioRoute(String device);
+    void setAudioRoute(int device);
 
     /**
      * Set the given audio mode.
@@ -427,5 +1164,11 @@ public class AudioModule extends ReactContextBaseJavaModule {
      * @return Whether the operation was successful or not.
      */
     boolean setMode(int mode);
+
+    /**
+     * Restore the audio focus and route of the current call mode, after the
+     * call was held by another one which may have taken them.
+     */
+    void restoreAudio();
   }
 }
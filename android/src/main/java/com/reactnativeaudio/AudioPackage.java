@@ -1,28 +1,64 @@
 package com.reactnativeaudio;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.TurboReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
-public class AudioPackage implements ReactPackage {
-    @NonNull
+/**
+ * Provides the {@link AudioModule} and, where supported, the
+ * {@link RNConnectionService} modules. They are TurboModules when the new
+ * architecture is enabled, and bridge modules otherwise.
+ */
+public class AudioPackage extends TurboReactPackage {
+    @Nullable
     @Override
-    public List<NativeModule> createNativeModules(@NonNull ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new AudioModule(reactContext));
-        return modules;
+    public NativeModule getModule(@NonNull String name, @NonNull ReactApplicationContext reactContext) {
+        if (AudioModule.NAME.equals(name)) {
+            return new AudioModule(reactContext);
+        }
+        if (RNConnectionService.NAME.equals(name) && AudioModule.useConnectionService()) {
+            return new RNConnectionService(reactContext);
+        }
+        return null;
     }
 
-    @NonNull
     @Override
-    public List<ViewManager> createViewManagers(@NonNull ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> {
+            final Map<String, ReactModuleInfo> moduleInfos = new HashMap<>();
+            boolean isTurboModule = BuildConfig.IS_NEW_ARCHITECTURE_ENABLED;
+
+            moduleInfos.put(
+                    AudioModule.NAME,
+                    new ReactModuleInfo(
+                            AudioModule.NAME,
+                            AudioModule.class.getName(),
+                            false, // canOverrideExistingModule
+                            false, // needsEagerInit
+                            true, // hasConstants
+                            false, // isCxxModule
+                            isTurboModule));
+            if (AudioModule.useConnectionService()) {
+                moduleInfos.put(
+                        RNConnectionService.NAME,
+                        new ReactModuleInfo(
+                                RNConnectionService.NAME,
+                                RNConnectionService.class.getName(),
+                                false, // canOverrideExistingModule
+                                false, // needsEagerInit
+                                true, // hasConstants
+                                false, // isCxxModule
+                                isTurboModule));
+            }
+            return moduleInfos;
+        };
     }
 }
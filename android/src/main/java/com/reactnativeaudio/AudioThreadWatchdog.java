@@ -0,0 +1,140 @@
+package com.reactnativeaudio;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Printer;
+
+/**
+ * Watches the audio thread for stalled tasks, see {@link AudioWatchdog}. The
+ * start and end of the tasks are taken from the messages dispatched by the
+ * thread's {@link Looper}, so that every task is covered, the system
+ * callbacks delivered on the thread included, without wrapping them. The
+ * checks run on a thread of their own, since the audio thread is the one
+ * which may be stuck.
+ *
+ * The {@link Looper} builds the description of every message it dispatches
+ * while watched, so this is only meant to be enabled when looking into
+ * stalls.
+ */
+class AudioThreadWatchdog implements Printer {
+    /**
+     * Receives the stalls detected.
+     */
+    interface Listener {
+        /**
+         * Called on the watchdog thread when a task is detected as stalled.
+         *
+         * @param report the stall report.
+         */
+        void onAudioThreadStall(AudioWatchdog.StallReport report);
+    }
+
+    /**
+     * Prefixes of the messages printed by {@link Looper} before and after
+     * dispatching a message.
+     */
+    private static final String DISPATCHING_PREFIX = ">>>>> Dispatching to ";
+    private static final String FINISHED_PREFIX = "<<<<< Finished to ";
+
+    private final AudioWatchdog watchdog;
+
+    private final long thresholdMs;
+
+    private final AudioRouter router;
+
+    private final Listener listener;
+
+    private final HandlerThread checkThread = new HandlerThread("AudioWatchdog");
+
+    private final Handler checkHandler;
+
+    /**
+     * The watched thread, whose stack is captured when a task stalls.
+     */
+    private volatile Thread audioThread;
+
+    private final Runnable checkRunner = new Runnable() {
+        @Override
+        public void run() {
+            AudioWatchdog.StallReport report
+                    = watchdog.check(AudioMetrics.now(), audioThread, router.getCurrentOperation());
+
+            if (report != null) {
+                listener.onAudioThreadStall(report);
+            }
+        }
+    };
+
+    /**
+     * @param thresholdMs the time, in milliseconds, after which a task is
+     * reported as stalled.
+     * @param router the router, telling which operation a stalled task runs.
+     * @param listener receives the stalls detected.
+     */
+    AudioThreadWatchdog(long thresholdMs, AudioRouter router, Listener listener) {
+        this.thresholdMs = thresholdMs;
+        this.router = router;
+        this.listener = listener;
+        watchdog = new AudioWatchdog(thresholdMs * 1000000L);
+
+        checkThread.start();
+        checkHandler = new Handler(checkThread.getLooper());
+    }
+
+    /**
+     * Starts watching the given thread.
+     *
+     * @param looper the {@link Looper} of the thread.
+     */
+    void watch(Looper looper) {
+        audioThread = looper.getThread();
+        looper.setMessageLogging(this);
+    }
+
+    /**
+     * Stops watching the given thread, and the watchdog thread.
+     *
+     * @param looper the {@link Looper} of the watched thread.
+     */
+    void stop(Looper looper) {
+        looper.setMessageLogging(null);
+        checkHandler.removeCallbacks(checkRunner);
+        checkThread.quitSafely();
+    }
+
+    /**
+     * @return the watchdog, holding the last stall reports.
+     */
+    AudioWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Receives the messages printed by the {@link Looper} of the audio
+     * thread, before and after dispatching a message.
+     */
+    @Override
+    public void println(String x) {
+        if (x.startsWith(DISPATCHING_PREFIX)) {
+            watchdog.onTaskStarted(x, AudioMetrics.now());
+            checkHandler.postDelayed(checkRunner, thresholdMs);
+        } else if (x.startsWith(FINISHED_PREFIX)) {
+            checkHandler.removeCallbacks(checkRunner);
+            watchdog.onTaskEnded(AudioMetrics.now());
+        }
+    }
+
+    /**
+     * Gets the description of a task, as printed by the {@link Looper}: the
+     * {@link Handler}, the callback and the message code.
+     *
+     * @param task the task of a stall report.
+     * @return the description.
+     */
+    static String describeTask(String task) {
+        return task.startsWith(DISPATCHING_PREFIX)
+                ? task.substring(DISPATCHING_PREFIX.length())
+                : task;
+    }
+}
@@ -0,0 +1,126 @@
+package com.reactnativeaudio;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sends the events of a React context to JS in batches, see
+ * {@link EventBatcher}. The events are sent as a single {@link #BATCH_EVENT},
+ * holding the {@code name} and {@code data} of each, on the next frame or once
+ * the batching interval elapsed, which JS unpacks into the original events.
+ * That keeps the JS thread free during call setup, when a device connecting
+ * or a call changing state result in several events at once.
+ *
+ * Only the latest {@link AudioModule#DEVICE_CHANGE_EVENT} of a batch is sent.
+ */
+final class BatchedEventEmitter {
+    /**
+     * Event holding a batch of events.
+     */
+    static final String BATCH_EVENT = "audio#event-batch";
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ReactContext reactContext;
+
+    /**
+     * Time, in milliseconds, the events are accumulated for, {@code 0} for
+     * flushing them on the next frame.
+     */
+    private final int intervalMs;
+
+    private final EventBatcher<Object> batcher
+            = new EventBatcher<>(Collections.singleton(AudioModule.DEVICE_CHANGE_EVENT));
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> flush();
+
+    /**
+     * Registers {@link #frameCallback}, which must be done on the main thread.
+     */
+    private final Runnable frameScheduler
+            = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+    private final Runnable flushRunner = this::flush;
+
+    /**
+     * @param reactContext the context the events are sent to.
+     * @param intervalMs the time the events are accumulated for, {@code 0}
+     * for flushing them on the next frame.
+     */
+    BatchedEventEmitter(ReactContext reactContext, int intervalMs) {
+        this.reactContext = reactContext;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Adds an event to the pending batch, unless it's for another context.
+     *
+     * @param reactContext the context the event is sent to.
+     * @param eventName the event name.
+     * @param data the event data, a {@link ReadableMap}, a
+     * {@link ReadableArray}, a {@link String} or {@code null}.
+     * @return {@code false} if the event is for another context, and must be
+     * sent on its own.
+     */
+    boolean emit(ReactContext reactContext, String eventName, Object data) {
+        if (reactContext != this.reactContext) {
+            return false;
+        }
+        if (batcher.add(eventName, data)) {
+            if (intervalMs > 0) {
+                mainHandler.postDelayed(flushRunner, intervalMs);
+            } else {
+                mainHandler.post(frameScheduler);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends the pending batch, if any, as a single {@link #BATCH_EVENT}. Can
+     * be called from any thread.
+     */
+    void flush() {
+        List<EventBatcher.Event<Object>> events = batcher.take();
+
+        if (events.isEmpty()) {
+            return;
+        }
+
+        WritableArray batch = Arguments.createArray();
+        for (EventBatcher.Event<Object> event : events) {
+            WritableMap entry = Arguments.createMap();
+            entry.putString("name", event.name);
+            if (event.data instanceof ReadableMap) {
+                entry.putMap("data", (ReadableMap) event.data);
+            } else if (event.data instanceof ReadableArray) {
+                entry.putArray("data", (ReadableArray) event.data);
+            } else if (event.data instanceof String) {
+                entry.putString("data", (String) event.data);
+            } else {
+                entry.putNull("data");
+            }
+            batch.pushMap(entry);
+        }
+        ReactInstanceManagerHolder.emitEventNow(reactContext, BATCH_EVENT, batch);
+    }
+
+    /**
+     * @return the number of device list events replaced by a later one since
+     * the last call.
+     */
+    int takeMerged() {
+        return batcher.takeMerged();
+    }
+}
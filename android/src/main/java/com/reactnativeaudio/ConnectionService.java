@@ -1,35 +1,32 @@
 package com.reactnativeaudio;
 
-import android.content.ComponentName;
 import android.content.Context;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.telecom.CallAudioState;
 import android.telecom.Connection;
 import android.telecom.ConnectionRequest;
 import android.telecom.DisconnectCause;
-import android.telecom.PhoneAccount;
 import android.telecom.PhoneAccountHandle;
 import android.telecom.TelecomManager;
 import android.telecom.VideoProfile;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.facebook.react.bridge.Promise;
-import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReadableMap;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Jitsi Meet implementation of {@link ConnectionService}. At the time of this
- * writing it implements only the outgoing call scenario.
+ * Jitsi Meet implementation of {@link ConnectionService}. Implements the
+ * outgoing and the incoming call scenarios.
  *
  * NOTE the class needs to be public, but is not part of the SDK API and should
  * never be used directly.
@@ -44,8 +41,6 @@ public class ConnectionService extends android.telecom.ConnectionService {
      */
     static final String TAG = "JitsiConnectionService";
 
-    private static ReactApplicationContext reactContext;
-
     /**
      * The extra added to the {@link ConnectionImpl} and
      * {@link ConnectionRequest} which stores the {@link PhoneAccountHandle}
@@ -55,43 +50,96 @@ public class ConnectionService extends android.telecom.ConnectionService {
             = "org.jitsi.meet.sdk.connection_service.PHONE_ACCOUNT_HANDLE";
 
     /**
-     * Connections mapped by call UUID.
+     * The extra of the {@link ConnectionRequest}, and then of the
+     * {@link ConnectionImpl}, which stores the call's UUID. The phone accounts
+     * are shared by the calls, see {@link PhoneAccountPool}.
+     */
+    static final String EXTRA_CALL_UUID
+            = "com.reactnativeaudio.connection_service.CALL_UUID";
+
+    /**
+     * Calls mapped by call UUID, from the moment they are started until their
+     * connection is disconnected. Accessed from the Telecom, the React Native
+     * module and the main threads.
+     */
+    static private final ConcurrentHashMap<String, Call> calls
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The React Native module, notified of the audio state changes of all the
+     * connections and of the created connections. Registered once by the
+     * module, instead of being looked up on every change.
+     */
+    private static volatile RNConnectionService module;
+
+    /**
+     * Phone accounts used for the calls, created on first use.
      */
-    static private final Map<String, ConnectionImpl> connections
-            = new HashMap<>();
+    private static PhoneAccountPool phoneAccountPool;
 
     /**
-     * The start call Promises mapped by call UUID.
+     * Decides which of the active calls has the audio.
      */
-    static private final HashMap<String, Promise> startCallPromises
-            = new HashMap<>();
+    private static final CallArbiter callArbiter = new CallArbiter();
 
     /**
      * Aborts all ongoing connections. This is a last resort mechanism which forces all resources to
      * be freed on the system in case of fatal error.
      */
     static void abortConnections() {
-        for (ConnectionImpl connection: getConnections()) {
-            connection.onAbort();
+        for (Call call : calls.values()) {
+            ConnectionImpl connection = call.getConnection();
+
+            if (connection != null) {
+                connection.onAbort();
+            }
         }
     }
 
     /**
-     * Adds {@link ConnectionImpl} to the list.
+     * Gets the connection of a call, unless it's disconnected.
      *
-     * @param connection - {@link ConnectionImpl}
+     * @param callUUID the call UUID which identifies the connection.
+     * @return the connection, or {@code null} if there's none.
+     */
+    @Nullable
+    static ConnectionImpl getConnection(String callUUID) {
+        Call call = calls.get(callUUID);
+
+        if (call == null || call.getState() == CallState.DISCONNECTED) {
+            return null;
+        }
+        return call.getConnection();
+    }
+
+    /**
+     * @return the arbiter deciding which of the active calls has the audio.
      */
-    static void addConnection(ConnectionImpl connection) {
-        connections.put(connection.getCallUUID(), connection);
+    static CallArbiter getCallArbiter() {
+        return callArbiter;
     }
 
     /**
-     * Returns all {@link ConnectionImpl} instances held in this list.
+     * Sets the React Native module notified of the audio state changes of all
+     * the connections and of the created connections.
      *
-     * @return a list of {@link ConnectionImpl}.
+     * @param rnConnectionService the module, or {@code null}.
      */
-    static List<ConnectionImpl> getConnections() {
-        return new ArrayList<>(connections.values());
+    static void setModule(@Nullable RNConnectionService rnConnectionService) {
+        module = rnConnectionService;
+    }
+
+    /**
+     * Gets the pool of phone accounts used for the calls.
+     *
+     * @param context the current Android context.
+     * @return the pool.
+     */
+    static synchronized PhoneAccountPool getPhoneAccountPool(Context context) {
+        if (phoneAccountPool == null) {
+            phoneAccountPool = new PhoneAccountPool(context.getApplicationContext());
+        }
+        return phoneAccountPool;
     }
 
     /**
@@ -102,42 +150,251 @@ public class ConnectionService extends android.telecom.ConnectionService {
     }
 
     /**
-     * Registers a start call promise.
+     * Registers a new call, outgoing or incoming, {@link CallState#PENDING}
+     * until Telecom creates its connection.
      *
      * @param uuid - the call UUID to which the start call promise belongs to.
-     * @param promise - the Promise instance to be stored for later use.
+     * @param promise - the Promise instance to be resolved once the
+     *        connection is created, dialing or ringing.
+     * @param startTime - the time the call was started at, see
+     *        {@link AudioMetrics#now()}.
      */
-    static void registerStartCallPromise(ReactApplicationContext reactApplicationContext, String uuid, Promise promise) {
-        reactContext = reactApplicationContext;
-        startCallPromises.put(uuid, promise);
+    static void registerStartCallPromise(String uuid, Promise promise, long startTime) {
+        calls.put(uuid, new Call(uuid, promise, startTime));
     }
 
     /**
-     * Removes {@link ConnectionImpl} from the list.
+     * Used to adjusts the connection's state to
+     * {@link Connection#STATE_ACTIVE}, once an outgoing call is connected.
+     * Fails unless the call is dialing.
      *
-     * @param connection - {@link ConnectionImpl}
+     * @param callUUID the call UUID which identifies the connection.
+     * @return Whether the connection was set as active or not.
      */
-    static void removeConnection(ConnectionImpl connection) {
-        connections.remove(connection.getCallUUID());
+    static boolean setConnectionActive(String callUUID) {
+        Call call = calls.get(callUUID);
+        ConnectionImpl connection = call != null ? call.getConnection() : null;
+
+        if (connection == null) {
+            Log.e(TAG, "setConnectionActive - no connection for UUID: " + callUUID);
+            return false;
+        }
+        if (!call.moveFrom(CallState.DIALING, CallState.ACTIVE)) {
+            Log.e(TAG, "setConnectionActive - call " + callUUID + " is "
+                    + CallState.getName(call.getState()));
+            return false;
+        }
+        connection.setActive();
+        // The JavaScript side routes the audio of the first call itself.
+        activateCall(call, AudioMetrics.OP_SWITCH_CALL, AudioMetrics.now(), false);
+        return true;
     }
 
     /**
-     * Used to adjusts the connection's state to
-     * {@link Connection#STATE_ACTIVE}.
+     * Answers a ringing incoming call: adjusts the connection's state to
+     * {@link Connection#STATE_ACTIVE} and routes the audio to it right away,
+     * without waiting for the JavaScript side to set the audio mode.
      *
      * @param callUUID the call UUID which identifies the connection.
-     * @return Whether the connection was set as active or not.
+     * @param answerTime the time the call was answered at, see
+     *        {@link AudioMetrics#now()}.
+     * @return Whether the call was answered or not.
      */
-    static boolean setConnectionActive(String callUUID) {
-        ConnectionImpl connection = connections.get(callUUID);
+    static boolean answerCall(String callUUID, long answerTime) {
+        Call call = calls.get(callUUID);
+        ConnectionImpl connection = call != null ? call.getConnection() : null;
 
-        if (connection != null) {
-            connection.setActive();
-            return true;
-        } else {
-            Log.e(TAG, "setConnectionActive - no connection for UUID: " + callUUID);
+        if (connection == null) {
+            Log.e(TAG, "answerCall - no connection for UUID: " + callUUID);
+            return false;
+        }
+        if (!call.moveFrom(CallState.RINGING, CallState.ACTIVE)) {
+            Log.e(TAG, "answerCall - call " + callUUID + " is "
+                    + CallState.getName(call.getState()));
+            return false;
+        }
+        connection.setActive();
+        activateCall(call, AudioMetrics.OP_ANSWER_CALL, answerTime, true);
+        return true;
+    }
+
+    /**
+     * Puts an active call on hold.
+     *
+     * @param callUUID the call UUID which identifies the connection.
+     * @return Whether the call was put on hold or not.
+     */
+    static boolean holdCall(String callUUID) {
+        Call call = calls.get(callUUID);
+        ConnectionImpl connection = call != null ? call.getConnection() : null;
+
+        if (connection == null || !call.moveFrom(CallState.ACTIVE, CallState.HOLDING)) {
+            Log.e(TAG, "holdCall - no active call for UUID: " + callUUID);
+            return false;
+        }
+        connection.setOnHold();
+        deactivateCall(callUUID);
+        return true;
+    }
+
+    /**
+     * Resumes a held call: adjusts the connection's state back to
+     * {@link Connection#STATE_ACTIVE} and restores its audio focus and route,
+     * which the call that held it may have taken.
+     *
+     * @param callUUID the call UUID which identifies the connection.
+     * @param resumeTime the time the call was resumed at, see
+     *        {@link AudioMetrics#now()}.
+     * @return Whether the call was resumed or not.
+     */
+    static boolean unholdCall(String callUUID, long resumeTime) {
+        Call call = calls.get(callUUID);
+        ConnectionImpl connection = call != null ? call.getConnection() : null;
+
+        if (connection == null || !call.moveFrom(CallState.HOLDING, CallState.ACTIVE)) {
+            Log.e(TAG, "unholdCall - no held call for UUID: " + callUUID);
+            return false;
+        }
+        connection.setActive();
+
+        RNConnectionService rnConnectionService = module;
+        if (rnConnectionService != null) {
+            rnConnectionService.onCallResumed(resumeTime);
+        }
+        activateCall(call, AudioMetrics.OP_RESUME_CALL, resumeTime, false);
+        return true;
+    }
+
+    /**
+     * Brings an active call to the foreground, giving it the audio, see
+     * {@link CallArbiter}.
+     *
+     * @param callUUID the call UUID which identifies the connection.
+     * @return Whether the call is now the foreground one or not.
+     */
+    static boolean setForegroundCall(String callUUID) {
+        Call call = calls.get(callUUID);
+
+        if (call == null || call.getState() != CallState.ACTIVE) {
+            Log.e(TAG, "setForegroundCall - no active call for UUID: " + callUUID);
+            return false;
+        }
+        activateCall(call, AudioMetrics.OP_SWITCH_CALL, AudioMetrics.now(), false);
+        return true;
+    }
+
+    /**
+     * Sets the audio device of a call, used whenever it has the audio.
+     *
+     * @param callUUID the call UUID which identifies the connection.
+     * @param device the device, see {@link AudioDevices}, or
+     *        {@link AudioDevices#NONE} for the preferred one.
+     * @return Whether the call was found or not.
+     */
+    static boolean setCallAudioDevice(String callUUID, int device) {
+        Call call = calls.get(callUUID);
+
+        if (call == null) {
+            Log.e(TAG, "setCallAudioDevice - no call for UUID: " + callUUID);
+            return false;
+        }
+        call.setAudioDevice(device);
+
+        RNConnectionService rnConnectionService = module;
+        if (rnConnectionService != null && callUUID.equals(callArbiter.getForegroundCall())) {
+            rnConnectionService.onForegroundAudioDeviceChanged(device, AudioMetrics.now());
+        }
+        return true;
+    }
+
+    /**
+     * Makes a call which became active the foreground one, putting others on
+     * hold if the policy says so, and gives it the audio.
+     *
+     * @param call the call.
+     * @param op the operation to time the audio switch as, see
+     *        {@link AudioMetrics}.
+     * @param startTime the time the call became active at.
+     * @param force whether to give the call the audio even if no other call
+     *        had it.
+     */
+    private static void activateCall(Call call, int op, long startTime, boolean force) {
+        String previous = callArbiter.getForegroundCall();
+
+        for (String callUUID : callArbiter.activate(call.getCallUUID())) {
+            if (holdCall(callUUID)) {
+                emitCallEvent(RNConnectionService.HOLD_EVENT, callUUID);
+            }
+        }
+
+        if (previous != null && !previous.equals(call.getCallUUID())) {
+            applyForegroundCall(call, op, startTime, true);
+        } else if (force) {
+            // Only a device chosen for the call overrides the one selected
+            // for the first call.
+            applyForegroundCall(
+                    call, op, startTime, call.getAudioDevice() != AudioDevices.NONE);
+        }
+    }
+
+    /**
+     * Removes a call which went on hold or ended from the active ones. If it
+     * had the audio, the next active call gets it.
+     *
+     * @param callUUID the call UUID.
+     */
+    private static void deactivateCall(String callUUID) {
+        String foreground = callArbiter.deactivate(callUUID);
+        Call call = foreground != null ? calls.get(foreground) : null;
+
+        if (call != null) {
+            applyForegroundCall(call, AudioMetrics.OP_SWITCH_CALL, AudioMetrics.now(), true);
+        }
+    }
+
+    /**
+     * Routes the audio according to the foreground call's video state and,
+     * optionally, audio device.
+     */
+    private static void applyForegroundCall(Call call, int op, long startTime, boolean applyDevice) {
+        RNConnectionService rnConnectionService = module;
+        ConnectionImpl connection = call.getConnection();
+
+        if (rnConnectionService != null && connection != null) {
+            Log.d(TAG, " foreground call: " + call.getCallUUID());
+            rnConnectionService.onForegroundCallChanged(connection.getVideoState(), op, startTime);
+            if (applyDevice) {
+                rnConnectionService.onForegroundAudioDeviceChanged(call.getAudioDevice(), startTime);
+            }
+        }
+    }
+
+    /**
+     * Sends an event about a call to the JavaScript side.
+     */
+    static void emitCallEvent(String eventName, String callUUID) {
+        RNConnectionService rnConnectionService = module;
+        if (rnConnectionService != null) {
+            rnConnectionService.emitCallEvent(eventName, callUUID);
+        }
+    }
+
+    /**
+     * Rejects a ringing incoming call.
+     *
+     * @param callUUID the call UUID which identifies the connection.
+     * @return Whether the call was rejected or not.
+     */
+    static boolean rejectCall(String callUUID) {
+        Call call = calls.get(callUUID);
+
+        if (call == null || call.getState() != CallState.RINGING) {
+            Log.e(TAG, "rejectCall - no ringing call for UUID: " + callUUID);
             return false;
         }
+        return setConnectionDisconnected(
+                callUUID,
+                new DisconnectCause(DisconnectCause.REJECTED));
     }
 
     /**
@@ -146,11 +403,30 @@ public class ConnectionService extends android.telecom.ConnectionService {
      *
      * @param callUUID the call UUID which identifies the connection.
      * @param cause disconnection reason.
+     * @return Whether the call was ended by this call or not.
      */
-    static void setConnectionDisconnected(String callUUID, DisconnectCause cause) {
-        ConnectionImpl connection = connections.get(callUUID);
+    static boolean setConnectionDisconnected(String callUUID, DisconnectCause cause) {
+        Call call = calls.get(callUUID);
 
-        if (connection != null) {
+        if (call == null) {
+            Log.e(TAG, " endCall no connection for UUID: " + callUUID);
+            return false;
+        }
+
+        // If Telecom didn't create the connection yet, it's canceled in
+        // onCreateOutgoingConnection or onCreateIncomingConnection once it
+        // does.
+        Promise startCallPromise = removePendingCall(callUUID);
+
+        if (startCallPromise != null) {
+            startCallPromise.reject("CALL_ENDED", "The call was ended before it started");
+            return true;
+        }
+
+        ConnectionImpl connection = call.getConnection();
+
+        if (connection != null && call.moveTo(CallState.DISCONNECTING)) {
+            deactivateCall(callUUID);
             if (isSamsungDevice()) {
                 // Required to release the audio focus correctly.
                 connection.setOnHold();
@@ -166,22 +442,30 @@ public class ConnectionService extends android.telecom.ConnectionService {
             // be removed from the ConnectionList.
             connection.setDisconnected(cause);
             connection.destroy();
+            return true;
         } else {
-            Log.e(TAG, " endCall no connection for UUID: " + callUUID);
+            Log.w(TAG, " endCall call " + callUUID + " is already "
+                    + CallState.getName(call.getState()));
+            return false;
         }
     }
 
     /**
-     * Unregisters a start call promise. Must be called after the Promise is
-     * rejected or resolved.
+     * Removes a call whose connection failed to be or won't be created.
      *
-     * @param uuid the call UUID which identifies the call to which the promise
-     *        belongs to.
-     * @return the unregistered Promise instance or <tt>null</tt> if there
-     *         wasn't any for the given call UUID.
+     * @param uuid the call UUID.
+     * @return the call's start call Promise, to be rejected, or <tt>null</tt>
+     *         if there wasn't any pending call for the given call UUID.
      */
-    static Promise unregisterStartCallPromise(String uuid) {
-        return startCallPromises.remove(uuid);
+    @Nullable
+    static Promise removePendingCall(String uuid) {
+        Call call = calls.get(uuid);
+
+        if (call == null || !call.moveFrom(CallState.PENDING, CallState.DISCONNECTED)) {
+            return null;
+        }
+        calls.remove(uuid, call);
+        return call.takeStartCallPromise();
     }
 
     /**
@@ -192,7 +476,8 @@ public class ConnectionService extends android.telecom.ConnectionService {
      *        "KEY_*" constants in {@link ConnectionImpl} for the list of keys.
      */
     static void updateCall(String callUUID, ReadableMap callState) {
-        ConnectionImpl connection = connections.get(callUUID);
+        Call call = calls.get(callUUID);
+        ConnectionImpl connection = call != null ? call.getConnection() : null;
 
         if (connection != null) {
             if (callState.hasKey(ConnectionImpl.KEY_HAS_VIDEO)) {
@@ -200,10 +485,17 @@ public class ConnectionService extends android.telecom.ConnectionService {
                         = callState.getBoolean(ConnectionImpl.KEY_HAS_VIDEO);
 
                 Log.i(TAG, "updateCall: " + callUUID + " hasVideo: " + hasVideo);
+                boolean changed = VideoProfile.isVideo(connection.getVideoState()) != hasVideo;
                 connection.setVideoState(
                         hasVideo
                                 ? VideoProfile.STATE_BIDIRECTIONAL
                                 : VideoProfile.STATE_AUDIO_ONLY);
+
+                // Each call has its own video state, only the foreground
+                // one's sets the audio mode.
+                if (changed && callUUID.equals(callArbiter.getForegroundCall())) {
+                    applyForegroundCall(call, AudioMetrics.OP_SET_MODE, AudioMetrics.now(), false);
+                }
             }
         } else {
             Log.e(TAG, " updateCall no connection for UUID: " + callUUID);
@@ -212,6 +504,96 @@ public class ConnectionService extends android.telecom.ConnectionService {
 
     @Override
     public Connection onCreateOutgoingConnection(PhoneAccountHandle accountHandle, ConnectionRequest request) {
+        Call call = getRequestedCall(request, "onCreateOutgoingConnection");
+
+        if (call == null) {
+            return Connection.createCanceledConnection();
+        }
+
+        ConnectionImpl connection = createConnection(request);
+
+        // NOTE there's a time gap between the placeCall and this callback when
+        // things could get out of sync, but they are put back in sync once
+        // the startCall Promise is resolved below. That's because on
+        // the JavaScript side there's a logic to sync up in .then() callback.
+        connection.setVideoState(request.getVideoState());
+
+        if (!startCall(call, connection, CallState.DIALING, request, "onCreateOutgoingConnection")) {
+            return Connection.createCanceledConnection();
+        }
+
+        RNConnectionService rnConnectionService = module;
+        if (rnConnectionService != null) {
+            rnConnectionService.onOutgoingConnectionCreated(
+                    AudioMetrics.now() - call.getStartTime());
+        }
+
+        resolveStartCallPromise(call, "onCreateOutgoingConnection");
+
+        return connection;
+    }
+
+    @Override
+    public Connection onCreateIncomingConnection(
+            PhoneAccountHandle accountHandle, ConnectionRequest request) {
+        Call call = getRequestedCall(request, "onCreateIncomingConnection");
+
+        if (call == null) {
+            return Connection.createCanceledConnection();
+        }
+
+        ConnectionImpl connection = createConnection(request);
+
+        connection.setVideoState(request.getVideoState());
+        // Self-managed calls are answered from the app's UI, or through
+        // ConnectionImpl#onAnswer by e.g. a Bluetooth headset.
+        connection.setRinging();
+
+        if (!startCall(call, connection, CallState.RINGING, request, "onCreateIncomingConnection")) {
+            return Connection.createCanceledConnection();
+        }
+
+        RNConnectionService rnConnectionService = module;
+        if (rnConnectionService != null) {
+            rnConnectionService.onIncomingConnectionCreated(
+                    AudioMetrics.now() - call.getStartTime());
+        }
+
+        resolveStartCallPromise(call, "onCreateIncomingConnection");
+
+        return connection;
+    }
+
+    /**
+     * Gets the call a connection is requested for. If there is none, e.g.
+     * because it was ended or failed in the meantime, its account is given
+     * back to the pool.
+     *
+     * @param request the connection request.
+     * @param caller the name of the calling method, for logging.
+     * @return the call, or {@code null} if the connection must be canceled.
+     */
+    @Nullable
+    private Call getRequestedCall(ConnectionRequest request, String caller) {
+        PhoneAccountHandle theAccountHandle
+                = Objects.requireNonNull(request.getAccountHandle(), "accountHandle");
+        String callUUID = getCallUUID(request);
+        Call call = callUUID != null ? calls.get(callUUID) : null;
+
+        if (call == null) {
+            Log.w(TAG, " " + caller + ": call " + callUUID + " is gone, canceling");
+            getPhoneAccountPool(this).release(theAccountHandle);
+        }
+        return call;
+    }
+
+    /**
+     * Creates the connection of a requested call, without its state.
+     *
+     * @param request the connection request.
+     * @return the connection.
+     */
+    private ConnectionImpl createConnection(ConnectionRequest request) {
         ConnectionImpl connection = new ConnectionImpl();
 
         connection.setConnectionProperties(Connection.PROPERTY_SELF_MANAGED);
@@ -221,118 +603,111 @@ public class ConnectionService extends android.telecom.ConnectionService {
         connection.setExtras(request.getExtras());
 
         connection.setAudioModeIsVoip(true);
-
-        // NOTE there's a time gap between the placeCall and this callback when
-        // things could get out of sync, but they are put back in sync once
-        // the startCall Promise is resolved below. That's because on
-        // the JavaScript side there's a logic to sync up in .then() callback.
-        connection.setVideoState(request.getVideoState());
+        // Lets the system hold the call, e.g. for a cellular call, instead of
+        // it being torn down.
+        connection.setConnectionCapabilities(
+                Connection.CAPABILITY_HOLD | Connection.CAPABILITY_SUPPORT_HOLD);
 
         Bundle moreExtras = new Bundle();
 
-        moreExtras.putParcelable(
-                EXTRA_PHONE_ACCOUNT_HANDLE,
-                Objects.requireNonNull(request.getAccountHandle(), "accountHandle"));
+        moreExtras.putParcelable(EXTRA_PHONE_ACCOUNT_HANDLE, request.getAccountHandle());
         connection.putExtras(moreExtras);
 
-        addConnection(connection);
+        return connection;
+    }
+
+    /**
+     * Moves a requested call out of {@link CallState#PENDING} now that its
+     * connection is created.
+     *
+     * @param call the call.
+     * @param connection its connection.
+     * @param newState {@link CallState#DIALING} or {@link CallState#RINGING}.
+     * @param request the connection request.
+     * @param caller the name of the calling method, for logging.
+     * @return {@code false} if the call was ended in the meantime, and the
+     * connection must be canceled.
+     */
+    private boolean startCall(
+            Call call, ConnectionImpl connection, int newState, ConnectionRequest request, String caller) {
+        // The connection is set first so that it's there for whoever sees the
+        // call dialing or ringing.
+        call.setConnection(connection);
+        if (!call.moveFrom(CallState.PENDING, newState)) {
+            Log.w(TAG, " " + caller + ": call " + call.getCallUUID() + " was ended, canceling");
+            getPhoneAccountPool(this).release(request.getAccountHandle());
+            return false;
+        }
+        return true;
+    }
 
-        Promise startCallPromise
-                = unregisterStartCallPromise(connection.getCallUUID());
+    private static void resolveStartCallPromise(Call call, String caller) {
+        Promise startCallPromise = call.takeStartCallPromise();
 
         if (startCallPromise != null) {
-            Log.d(TAG, " onCreateOutgoingConnection " + connection.getCallUUID());
+            Log.d(TAG, " " + caller + " " + call.getCallUUID());
             startCallPromise.resolve(null);
         } else {
-            Log.e(
-                    TAG, " onCreateOutgoingConnection: no start call Promise for " + connection.getCallUUID());
+            Log.e(TAG, " " + caller + ": no start call Promise for " + call.getCallUUID());
         }
-
-        return connection;
-    }
-
-    @Override
-    public Connection onCreateIncomingConnection(
-            PhoneAccountHandle accountHandle, ConnectionRequest request) {
-        throw new RuntimeException("Not implemented");
     }
 
     @Override
     public void onCreateIncomingConnectionFailed(
             PhoneAccountHandle accountHandle, ConnectionRequest request) {
-        throw new RuntimeException("Not implemented");
+        onCreateConnectionFailed(
+                request,
+                "CREATE_INCOMING_CALL_FAILED",
+                "onCreateIncomingConnectionFailed");
     }
 
     @Override
     public void onCreateOutgoingConnectionFailed(
             PhoneAccountHandle accountHandle, ConnectionRequest request) {
+        onCreateConnectionFailed(
+                request,
+                "CREATE_OUTGOING_CALL_FAILED",
+                "onCreateOutgoingConnectionFailed");
+    }
+
+    private void onCreateConnectionFailed(ConnectionRequest request, String code, String caller) {
         PhoneAccountHandle theAccountHandle = request.getAccountHandle();
-        String callUUID = theAccountHandle.getId();
+        String callUUID = getCallUUID(request);
 
-        Log.e(TAG, " onCreateOutgoingConnectionFailed " + callUUID);
+        Log.e(TAG, " " + caller + " " + callUUID);
 
         if (callUUID != null) {
-            Promise startCallPromise = unregisterStartCallPromise(callUUID);
+            Promise startCallPromise = removePendingCall(callUUID);
 
             if (startCallPromise != null) {
                 startCallPromise.reject(
-                        "CREATE_OUTGOING_CALL_FAILED",
+                        code,
                         "The request has been denied by the system");
             } else {
                 Log.e(TAG, " startCallFailed - no start call Promise for UUID: " + callUUID);
             }
         } else {
-            Log.e(TAG, " onCreateOutgoingConnectionFailed - no call UUID");
+            Log.e(TAG, " " + caller + " - no call UUID");
         }
 
-        unregisterPhoneAccount(theAccountHandle);
-    }
-
-    private void unregisterPhoneAccount(PhoneAccountHandle phoneAccountHandle) {
-        TelecomManager telecom = getSystemService(TelecomManager.class);
-        if (telecom != null) {
-            if (phoneAccountHandle != null) {
-                telecom.unregisterPhoneAccount(phoneAccountHandle);
-            } else {
-                Log.e(TAG, " unregisterPhoneAccount - account handle is null");
-            }
+        if (theAccountHandle != null) {
+            // Don't reuse an account the system denied.
+            getPhoneAccountPool(this).discard(theAccountHandle);
         } else {
-            Log.e(TAG, " unregisterPhoneAccount - telecom is null");
+            Log.e(TAG, " " + caller + " - account handle is null");
         }
     }
 
     /**
-     * Registers new {@link PhoneAccountHandle}.
+     * Gets the UUID of the call a connection is requested for.
      *
-     * @param context the current Android context.
-     * @param address the phone account's address. At the time of this writing
-     *        it's the call handle passed from the Java Script side.
-     * @param callUUID the call's UUID for which the account is to be created.
-     *        It will be used as the account's id.
-     * @return {@link PhoneAccountHandle} described by the given arguments.
+     * @param request the connection request.
+     * @return the call UUID, or {@code null} if missing.
      */
-    static PhoneAccountHandle registerPhoneAccount(
-            Context context, Uri address, String callUUID) {
-        PhoneAccountHandle phoneAccountHandle
-                = new PhoneAccountHandle(
-                new ComponentName(context, ConnectionService.class),
-                callUUID);
-
-        PhoneAccount.Builder builder
-                = PhoneAccount.builder(phoneAccountHandle, address.toString())
-                .setAddress(address)
-                .setCapabilities(PhoneAccount.CAPABILITY_SELF_MANAGED |
-                        PhoneAccount.CAPABILITY_VIDEO_CALLING |
-                        PhoneAccount.CAPABILITY_SUPPORTS_VIDEO_CALLING)
-                .addSupportedUriScheme(PhoneAccount.SCHEME_SIP);
-
-        PhoneAccount account = builder.build();
-
-        TelecomManager telecomManager
-                = context.getSystemService(TelecomManager.class);
-        telecomManager.registerPhoneAccount(account);
-
-        return phoneAccountHandle;
+    @Nullable
+    private static String getCallUUID(ConnectionRequest request) {
+        Bundle extras = request.getExtras();
+        return extras != null ? extras.getString(EXTRA_CALL_UUID) : null;
     }
 
     /**
@@ -356,19 +731,24 @@ public class ConnectionService extends android.telecom.ConnectionService {
          */
         @Override
         public void onDisconnect() {
-            Log.i(TAG, " onDisconnect " + getCallUUID());
-            /*
-            WritableNativeMap data = new WritableNativeMap();
-            data.putString("callUUID", getCallUUID());
-            ReactInstanceManagerHolder.emitEvent(
-                    "org.jitsi.meet:features/connection_service#disconnect",
-                    data);
-            */
-            // The JavaScript side will not go back to the native with
-            // 'endCall', so the Connection must be removed immediately.
-            setConnectionDisconnected(
-                    getCallUUID(),
-                    new DisconnectCause(DisconnectCause.LOCAL));
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onDisconnect");
+            try {
+                Log.i(TAG, " onDisconnect " + getCallUUID());
+                /*
+                WritableNativeMap data = new WritableNativeMap();
+                data.putString("callUUID", getCallUUID());
+                ReactInstanceManagerHolder.emitEvent(
+                        "org.jitsi.meet:features/connection_service#disconnect",
+                        data);
+                */
+                // The JavaScript side will not go back to the native with
+                // 'endCall', so the Connection must be removed immediately.
+                setConnectionDisconnected(
+                        getCallUUID(),
+                        new DisconnectCause(DisconnectCause.LOCAL));
+            } finally {
+                AudioTrace.end(tracer);
+            }
         }
 
         /**
@@ -378,28 +758,116 @@ public class ConnectionService extends android.telecom.ConnectionService {
          */
         @Override
         public void onAbort() {
-            Log.i(TAG, " onAbort " + getCallUUID());
-            /*
-            WritableNativeMap data = new WritableNativeMap();
-            data.putString("callUUID", getCallUUID());
-            ReactInstanceManagerHolder.emitEvent(
-                    "org.jitsi.meet:features/connection_service#abort",
-                    data);
-            */
-            // The JavaScript side will not go back to the native with
-            // 'endCall', so the Connection must be removed immediately.
-            setConnectionDisconnected(
-                    getCallUUID(),
-                    new DisconnectCause(DisconnectCause.CANCELED));
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onAbort");
+            try {
+                Log.i(TAG, " onAbort " + getCallUUID());
+                /*
+                WritableNativeMap data = new WritableNativeMap();
+                data.putString("callUUID", getCallUUID());
+                ReactInstanceManagerHolder.emitEvent(
+                        "org.jitsi.meet:features/connection_service#abort",
+                        data);
+                */
+                // The JavaScript side will not go back to the native with
+                // 'endCall', so the Connection must be removed immediately.
+                setConnectionDisconnected(
+                        getCallUUID(),
+                        new DisconnectCause(DisconnectCause.CANCELED));
+            } finally {
+                AudioTrace.end(tracer);
+            }
         }
 
+        /**
+         * Called when the system answers the ringing call, e.g. from a
+         * Bluetooth headset or a wearable. The JavaScript side is told with
+         * {@link RNConnectionService#ANSWER_EVENT}.
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void onAnswer(int videoState) {
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onAnswer");
+            try {
+                Log.i(TAG, " onAnswer " + getCallUUID());
+                String callUUID = getCallUUID();
+
+                if (answerCall(callUUID, AudioMetrics.now())) {
+                    emitCallEvent(RNConnectionService.ANSWER_EVENT, callUUID);
+                }
+            } finally {
+                AudioTrace.end(tracer);
+            }
+        }
+
+        /**
+         * Called when the system rejects the ringing call. The JavaScript side
+         * is told with {@link RNConnectionService#REJECT_EVENT}.
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void onReject() {
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onReject");
+            try {
+                Log.i(TAG, " onReject " + getCallUUID());
+                String callUUID = getCallUUID();
+
+                if (rejectCall(callUUID)) {
+                    emitCallEvent(RNConnectionService.REJECT_EVENT, callUUID);
+                }
+            } finally {
+                AudioTrace.end(tracer);
+            }
+        }
+
+        /**
+         * Called when the system holds the call, e.g. because a cellular call
+         * takes over. The JavaScript side is told with
+         * {@link RNConnectionService#HOLD_EVENT}.
+         *
+         * {@inheritDoc}
+         */
         @Override
         public void onHold() {
-            // What ?! Android will still call this method even if we do not add
-            // the HOLD capability, so do the same thing as on abort.
-            // TODO implement HOLD
-            Log.w(TAG, " onHold %s - HOLD is not supported, aborting the call..." + getCallUUID());
-            this.onAbort();
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onHold");
+            try {
+                String callUUID = getCallUUID();
+
+                Log.i(TAG, " onHold " + callUUID);
+                if (holdCall(callUUID)) {
+                    emitCallEvent(RNConnectionService.HOLD_EVENT, callUUID);
+                } else {
+                    // Android will still call this method for calls which can't
+                    // be held, e.g. not connected yet, so do the same thing as on
+                    // abort.
+                    Log.w(TAG, " onHold " + callUUID + " - the call can't be held, aborting it...");
+                    this.onAbort();
+                }
+            } finally {
+                AudioTrace.end(tracer);
+            }
+        }
+
+        /**
+         * Called when the system resumes the held call. The JavaScript side
+         * is told with {@link RNConnectionService#UNHOLD_EVENT}.
+         *
+         * {@inheritDoc}
+         */
+        @Override
+        public void onUnhold() {
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onUnhold");
+            try {
+                String callUUID = getCallUUID();
+
+                Log.i(TAG, " onUnhold " + callUUID);
+                if (unholdCall(callUUID, AudioMetrics.now())) {
+                    emitCallEvent(RNConnectionService.UNHOLD_EVENT, callUUID);
+                }
+            } finally {
+                AudioTrace.end(tracer);
+            }
         }
 
         /**
@@ -411,27 +879,47 @@ public class ConnectionService extends android.telecom.ConnectionService {
          */
         @Override
         public void onCallAudioStateChanged(CallAudioState state) {
-            Log.d(TAG, " onCallAudioStateChanged: " + state);
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onCallAudioStateChanged");
+            try {
+                Log.d(TAG, " onCallAudioStateChanged: " + state);
 
-            RNConnectionService module = ReactInstanceManagerHolder.getNativeModule(reactContext, RNConnectionService.class);
-            if (module != null) {
-                module.onCallAudioStateChange(state);
+                RNConnectionService rnConnectionService = module;
+                if (rnConnectionService != null) {
+                    rnConnectionService.onCallAudioStateChange(state);
+                }
+            } finally {
+                AudioTrace.end(tracer);
             }
         }
 
         /**
-         * Unregisters the account when the call is disconnected.
+         * Gives the account back to the pool when the call is disconnected.
          *
          * @param state - the new connection's state.
          */
         @Override
         public void onStateChanged(int state) {
-            Log.d(TAG,
-                    "onStateChanged: %s %s" + Connection.stateToString(state) + " " + getCallUUID());
+            AudioTrace.Tracer tracer = AudioTrace.begin("ConnectionImpl.onStateChanged");
+            try {
+                Log.d(TAG,
+                        "onStateChanged: %s %s" + Connection.stateToString(state) + " " + getCallUUID());
+
+                if (state == STATE_DISCONNECTED) {
+                    String callUUID = getCallUUID();
+                    Call call = calls.get(callUUID);
 
-            if (state == STATE_DISCONNECTED) {
-                removeConnection(this);
-                unregisterPhoneAccount(getPhoneAccountHandle());
+                    if (call != null && call.getConnection() == this) {
+                        call.moveTo(CallState.DISCONNECTED);
+                        calls.remove(callUUID, call);
+                        deactivateCall(callUUID);
+                    }
+                    PhoneAccountHandle phoneAccountHandle = getPhoneAccountHandle();
+                    if (phoneAccountHandle != null) {
+                        getPhoneAccountPool(ConnectionService.this).release(phoneAccountHandle);
+                    }
+                }
+            } finally {
+                AudioTrace.end(tracer);
             }
         }
 
@@ -441,7 +929,7 @@ public class ConnectionService extends android.telecom.ConnectionService {
          * @return call UUID
          */
         String getCallUUID() {
-            return getPhoneAccountHandle().getId();
+            return getExtras().getString(EXTRA_CALL_UUID);
         }
 
         private PhoneAccountHandle getPhoneAccountHandle() {
@@ -456,4 +944,127 @@ public class ConnectionService extends android.telecom.ConnectionService {
                     getAddress(), getCallUUID(), hashCode());
         }
     }
+
+    /**
+     * A call of the registry: its {@link CallState} and, once Telecom created
+     * it, its connection.
+     */
+    static final class Call {
+        private final String callUUID;
+
+        private final AtomicInteger state = new AtomicInteger(CallState.PENDING);
+
+        /**
+         * Resolved once the connection is created, or rejected if it fails to.
+         */
+        private final AtomicReference<Promise> startCallPromise;
+
+        private final long startTime;
+
+        private volatile ConnectionImpl connection;
+
+        /**
+         * The device the call's audio is routed to while it has it, see
+         * {@link AudioDevices}.
+         */
+        private volatile int audioDevice = AudioDevices.NONE;
+
+        Call(String callUUID, Promise startCallPromise, long startTime) {
+            this.callUUID = callUUID;
+            this.startCallPromise = new AtomicReference<>(startCallPromise);
+            this.startTime = startTime;
+        }
+
+        String getCallUUID() {
+            return callUUID;
+        }
+
+        /**
+         * @return the time the call was started at, see
+         * {@link AudioMetrics#now()}.
+         */
+        long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return the call's state, see {@link CallState}.
+         */
+        int getState() {
+            return state.get();
+        }
+
+        /**
+         * @return the call's connection, or {@code null} if not created yet.
+         */
+        @Nullable
+        ConnectionImpl getConnection() {
+            return connection;
+        }
+
+        void setConnection(ConnectionImpl connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * @return the device the call's audio is routed to while it has it,
+         * {@link AudioDevices#NONE} for the preferred one.
+         */
+        int getAudioDevice() {
+            return audioDevice;
+        }
+
+        void setAudioDevice(int audioDevice) {
+            this.audioDevice = audioDevice;
+        }
+
+        /**
+         * Moves the call to the given state, if the transition is allowed
+         * from the current one.
+         *
+         * @param newState the new state, see {@link CallState}.
+         * @return {@code true} if the call moved to the new state.
+         */
+        boolean moveTo(int newState) {
+            while (true) {
+                int current = state.get();
+
+                if (!CallState.canMove(current, newState)) {
+                    return false;
+                }
+                if (state.compareAndSet(current, newState)) {
+                    Log.d(TAG, " call " + callUUID + ": " + CallState.getName(current)
+                            + " -> " + CallState.getName(newState));
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Moves the call to the given state, only if it's in the expected one.
+         *
+         * @param expectedState the state the call must be in.
+         * @param newState the new state, see {@link CallState}.
+         * @return {@code true} if the call moved to the new state.
+         */
+        boolean moveFrom(int expectedState, int newState) {
+            if (!CallState.canMove(expectedState, newState)
+                    || !state.compareAndSet(expectedState, newState)) {
+                return false;
+            }
+            Log.d(TAG, " call " + callUUID + ": " + CallState.getName(expectedState)
+                    + " -> " + CallState.getName(newState));
+            return true;
+        }
+
+        /**
+         * Takes the start call Promise, which only one caller gets.
+         *
+         * @return the Promise, or {@code null} if already taken.
+         */
+        @Nullable
+        Promise takeStartCallPromise() {
+            return startCallPromise.getAndSet(null);
+        }
+    }
 }
@@ -0,0 +1,233 @@
+package com.reactnativeaudio;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.telecom.PhoneAccount;
+import android.telecom.PhoneAccountHandle;
+import android.telecom.TelecomManager;
+import android.util.Log;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Pool of the self-managed {@link PhoneAccount}s used for placing calls.
+ * Registering and unregistering an account are synchronous Telecom IPCs, so
+ * rather than doing both for every call the accounts are leased for the
+ * duration of a call and kept registered afterwards, to be reused by the next
+ * call with the same handle and capabilities.
+ *
+ * At most {@link #MAX_IDLE_ACCOUNTS} accounts are kept idle, the least
+ * recently used ones are unregistered beyond that. Accounts left registered
+ * by a previous process, e.g. one which crashed, are unregistered by
+ * {@link #removeStaleAccounts()}.
+ *
+ * Thread safe.
+ */
+@RequiresApi(api = Build.VERSION_CODES.O)
+class PhoneAccountPool {
+    private static final String TAG = ConnectionService.TAG;
+
+    /**
+     * Maximum number of idle accounts kept registered.
+     */
+    static final int MAX_IDLE_ACCOUNTS = 4;
+
+    /**
+     * Capabilities of the accounts used for calls.
+     */
+    static final int CAPABILITIES
+            = PhoneAccount.CAPABILITY_SELF_MANAGED
+                | PhoneAccount.CAPABILITY_VIDEO_CALLING
+                | PhoneAccount.CAPABILITY_SUPPORTS_VIDEO_CALLING;
+
+    /**
+     * An idle account and the key it was registered with.
+     */
+    private static final class IdleAccount {
+        final String key;
+        final PhoneAccountHandle handle;
+
+        IdleAccount(String key, PhoneAccountHandle handle) {
+            this.key = key;
+            this.handle = handle;
+        }
+    }
+
+    private final ComponentName componentName;
+
+    private final TelecomManager telecomManager;
+
+    /**
+     * Idle accounts, least recently returned first. Guarded by {@code this}.
+     */
+    private final ArrayDeque<IdleAccount> idleAccounts = new ArrayDeque<>();
+
+    /**
+     * Keys of the leased accounts, mapped by account id. Guarded by
+     * {@code this}.
+     */
+    private final Map<String, String> leasedAccounts = new HashMap<>();
+
+    PhoneAccountPool(Context context) {
+        componentName = new ComponentName(context, ConnectionService.class);
+        telecomManager = context.getSystemService(TelecomManager.class);
+    }
+
+    private static String getKey(Uri address, int capabilities) {
+        return capabilities + ":" + address;
+    }
+
+    /**
+     * Leases an account for a call, registering a new one only if no idle
+     * one matches.
+     *
+     * @param address the call handle, used as the account's address.
+     * @param capabilities the account's capabilities, see {@link PhoneAccount}.
+     * @return the account, to be given back with {@link #release} or
+     * {@link #discard} once the call is over.
+     */
+    PhoneAccountHandle lease(Uri address, int capabilities) {
+        String key = getKey(address, capabilities);
+
+        synchronized (this) {
+            // Most recently returned first, it's the most likely to still be
+            // in Telecom's caches.
+            Iterator<IdleAccount> it = idleAccounts.descendingIterator();
+            while (it.hasNext()) {
+                IdleAccount account = it.next();
+                if (account.key.equals(key)) {
+                    it.remove();
+                    leasedAccounts.put(account.handle.getId(), key);
+                    return account.handle;
+                }
+            }
+        }
+
+        PhoneAccountHandle handle
+                = new PhoneAccountHandle(componentName, UUID.randomUUID().toString());
+        PhoneAccount account
+                = PhoneAccount.builder(handle, address.toString())
+                .setAddress(address)
+                .setCapabilities(capabilities)
+                .addSupportedUriScheme(PhoneAccount.SCHEME_SIP)
+                .build();
+
+        // Leased before being registered, so that it's never taken as stale.
+        synchronized (this) {
+            leasedAccounts.put(handle.getId(), key);
+        }
+        try {
+            telecomManager.registerPhoneAccount(account);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                leasedAccounts.remove(handle.getId());
+            }
+            throw e;
+        }
+        return handle;
+    }
+
+    /**
+     * Registers an idle account for the given handle and capabilities ahead
+     * of time, unless there is one already, so that the next call with them
+     * doesn't wait for it.
+     *
+     * @param address the call handle.
+     * @param capabilities the account's capabilities, see {@link PhoneAccount}.
+     */
+    void prewarm(Uri address, int capabilities) {
+        release(lease(address, capabilities));
+    }
+
+    /**
+     * Gives back a leased account once its call is over, for reuse.
+     *
+     * @param handle the account.
+     */
+    void release(PhoneAccountHandle handle) {
+        IdleAccount evicted = null;
+
+        synchronized (this) {
+            String key = leasedAccounts.remove(handle.getId());
+
+            if (key == null) {
+                // Not leased, or already given back.
+                return;
+            }
+            idleAccounts.addLast(new IdleAccount(key, handle));
+            if (idleAccounts.size() > MAX_IDLE_ACCOUNTS) {
+                evicted = idleAccounts.removeFirst();
+            }
+        }
+
+        if (evicted != null) {
+            unregister(evicted.handle);
+        }
+    }
+
+    /**
+     * Gives back a leased account which must not be reused, e.g. because
+     * placing a call with it failed, and unregisters it.
+     *
+     * @param handle the account.
+     */
+    void discard(PhoneAccountHandle handle) {
+        synchronized (this) {
+            leasedAccounts.remove(handle.getId());
+        }
+        unregister(handle);
+    }
+
+    /**
+     * Unregisters the accounts of this app which aren't in the pool, left
+     * registered by a previous process.
+     */
+    void removeStaleAccounts() {
+        List<PhoneAccountHandle> handles;
+
+        try {
+            handles = telecomManager.getSelfManagedPhoneAccounts();
+        } catch (Throwable tr) {
+            Log.w(TAG, " removeStaleAccounts - failed to get the phone accounts", tr);
+            return;
+        }
+
+        for (PhoneAccountHandle handle : handles) {
+            if (componentName.equals(handle.getComponentName()) && !isKnown(handle)) {
+                Log.d(TAG, " removeStaleAccounts - unregistering " + handle.getId());
+                unregister(handle);
+            }
+        }
+    }
+
+    private synchronized boolean isKnown(PhoneAccountHandle handle) {
+        if (leasedAccounts.containsKey(handle.getId())) {
+            return true;
+        }
+        for (IdleAccount account : idleAccounts) {
+            if (account.handle.equals(handle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unregister(PhoneAccountHandle handle) {
+        try {
+            telecomManager.unregisterPhoneAccount(handle);
+        } catch (Throwable tr) {
+            // UnsupportedOperationException: System does not support feature
+            // android.software.connectionservice was observed here. Ignore.
+            Log.w(TAG, " failed to unregister the phone account", tr);
+        }
+    }
+}
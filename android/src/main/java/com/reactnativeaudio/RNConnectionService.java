@@ -12,15 +12,20 @@ import android.telecom.TelecomManager;
 import android.telecom.VideoProfile;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * The react-native side of Jitsi Meet's {@link ConnectionService}. Exposes
  * the Java Script API.
@@ -29,30 +34,79 @@ import com.facebook.react.module.annotations.ReactModule;
  */
 @RequiresApi(api = Build.VERSION_CODES.O)
 @ReactModule(name = RNConnectionService.NAME)
-public class RNConnectionService extends ReactContextBaseJavaModule {
+public class RNConnectionService extends ConnectionServiceSpec {
 
     public static final String NAME = "ConnectionService";
 
     private static final String TAG = ConnectionService.TAG;
 
+    /**
+     * Event emitted when the system answers a ringing incoming call, e.g.
+     * from a Bluetooth headset. Its data holds the {@code callUUID}.
+     */
+    static final String ANSWER_EVENT = "connection-service#answer";
+
+    /**
+     * Event emitted when the system rejects a ringing incoming call. Its data
+     * holds the {@code callUUID}.
+     */
+    static final String REJECT_EVENT = "connection-service#reject";
+
+    /**
+     * Event emitted when the system puts a call on hold, e.g. because a
+     * cellular call takes over. Its data holds the {@code callUUID}.
+     */
+    static final String HOLD_EVENT = "connection-service#hold";
+
+    /**
+     * Event emitted when the system resumes a held call. Its data holds the
+     * {@code callUUID}.
+     */
+    static final String UNHOLD_EVENT = "connection-service#unhold";
+
     /**
      * Handler for dealing with call state changes. We are acting as a proxy between ConnectionService
      * and other modules such as {@link AudioModule}.
      */
-    private CallAudioStateListener callAudioStateListener;
+    private volatile CallAudioStateListener callAudioStateListener;
 
-    private final ReactApplicationContext reactContext;
+    /**
+     * The {@link AudioModule} of the same React instance, looked up on first
+     * use, see {@link #getAudioModule()}. Cleared by {@link #invalidate()}.
+     */
+    private volatile AudioModule audioModule;
 
     /**
-     * Sets the audio route on all existing {@link android.telecom.Connection}s
+     * Sets the audio route on the {@link android.telecom.Connection} of the
+     * call which has the audio, see {@link CallArbiter}. Unused while
+     * {@link AudioDeviceHandlerConnectionService#setAudioRoute(int)} leaves
+     * the route to Telecom.
      *
      * @param audioRoute the new audio route to be set. See
      * {@link android.telecom.CallAudioState} constants prefixed with "ROUTE_".
      */
     @RequiresApi(api = Build.VERSION_CODES.O)
     static void setAudioRoute(int audioRoute) {
-        for (ConnectionService.ConnectionImpl c
-                : ConnectionService.getConnections()) {
+        String callUUID = ConnectionService.getCallArbiter().getForegroundCall();
+
+        if (callUUID != null) {
+            setAudioRoute(callUUID, audioRoute);
+        }
+    }
+
+    /**
+     * Sets the audio route on the {@link android.telecom.Connection} of the
+     * given call.
+     *
+     * @param callUUID the call's UUID.
+     * @param audioRoute the new audio route to be set. See
+     * {@link android.telecom.CallAudioState} constants prefixed with "ROUTE_".
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    static void setAudioRoute(String callUUID, int audioRoute) {
+        ConnectionService.ConnectionImpl c = ConnectionService.getConnection(callUUID);
+
+        if (c != null) {
             c.setAudioRoute(audioRoute);
         }
     }
@@ -60,7 +114,27 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
     RNConnectionService(ReactApplicationContext reactContext) {
         super(reactContext);
 
-        this.reactContext = reactContext;
+        // Replaces the previous instance, if the React instance was reloaded.
+        ConnectionService.setModule(this);
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+
+        // Accounts of a previous process which didn't get to unregister them,
+        // e.g. because it crashed.
+        final ReactApplicationContext ctx = getReactApplicationContext();
+        ctx.runOnNativeModulesQueueThread(
+                () -> ConnectionService.getPhoneAccountPool(ctx).removeStaleAccounts());
+    }
+
+    @Override
+    public void invalidate() {
+        // Don't keep the module of a destroyed React instance.
+        audioModule = null;
+
+        super.invalidate();
     }
 
     /**
@@ -78,22 +152,25 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
      * be rejected.
      */
     @SuppressLint("MissingPermission")
+    @Override
     @ReactMethod
     public void startCall(
             String callUUID,
             String handle,
             boolean hasVideo,
             Promise promise) {
+        long startTime = AudioMetrics.now();
+
         Log.d(TAG, "startCall UUID=" + callUUID + ", h=" + handle + ", v=" + hasVideo);
 
         ReactApplicationContext ctx = getReactApplicationContext();
 
         Uri address = Uri.fromParts(PhoneAccount.SCHEME_SIP, handle, null);
+        PhoneAccountPool phoneAccountPool = ConnectionService.getPhoneAccountPool(ctx);
         PhoneAccountHandle accountHandle;
 
         try {
-            accountHandle
-                    = ConnectionService.registerPhoneAccount(getReactApplicationContext(), address, callUUID);
+            accountHandle = phoneAccountPool.lease(address, PhoneAccountPool.CAPABILITIES);
         } catch (Throwable tr) {
             Log.e(TAG, " error in startCall");
 
@@ -111,33 +188,219 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
                         ? VideoProfile.STATE_BIDIRECTIONAL
                         : VideoProfile.STATE_AUDIO_ONLY);
 
-        ConnectionService.registerStartCallPromise(reactContext, callUUID, promise);
+        // The account may be shared with other calls, the call is identified
+        // by its own extra.
+        Bundle outgoingCallExtras = new Bundle();
+        outgoingCallExtras.putString(ConnectionService.EXTRA_CALL_UUID, callUUID);
+        extras.putBundle(TelecomManager.EXTRA_OUTGOING_CALL_EXTRAS, outgoingCallExtras);
 
-        TelecomManager tm = null;
+        ConnectionService.registerStartCallPromise(callUUID, promise, startTime);
 
         try {
-            tm = (TelecomManager) ctx.getSystemService(Context.TELECOM_SERVICE);
+            TelecomManager tm = (TelecomManager) ctx.getSystemService(Context.TELECOM_SERVICE);
             tm.placeCall(address, extras);
+            recordStartCallLatency(AudioMetrics.STAGE_HANDLER, AudioMetrics.now() - startTime);
         } catch (Throwable tr) {
             Log.e(TAG, " error in startCall");
-            if (tm != null) {
-                try {
-                    tm.unregisterPhoneAccount(accountHandle);
-                } catch (Throwable tr1) {
-                    // UnsupportedOperationException: System does not support feature android.software.connectionservice
-                    // was observed here. Ignore.
-                }
-            }
-            ConnectionService.unregisterStartCallPromise(callUUID);
+            phoneAccountPool.discard(accountHandle);
+            ConnectionService.removePendingCall(callUUID);
             promise.reject(tr);
         }
     }
 
+    /**
+     * Reports a new incoming call, e.g. upon receiving its push notification.
+     * The phone account is taken from the pool, so if one was registered by
+     * {@link #prewarm} for the handle no registration is needed.
+     *
+     * @param callUUID - unique call identifier.
+     * @param handle - the call handle, e.g. the caller's address.
+     * @param hasVideo - whether or not the call is offered with video.
+     * @param promise - resolved once the connection is created and ringing,
+     *        rejected if the system refuses the call.
+     */
+    @SuppressLint("MissingPermission")
+    @Override
+    @ReactMethod
+    public void reportIncomingCall(
+            String callUUID,
+            String handle,
+            boolean hasVideo,
+            Promise promise) {
+        long startTime = AudioMetrics.now();
+
+        Log.d(TAG, "reportIncomingCall UUID=" + callUUID + ", h=" + handle + ", v=" + hasVideo);
+
+        ReactApplicationContext ctx = getReactApplicationContext();
+
+        Uri address = Uri.fromParts(PhoneAccount.SCHEME_SIP, handle, null);
+        PhoneAccountPool phoneAccountPool = ConnectionService.getPhoneAccountPool(ctx);
+        PhoneAccountHandle accountHandle;
+
+        try {
+            accountHandle = phoneAccountPool.lease(address, PhoneAccountPool.CAPABILITIES);
+        } catch (Throwable tr) {
+            Log.e(TAG, " error in reportIncomingCall");
+
+            promise.reject(tr);
+            return;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putParcelable(
+                TelecomManager.EXTRA_INCOMING_CALL_ADDRESS,
+                address);
+        extras.putInt(
+                TelecomManager.EXTRA_INCOMING_VIDEO_STATE,
+                hasVideo
+                        ? VideoProfile.STATE_BIDIRECTIONAL
+                        : VideoProfile.STATE_AUDIO_ONLY);
+        extras.putString(ConnectionService.EXTRA_CALL_UUID, callUUID);
+
+        ConnectionService.registerStartCallPromise(callUUID, promise, startTime);
+
+        try {
+            TelecomManager tm = (TelecomManager) ctx.getSystemService(Context.TELECOM_SERVICE);
+            tm.addNewIncomingCall(accountHandle, extras);
+            recordLatency(
+                    AudioMetrics.OP_INCOMING_CALL,
+                    AudioMetrics.STAGE_HANDLER,
+                    AudioMetrics.now() - startTime);
+        } catch (Throwable tr) {
+            Log.e(TAG, " error in reportIncomingCall");
+            phoneAccountPool.discard(accountHandle);
+            ConnectionService.removePendingCall(callUUID);
+            promise.reject(tr);
+        }
+    }
+
+    /**
+     * Called by the JS side of things to answer a ringing incoming call. The
+     * audio is routed to the call right away.
+     *
+     * @param callUUID - the call's UUID.
+     * @param promise - resolved once the call is active.
+     */
+    @Override
+    @ReactMethod
+    public void answerCall(String callUUID, Promise promise) {
+        Log.d(TAG, " answerCall " + callUUID);
+        if (ConnectionService.answerCall(callUUID, AudioMetrics.now())) {
+            promise.resolve(null);
+        } else {
+            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Ringing connection wasn't found.");
+        }
+    }
+
+    /**
+     * Called by the JS side of things to reject a ringing incoming call.
+     *
+     * @param callUUID - the call's UUID.
+     * @param promise - resolved once the call is rejected.
+     */
+    @Override
+    @ReactMethod
+    public void rejectCall(String callUUID, Promise promise) {
+        Log.d(TAG, " rejectCall " + callUUID);
+        if (ConnectionService.rejectCall(callUUID)) {
+            promise.resolve(null);
+        } else {
+            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Ringing connection wasn't found.");
+        }
+    }
+
+    /**
+     * Called by the JS side of things to put an active call on hold.
+     *
+     * @param callUUID - the call's UUID.
+     * @param promise - resolved once the call is on hold.
+     */
+    @Override
+    @ReactMethod
+    public void holdCall(String callUUID, Promise promise) {
+        Log.d(TAG, " holdCall " + callUUID);
+        if (ConnectionService.holdCall(callUUID)) {
+            promise.resolve(null);
+        } else {
+            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Active connection wasn't found.");
+        }
+    }
+
+    /**
+     * Called by the JS side of things to resume a held call. Its audio focus
+     * and route are restored.
+     *
+     * @param callUUID - the call's UUID.
+     * @param promise - resolved once the call is active again.
+     */
+    @Override
+    @ReactMethod
+    public void unholdCall(String callUUID, Promise promise) {
+        Log.d(TAG, " unholdCall " + callUUID);
+        if (ConnectionService.unholdCall(callUUID, AudioMetrics.now())) {
+            promise.resolve(null);
+        } else {
+            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Held connection wasn't found.");
+        }
+    }
+
+    /**
+     * Called by the JS side of things to give an active call the audio. The
+     * other active calls are put on hold or stay active in the background,
+     * depending on the arbitration policy.
+     *
+     * @param callUUID - the call's UUID.
+     * @param promise - resolved once the call has the audio.
+     */
+    @Override
+    @ReactMethod
+    public void setForegroundCall(String callUUID, Promise promise) {
+        Log.d(TAG, " setForegroundCall " + callUUID);
+        if (ConnectionService.setForegroundCall(callUUID)) {
+            promise.resolve(null);
+        } else {
+            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Active connection wasn't found.");
+        }
+    }
+
+    /**
+     * Called by the JS side of things to choose the audio device of a call,
+     * which is used whenever the call has the audio.
+     *
+     * @param callUUID - the call's UUID.
+     * @param deviceName - the device, see {@link AudioDevices}, or
+     *        {@code null} for the preferred one.
+     */
+    @Override
+    @ReactMethod
+    public void setCallAudioDevice(String callUUID, @Nullable String deviceName) {
+        Log.d(TAG, " setCallAudioDevice " + callUUID + " " + deviceName);
+        ConnectionService.setCallAudioDevice(callUUID, AudioDevices.fromName(deviceName));
+    }
+
+    /**
+     * Called by the JS side of things to choose what happens to the other
+     * active calls when one is activated.
+     *
+     * @param policy - {@code ARBITRATION_HOLD_OTHERS} or
+     *        {@code ARBITRATION_KEEP_OTHERS}, see {@link CallArbiter}.
+     */
+    @Override
+    @ReactMethod
+    public void setArbitrationPolicy(double policy) {
+        if (CallArbiter.isValidPolicy((int) policy)) {
+            ConnectionService.getCallArbiter().setPolicy((int) policy);
+        } else {
+            Log.e(TAG, " setArbitrationPolicy - invalid policy " + policy);
+        }
+    }
+
     /**
      * Called by the JS side of things to mark the call as failed.
      *
      * @param callUUID - the call's UUID.
      */
+    @Override
     @ReactMethod
     public void reportCallFailed(String callUUID) {
         Log.d(TAG, " reportCallFailed " + callUUID);
@@ -151,6 +414,7 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
      *
      * @param callUUID - the call's UUID.
      */
+    @Override
     @ReactMethod
     public void endCall(String callUUID) {
         Log.d(TAG, " endCall " + callUUID);
@@ -160,17 +424,44 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
     }
 
     /**
-     * Called by the JS side of things to mark the call as active.
+     * Called by the JS side of things to mark a dialing outgoing call as
+     * active.
      *
      * @param callUUID - the call's UUID.
+     * @param promise - resolved once the call is active.
      */
+    @Override
     @ReactMethod
     public void reportConnectedOutgoingCall(String callUUID, Promise promise) {
         Log.d(TAG, " reportConnectedOutgoingCall " + callUUID);
         if (ConnectionService.setConnectionActive(callUUID)) {
             promise.resolve(null);
         } else {
-            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Connection wasn't found.");
+            promise.reject("CONNECTION_NOT_FOUND_ERROR", "Dialing connection wasn't found.");
+        }
+    }
+
+    /**
+     * Called by the JS side ahead of a call, so that it starts faster. Looks
+     * up the system services and, if the handle is known, registers the
+     * phone account to be used.
+     *
+     * @param handle - the call handle of the upcoming call, or {@code null}.
+     */
+    @Override
+    @ReactMethod
+    public void prewarm(@Nullable String handle) {
+        PhoneAccountPool phoneAccountPool
+                = ConnectionService.getPhoneAccountPool(getReactApplicationContext());
+
+        if (handle != null) {
+            try {
+                phoneAccountPool.prewarm(
+                        Uri.fromParts(PhoneAccount.SCHEME_SIP, handle, null),
+                        PhoneAccountPool.CAPABILITIES);
+            } catch (Throwable tr) {
+                Log.w(TAG, " prewarm - failed to register the phone account", tr);
+            }
         }
     }
 
@@ -179,6 +470,42 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
         return NAME;
     }
 
+    @Override
+    protected Map<String, Object> getTypedExportedConstants() {
+        Map<String, Object> constants = new HashMap<>();
+
+        constants.put("ANSWER_EVENT", ANSWER_EVENT);
+        constants.put("REJECT_EVENT", REJECT_EVENT);
+        constants.put("HOLD_EVENT", HOLD_EVENT);
+        constants.put("UNHOLD_EVENT", UNHOLD_EVENT);
+        constants.put("ARBITRATION_HOLD_OTHERS", CallArbiter.POLICY_HOLD_OTHERS);
+        constants.put("ARBITRATION_KEEP_OTHERS", CallArbiter.POLICY_KEEP_OTHERS);
+
+        return constants;
+    }
+
+    /**
+     * Called by {@code NativeEventEmitter}, the events are emitted regardless.
+     *
+     * @param eventName the event subscribed to.
+     */
+    @Override
+    @ReactMethod
+    public void addListener(String eventName) {
+        // Nothing to do.
+    }
+
+    /**
+     * Called by {@code NativeEventEmitter}, the events are emitted regardless.
+     *
+     * @param count the number of listeners removed.
+     */
+    @Override
+    @ReactMethod
+    public void removeListeners(double count) {
+        // Nothing to do.
+    }
+
     /**
      * Called by the JS side to update the call's state.
      *
@@ -188,6 +515,7 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
      * prefixed with "KEY_" for the values supported by the Android
      * implementation.
      */
+    @Override
     @ReactMethod
     public void updateCall(String callUUID, ReadableMap callState) {
         ConnectionService.updateCall(callUUID, callState);
@@ -201,6 +529,120 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
         this.callAudioStateListener = callAudioStateListener;
     }
 
+    /**
+     * Called by {@link ConnectionService} once the connection of a call
+     * started with {@link #startCall} is created.
+     *
+     * @param latency the time elapsed since the call was started, in
+     * nanoseconds.
+     */
+    void onOutgoingConnectionCreated(long latency) {
+        recordStartCallLatency(AudioMetrics.STAGE_CONFIRMED, latency);
+    }
+
+    /**
+     * Called by {@link ConnectionService} once the connection of a call
+     * reported with {@link #reportIncomingCall} is created and ringing.
+     *
+     * @param latency the time elapsed since the call was reported, in
+     * nanoseconds.
+     */
+    void onIncomingConnectionCreated(long latency) {
+        recordLatency(AudioMetrics.OP_INCOMING_CALL, AudioMetrics.STAGE_CONFIRMED, latency);
+    }
+
+    /**
+     * Called by {@link ConnectionService} when another call gets the audio,
+     * or an incoming call is answered, to set the audio mode for it without
+     * waiting for the JS side.
+     *
+     * @param videoState the call's video state, see {@link VideoProfile}.
+     * @param op the operation to time the mode change as, see
+     * {@link AudioMetrics}.
+     * @param startTime the time the call got the audio at, see
+     * {@link AudioMetrics#now()}.
+     */
+    void onForegroundCallChanged(int videoState, int op, long startTime) {
+        AudioModule audioModule = getAudioModule();
+        if (audioModule != null) {
+            audioModule.setCallMode(
+                    VideoProfile.isVideo(videoState) ? AudioModule.VIDEO_CALL : AudioModule.AUDIO_CALL,
+                    op,
+                    startTime);
+        }
+    }
+
+    /**
+     * Called by {@link ConnectionService} to route the audio to the device of
+     * the call which has it.
+     *
+     * @param device the device, see {@link AudioDevices}, or
+     * {@link AudioDevices#NONE} for the preferred one.
+     * @param startTime the time the device was chosen at, see
+     * {@link AudioMetrics#now()}.
+     */
+    void onForegroundAudioDeviceChanged(int device, long startTime) {
+        AudioModule audioModule = getAudioModule();
+        if (audioModule != null) {
+            audioModule.setCallAudioDevice(device, startTime);
+        }
+    }
+
+    /**
+     * Called by {@link ConnectionService} once a held call is resumed, to
+     * restore its audio focus and route.
+     *
+     * @param resumeTime the time the call was resumed at, see
+     * {@link AudioMetrics#now()}.
+     */
+    void onCallResumed(long resumeTime) {
+        AudioModule audioModule = getAudioModule();
+        if (audioModule != null) {
+            audioModule.resumeCall(resumeTime);
+        }
+    }
+
+    /**
+     * Sends an event about a call to the JS side.
+     *
+     * @param eventName the event's name, e.g. {@link #ANSWER_EVENT}.
+     * @param callUUID the call's UUID.
+     */
+    void emitCallEvent(String eventName, String callUUID) {
+        WritableMap data = Arguments.createMap();
+        data.putString("callUUID", callUUID);
+        ReactInstanceManagerHolder.emitEvent(getReactApplicationContext(), eventName, data);
+    }
+
+    /**
+     * Gets the {@link AudioModule}, which is only looked up once, as it's
+     * needed on every call state change.
+     *
+     * @return the module, or {@code null} if there is none yet.
+     */
+    @Nullable
+    private AudioModule getAudioModule() {
+        AudioModule module = audioModule;
+
+        if (module == null) {
+            module = ReactInstanceManagerHolder.getNativeModule(
+                    getReactApplicationContext(), AudioModule.class);
+            audioModule = module;
+        }
+        return module;
+    }
+
+    private void recordStartCallLatency(int stage, long latency) {
+        recordLatency(AudioMetrics.OP_START_CALL, stage, latency);
+    }
+
+    private void recordLatency(int op, int stage, long latency) {
+        AudioModule audioModule = getAudioModule();
+        if (audioModule != null) {
+            audioModule.recordLatency(op, stage, latency);
+        }
+    }
+
     /**
      * Handler for call state changes. {@code ConnectionServiceImpl} will call this handler when the
      * call audio state changes.
@@ -208,8 +650,9 @@ public class RNConnectionService extends ReactContextBaseJavaModule {
      * @param callAudioState The current call's audio state.
      */
     void onCallAudioStateChange(android.telecom.CallAudioState callAudioState) {
-        if (callAudioStateListener != null) {
-            callAudioStateListener.onCallAudioStateChange(callAudioState);
+        CallAudioStateListener listener = callAudioStateListener;
+        if (listener != null) {
+            listener.onCallAudioStateChange(callAudioState);
         }
     }
 
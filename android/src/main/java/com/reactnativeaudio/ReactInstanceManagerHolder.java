@@ -24,12 +24,34 @@ public class ReactInstanceManagerHolder {
     }
 
     /**
-     * Helper function to send an event to JavaScript.
+     * Emitter batching the events, {@code null} while they are sent one by
+     * one.
+     */
+    private static volatile BatchedEventEmitter batchedEventEmitter;
+
+    /**
+     * Helper function to send an event to JavaScript. While batching is
+     * enabled, see {@link #setEventBatching}, the event is sent along with
+     * the others of its batch.
      *
      * @param eventName {@code String} containing the event name.
      * @param data {@code Object} optional ancillary data for the event.
      */
     static void emitEvent(ReactContext reactContext, String eventName, @Nullable Object data) {
+        BatchedEventEmitter emitter = batchedEventEmitter;
+
+        if (emitter == null || !emitter.emit(reactContext, eventName, data)) {
+            emitEventNow(reactContext, eventName, data);
+        }
+    }
+
+    /**
+     * Sends an event to JavaScript right away, bypassing the batching.
+     *
+     * @param eventName {@code String} containing the event name.
+     * @param data {@code Object} optional ancillary data for the event.
+     */
+    static void emitEventNow(ReactContext reactContext, String eventName, @Nullable Object data) {
         if (reactContext != null) {
             reactContext
                     .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
@@ -37,6 +59,35 @@ public class ReactInstanceManagerHolder {
         }
     }
 
+    /**
+     * Enables or disables sending the events of a context in batches, see
+     * {@link BatchedEventEmitter}. The pending batch is sent when batching is
+     * disabled or its interval changes.
+     *
+     * @param reactContext the context whose events are to be batched.
+     * @param enabled whether the events are to be batched.
+     * @param intervalMs the time the events are accumulated for, {@code 0}
+     * for sending them once per frame.
+     */
+    static synchronized void setEventBatching(ReactContext reactContext, boolean enabled, int intervalMs) {
+        BatchedEventEmitter previous = batchedEventEmitter;
+
+        batchedEventEmitter = enabled ? new BatchedEventEmitter(reactContext, intervalMs) : null;
+        if (previous != null) {
+            previous.flush();
+        }
+    }
+
+    /**
+     * @return the number of device list events which were not sent because a
+     * later one was batched with them, since the last call.
+     */
+    static int takeMergedEvents() {
+        BatchedEventEmitter emitter = batchedEventEmitter;
+
+        return emitter != null ? emitter.takeMerged() : 0;
+    }
+
     /**
      * Finds a native React module for given class.
      *
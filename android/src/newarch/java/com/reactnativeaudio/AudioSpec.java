@@ -0,0 +1,13 @@
+package com.reactnativeaudio;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+/**
+ * Base of {@link AudioModule} on the new architecture: the TurboModule spec
+ * generated from src/NativeAudio.ts.
+ */
+abstract class AudioSpec extends NativeAudioSpec {
+    AudioSpec(ReactApplicationContext context) {
+        super(context);
+    }
+}
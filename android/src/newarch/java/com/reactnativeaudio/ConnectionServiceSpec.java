@@ -0,0 +1,13 @@
+package com.reactnativeaudio;
+
+import com.facebook.react.bridge.ReactApplicationContext;
+
+/**
+ * Base of {@link RNConnectionService} on the new architecture: the
+ * TurboModule spec generated from src/NativeConnectionService.ts.
+ */
+abstract class ConnectionServiceSpec extends NativeConnectionServiceSpec {
+    ConnectionServiceSpec(ReactApplicationContext context) {
+        super(context);
+    }
+}
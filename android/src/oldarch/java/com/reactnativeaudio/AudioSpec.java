@@ -0,0 +1,68 @@
+package com.reactnativeaudio;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Map;
+
+/**
+ * Base of {@link AudioModule} on the old architecture. Mirrors the
+ * {@code NativeAudioSpec} class generated from src/NativeAudio.ts on the new
+ * architecture, so that the module is written once for both.
+ */
+abstract class AudioSpec extends ReactContextBaseJavaModule {
+    AudioSpec(ReactApplicationContext context) {
+        super(context);
+    }
+
+    protected abstract Map<String, Object> getTypedExportedConstants();
+
+    @Override
+    public final @Nullable Map<String, Object> getConstants() {
+        return getTypedExportedConstants();
+    }
+
+    public abstract void multiply(double a, double b, Promise promise);
+
+    public abstract void setAudioDevice(String deviceName);
+
+    public abstract void setMode(double mode, Promise promise);
+
+    public abstract void setDeviceChangeCoalesceWindow(double windowMs);
+
+    public abstract void setEventBatching(boolean enabled, double intervalMs);
+
+    public abstract void setCompactDeviceUpdates(boolean compact);
+
+    public abstract void setTracingEnabled(boolean enabled);
+
+    public abstract void setAudioThreadWatchdog(double thresholdMs);
+
+    public abstract void getDeviceChangeStats(Promise promise);
+
+    public abstract void getAudioMetrics(boolean reset, Promise promise);
+
+    public abstract void setRoutingPolicy(double mode, ReadableArray devices, Promise promise);
+
+    public abstract void setUseConnectionService(boolean use);
+
+    public abstract double getMode();
+
+    public abstract @Nullable String getSelectedDevice();
+
+    public abstract WritableArray getAvailableDevices();
+
+    public abstract WritableMap getAudioState();
+
+    public abstract void prewarm(Promise promise);
+
+    public abstract void addListener(String eventName);
+
+    public abstract void removeListeners(double count);
+}
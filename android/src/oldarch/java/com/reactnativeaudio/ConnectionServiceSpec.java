@@ -0,0 +1,60 @@
+package com.reactnativeaudio;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Map;
+
+/**
+ * Base of {@link RNConnectionService} on the old architecture. Mirrors the
+ * {@code NativeConnectionServiceSpec} class generated from
+ * src/NativeConnectionService.ts on the new architecture.
+ */
+abstract class ConnectionServiceSpec extends ReactContextBaseJavaModule {
+    ConnectionServiceSpec(ReactApplicationContext context) {
+        super(context);
+    }
+
+    protected abstract Map<String, Object> getTypedExportedConstants();
+
+    @Override
+    public final @Nullable Map<String, Object> getConstants() {
+        return getTypedExportedConstants();
+    }
+
+    public abstract void startCall(String callUUID, String handle, boolean hasVideo, Promise promise);
+
+    public abstract void reportIncomingCall(String callUUID, String handle, boolean hasVideo, Promise promise);
+
+    public abstract void answerCall(String callUUID, Promise promise);
+
+    public abstract void rejectCall(String callUUID, Promise promise);
+
+    public abstract void holdCall(String callUUID, Promise promise);
+
+    public abstract void unholdCall(String callUUID, Promise promise);
+
+    public abstract void setForegroundCall(String callUUID, Promise promise);
+
+    public abstract void setCallAudioDevice(String callUUID, @Nullable String deviceName);
+
+    public abstract void setArbitrationPolicy(double policy);
+
+    public abstract void reportCallFailed(String callUUID);
+
+    public abstract void endCall(String callUUID);
+
+    public abstract void reportConnectedOutgoingCall(String callUUID, Promise promise);
+
+    public abstract void updateCall(String callUUID, ReadableMap callState);
+
+    public abstract void prewarm(@Nullable String handle);
+
+    public abstract void addListener(String eventName);
+
+    public abstract void removeListeners(double count);
+}
@@ -0,0 +1,46 @@
+import { NativeModules, Platform } from 'react-native';
+
+const LINKING_ERROR =
+  `The package 'react-native-audio-library' doesn't seem to be linked. Make sure: \n\n` +
+  Platform.select({ ios: "- You have run 'pod install'\n", default: '' }) +
+  '- You rebuilt the app after installing the package\n' +
+  '- You are not using Expo managed workflow\n';
+
+// @ts-expect-error
+const isTurboModuleEnabled = global.__turboModuleProxy != null;
+
+const AudioModule = isTurboModuleEnabled
+  ? require('./NativeAudio').default
+  : NativeModules.Audio;
+
+/**
+ * The native Audio module, the TurboModule when running on the new
+ * architecture and the bridge module otherwise.
+ */
+const Audio = AudioModule
+  ? AudioModule
+  : new Proxy(
+      {},
+      {
+        get() {
+          throw new Error(LINKING_ERROR);
+        },
+      }
+    );
+
+export default Audio;
+
+let audioConstants: any = null;
+
+/**
+ * Gets the constants exported by the native module. TurboModules only expose
+ * them through getConstants(). Looked up on first use, so that importing the
+ * package doesn't throw when the native module isn't linked.
+ */
+export function getAudioConstants(): any {
+  if (audioConstants === null) {
+    audioConstants =
+      typeof Audio.getConstants === 'function' ? Audio.getConstants() : Audio;
+  }
+  return audioConstants;
+}
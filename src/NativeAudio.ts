@@ -0,0 +1,55 @@
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+export interface Spec extends TurboModule {
+  getConstants(): {
+    DEVICE_CHANGE_EVENT: string;
+    DEFAULT: number;
+    AUDIO_CALL: number;
+    VIDEO_CALL: number;
+    SUPERSEDED: string;
+    EVENT_BATCH_EVENT: string;
+    AUDIO_THREAD_STALL_EVENT: string;
+    // The device type bits of the compact device updates.
+    DEVICES: {
+      BLUETOOTH: number;
+      EARPIECE: number;
+      HEADPHONES: number;
+      SPEAKER: number;
+    };
+    // iOS only.
+    SILENT?: number;
+  };
+
+  multiply(a: number, b: number): Promise<number>;
+  setAudioDevice(deviceName: string): void;
+  setMode(mode: number): Promise<void>;
+  setDeviceChangeCoalesceWindow(windowMs: number): void;
+  setEventBatching(enabled: boolean, intervalMs: number): void;
+  setCompactDeviceUpdates(compact: boolean): void;
+  setTracingEnabled(enabled: boolean): void;
+  setAudioThreadWatchdog(thresholdMs: number): void;
+  getDeviceChangeStats(): Promise<Object>;
+  getAudioMetrics(reset: boolean): Promise<Object>;
+  setRoutingPolicy(mode: number, devices: Array<string>): Promise<void>;
+  setUseConnectionService(use: boolean): void;
+  prewarm(): Promise<void>;
+
+  // Synchronous getters of the current routing state.
+  getMode(): number;
+  getSelectedDevice(): string | null;
+  getAvailableDevices(): Array<string>;
+  getAudioState(): {
+    mode: number;
+    devices: Array<{ type: string; selected: boolean }>;
+    selectedDevice: string | null;
+    userSelectedDevice: string | null;
+    version: number;
+  };
+
+  // NativeEventEmitter support.
+  addListener(eventName: string): void;
+  removeListeners(count: number): void;
+}
+
+export default TurboModuleRegistry.get<Spec>('Audio');
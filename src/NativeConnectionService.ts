@@ -0,0 +1,38 @@
+import type { TurboModule } from 'react-native';
+import { TurboModuleRegistry } from 'react-native';
+
+export interface Spec extends TurboModule {
+  getConstants(): {
+    ANSWER_EVENT: string;
+    REJECT_EVENT: string;
+    HOLD_EVENT: string;
+    UNHOLD_EVENT: string;
+    ARBITRATION_HOLD_OTHERS: number;
+    ARBITRATION_KEEP_OTHERS: number;
+  };
+
+  startCall(callUUID: string, handle: string, hasVideo: boolean): Promise<void>;
+  reportIncomingCall(
+    callUUID: string,
+    handle: string,
+    hasVideo: boolean
+  ): Promise<void>;
+  answerCall(callUUID: string): Promise<void>;
+  rejectCall(callUUID: string): Promise<void>;
+  holdCall(callUUID: string): Promise<void>;
+  unholdCall(callUUID: string): Promise<void>;
+  setForegroundCall(callUUID: string): Promise<void>;
+  setCallAudioDevice(callUUID: string, deviceName: string | null): void;
+  setArbitrationPolicy(policy: number): void;
+  reportCallFailed(callUUID: string): void;
+  endCall(callUUID: string): void;
+  reportConnectedOutgoingCall(callUUID: string): Promise<void>;
+  updateCall(callUUID: string, callState: Object): void;
+  prewarm(handle: string | null): void;
+
+  // NativeEventEmitter support.
+  addListener(eventName: string): void;
+  removeListeners(count: number): void;
+}
+
+export default TurboModuleRegistry.get<Spec>('ConnectionService');
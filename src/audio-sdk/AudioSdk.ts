@@ -1,32 +1,117 @@
-import { NativeEventEmitter, NativeModules } from 'react-native';
+import { DeviceEventEmitter, NativeEventEmitter } from 'react-native';
+import Audio, { getAudioConstants } from '../Audio';
 import Callback from './Callback';
+import AudioState from './models/AudioState';
+import AudioThreadStall from './models/AudioThreadStall';
 import Device from './models/Device';
 
-const { Audio } = NativeModules;
 const AudioEmitter = new NativeEventEmitter(Audio);
 
+/**
+ * The subscription unpacking the native event batches, shared by all the
+ * instances.
+ */
+let batchSubscription: any = null;
+
+/**
+ * Emits the events of a native batch one by one, to their own listeners.
+ *
+ * @param {Array<Object>} batch - The events, each with a name and data.
+ * @returns {void}
+ */
+function unpackEventBatch(batch: Array<{ name: string; data: any }>): void {
+  for (const event of batch) {
+    DeviceEventEmitter.emit(event.name, event.data);
+  }
+}
+
+/**
+ * Decodes the compact form of a device update.
+ *
+ * @param {number} mask - The available devices, a mask of the DEVICES bits.
+ * @param {number} selectedIndex - The bit index of the selected device, -1
+ * if none is.
+ * @returns {Array<Device>} The devices, with their type and whether they are
+ * selected.
+ */
+function decodeDevices(mask: number, selectedIndex: number): Array<Device> {
+  const devices: Array<Device> = [];
+  const types = getAudioConstants().DEVICES;
+
+  for (const type of Object.keys(types)) {
+    const bit = types[type];
+
+    if (mask & bit) {
+      devices.push({
+        type,
+        selected: selectedIndex >= 0 && bit === 1 << selectedIndex,
+      } as Device);
+    }
+  }
+  // In the same order as the native list.
+  return devices.sort((a, b) => types[a.type] - types[b.type]);
+}
+
 export default class AudioSdk {
   private mode: any;
   private audioCallbacks: Callback;
 
   private state: any;
+  private subscription: any;
+  private stallSubscription: any;
 
   constructor(callback: Callback) {
     this.audioCallbacks = callback;
     this.state = {
       devices: [],
+      version: -1,
     };
     this.initializeSdk();
   }
 
   private initializeSdk = () => {
-    AudioEmitter.addListener(
-      Audio.DEVICE_CHANGE_EVENT,
+    const constants = getAudioConstants();
+
+    // Subscribing starts the native device detection.
+    this.subscription = AudioEmitter.addListener(
+      constants.DEVICE_CHANGE_EVENT,
       this.onDevicesUpdate,
       this
     );
+    // Not counted as a native listener, which would keep the device
+    // detection running.
+    if (
+      this.audioCallbacks &&
+      this.audioCallbacks.onAudioThreadStall &&
+      constants.AUDIO_THREAD_STALL_EVENT
+    ) {
+      this.stallSubscription = DeviceEventEmitter.addListener(
+        constants.AUDIO_THREAD_STALL_EVENT,
+        (stall: AudioThreadStall) =>
+          this.audioCallbacks.onAudioThreadStall &&
+          this.audioCallbacks.onAudioThreadStall(stall)
+      );
+    }
   };
 
+  /**
+   * Stops listening to device changes. The native device detection stops
+   * too once no listeners remain and no call is in progress.
+   *
+   * @public
+   * @returns {void}
+   */
+  public release(): void {
+    if (this.subscription) {
+      this.subscription.remove();
+      this.subscription = null;
+    }
+    if (this.stallSubscription) {
+      this.stallSubscription.remove();
+      this.stallSubscription = null;
+    }
+  }
+
   private updateDevices(devices: Array<Device>) {
     this.state.devices = devices;
     if (this.audioCallbacks) {
@@ -39,12 +124,25 @@ export default class AudioSdk {
   /**
    * Handles audio device changes. The list will be stored on the redux store.
    *
-   * @param {Object} devices - The current list of devices.
+   * @param {Object} devices - The current list of devices, or its compact
+   * form: the mask of the available devices, the bit index of the selected
+   * one (-1 if none) and the sequence number.
    * @private
    * @returns {void}
    */
-  private onDevicesUpdate(devices: Array<Device>): void {
-    this.updateDevices(devices);
+  private onDevicesUpdate(devices: Array<Device> | Array<number>): void {
+    if (devices.length && typeof devices[0] === 'number') {
+      const [mask, selectedIndex, version] = devices as Array<number>;
+
+      // Older than the last update, which was delivered first.
+      if (version <= this.state.version) {
+        return;
+      }
+      this.state.version = version;
+      this.updateDevices(decodeDevices(mask, selectedIndex));
+      return;
+    }
+    this.updateDevices(devices as Array<Device>);
   }
 
   /**
@@ -54,19 +152,206 @@ export default class AudioSdk {
    * @returns {void}.
    */
   public updateAudioMode(inCall?: boolean, isVideo?: boolean, isSilent?: boolean): void {
+    const constants = getAudioConstants();
+
     this.mode = inCall
       ? isSilent
-        ? Audio.SILENT
+        ? constants.SILENT
         : isVideo
-          ? Audio.VIDEO_CALL
-          : Audio.AUDIO_CALL
-      : Audio.DEFAULT;
+          ? constants.VIDEO_CALL
+          : constants.AUDIO_CALL
+      : constants.DEFAULT;
+
+    const mode = this.mode;
+
+    Audio.setMode(mode).catch((err: any) => {
+      // A later mode was requested before this one got to be set.
+      if (err && err.code === constants.SUPERSEDED) {
+        return;
+      }
+      console.log(`Failed to set audio mode ${String(mode)}: ${err}`);
+    });
+  }
+
+  /**
+   * Sets the time window during which consecutive native device change
+   * callbacks are merged into a single device list update.
+   *
+   * @param {number} windowMs - The window in milliseconds, 0 disables it.
+   * @public
+   * @returns {void}
+   */
+  public setDeviceChangeCoalesceWindow(windowMs: number): void {
+    Audio.setDeviceChangeCoalesceWindow &&
+      Audio.setDeviceChangeCoalesceWindow(windowMs);
+  }
+
+  /**
+   * Enables or disables the compact form of the native device updates,
+   * which is cheaper to send and decode than the list of devices. The
+   * devices are still reported as a list.
+   *
+   * @param {boolean} compact - Whether the compact form is to be used.
+   * @public
+   * @returns {void}
+   */
+  public setCompactDeviceUpdates(compact: boolean): void {
+    Audio.setCompactDeviceUpdates && Audio.setCompactDeviceUpdates(compact);
+  }
+
+  /**
+   * Enables or disables sending the native events in batches, once per
+   * frame or once per interval, rather than one by one. Only the latest
+   * device list of a batch is delivered. The events reach their listeners
+   * as usual.
+   *
+   * @param {boolean} enabled - Whether the events are to be batched.
+   * @param {number} intervalMs - The time the events are accumulated for, 0
+   * for once per frame.
+   * @public
+   * @returns {void}
+   */
+  public setEventBatching(enabled: boolean, intervalMs: number = 0): void {
+    const constants = getAudioConstants();
+
+    if (!Audio.setEventBatching || !constants.EVENT_BATCH_EVENT) {
+      return;
+    }
+    // Subscribed to before enabling it, and kept afterwards for the last
+    // batch, so that no event is lost.
+    if (enabled && !batchSubscription) {
+      batchSubscription = DeviceEventEmitter.addListener(
+        constants.EVENT_BATCH_EVENT,
+        unpackEventBatch
+      );
+    }
+    Audio.setEventBatching(enabled, intervalMs);
+  }
 
-    Audio.setMode(this.mode).catch((err: any) =>
-      console.log(`Failed to set audio mode ${String(this.mode)}: ${err}`)
+  /**
+   * Turns the native trace sections of the audio routing on or off. They
+   * show up in system traces, e.g. Perfetto ones, along with the rest of the
+   * app.
+   *
+   * @param {boolean} enabled - Whether the sections are to be traced.
+   * @public
+   * @returns {void}
+   */
+  public setTracingEnabled(enabled: boolean): void {
+    Audio.setTracingEnabled && Audio.setTracingEnabled(enabled);
+  }
+
+  /**
+   * Enables or disables the native audio thread watchdog. Native audio tasks
+   * running for longer than the threshold, e.g. stuck in a system call, are
+   * reported to onAudioThreadStall and kept in the audio metrics.
+   *
+   * @param {number} thresholdMs - The time after which a task is reported
+   * as stalled, 0 disables the watchdog.
+   * @public
+   * @returns {void}
+   */
+  public setAudioThreadWatchdog(thresholdMs: number): void {
+    Audio.setAudioThreadWatchdog && Audio.setAudioThreadWatchdog(thresholdMs);
+  }
+
+  /**
+   * Sets the devices to be preferred while in the given call mode.
+   *
+   * @param {boolean} isVideo - Whether the policy is for video calls.
+   * @param {Array<string>} devices - The device types, most preferred first.
+   * @public
+   * @returns {Promise<void>}
+   */
+  public setRoutingPolicy(
+    isVideo: boolean,
+    devices: Array<string>
+  ): Promise<void> {
+    if (!Audio.setRoutingPolicy) {
+      return Promise.resolve();
+    }
+    const constants = getAudioConstants();
+    const mode = isVideo ? constants.VIDEO_CALL : constants.AUDIO_CALL;
+
+    return Audio.setRoutingPolicy(mode, devices).catch((err: any) =>
+      console.log(`Failed to set routing policy ${String(mode)}: ${err}`)
     );
   }
 
+  /**
+   * Gets the latency percentiles, in milliseconds, of the native audio
+   * routing operations, along with the routing counters.
+   *
+   * @param {boolean} reset - Whether the metrics should be cleared once read.
+   * @public
+   * @returns {Promise<any>}
+   */
+  public getAudioMetrics(reset?: boolean): Promise<any> {
+    if (!Audio.getAudioMetrics) {
+      return Promise.resolve({});
+    }
+
+    return Audio.getAudioMetrics(Boolean(reset));
+  }
+
+  /**
+   * Prepares for a call about to be made, so that its audio starts faster.
+   * The device detection is started and keeps running until the call ends.
+   *
+   * @public
+   * @returns {Promise<void>} Resolved once done.
+   */
+  public prewarm(): Promise<void> {
+    if (!Audio.prewarm) {
+      return Promise.resolve();
+    }
+    return Audio.prewarm().catch((err: any) =>
+      console.log(`Failed to prewarm: ${err}`)
+    );
+  }
+
+  /**
+   * Gets the current audio mode, synchronously.
+   *
+   * @public
+   * @returns {number} The mode, or undefined if not supported.
+   */
+  public getMode(): number | undefined {
+    return Audio.getMode ? Audio.getMode() : undefined;
+  }
+
+  /**
+   * Gets the type of the audio device in use, synchronously.
+   *
+   * @public
+   * @returns {string | null} The device type, or null if none is in use.
+   */
+  public getSelectedDevice(): string | null {
+    return Audio.getSelectedDevice ? Audio.getSelectedDevice() : null;
+  }
+
+  /**
+   * Gets the types of the available audio devices, synchronously.
+   *
+   * @public
+   * @returns {Array<string>} The device types.
+   */
+  public getAvailableDevices(): Array<string> {
+    return Audio.getAvailableDevices ? Audio.getAvailableDevices() : [];
+  }
+
+  /**
+   * Gets the whole audio state at once, synchronously. Its values are always
+   * consistent with each other, unlike those read with the individual
+   * getters.
+   *
+   * @public
+   * @returns {AudioState | null} The state, or null if not supported.
+   */
+  public getAudioState(): AudioState | null {
+    return Audio.getAudioState ? Audio.getAudioState() : null;
+  }
+
   public updateDeviceList(): void {
     Audio.updateDeviceList && Audio.updateDeviceList();
   }
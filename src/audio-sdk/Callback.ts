@@ -1,5 +1,7 @@
+import AudioThreadStall from './models/AudioThreadStall';
 import Device from './models/Device';
 
 export default interface Callback {
   onAudioDevicesUpdated(devices: Array<Device>): void;
+  onAudioThreadStall?(stall: AudioThreadStall): void;
 }
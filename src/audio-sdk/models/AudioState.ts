@@ -0,0 +1,11 @@
+import Device from './Device';
+
+interface AudioState {
+  mode: number;
+  devices: Array<Device>;
+  selectedDevice: string | null;
+  userSelectedDevice: string | null;
+  version: number;
+}
+
+export default AudioState;
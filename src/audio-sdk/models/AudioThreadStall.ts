@@ -0,0 +1,9 @@
+interface AudioThreadStall {
+  task: string;
+  operation: string | null;
+  duration: number;
+  ended: boolean;
+  stack: string;
+}
+
+export default AudioThreadStall;